@@ -1,5 +1,6 @@
 package fr.lezoo.stonks;
 
+import fr.lezoo.stonks.command.LeaderboardCommand;
 import fr.lezoo.stonks.command.PortfolioCommand;
 import fr.lezoo.stonks.command.RedeemDividendsCommand;
 import fr.lezoo.stonks.command.StocksCommand;
@@ -12,11 +13,18 @@ import fr.lezoo.stonks.compat.placeholder.StonksPlaceholders;
 import fr.lezoo.stonks.listener.DisplayBoardListener;
 import fr.lezoo.stonks.listener.DisplaySignListener;
 import fr.lezoo.stonks.listener.PlayerListener;
+import fr.lezoo.stonks.listener.PortfolioListener;
 import fr.lezoo.stonks.listener.SharePaperListener;
+import fr.lezoo.stonks.listener.ShareTriggerListener;
 import fr.lezoo.stonks.manager.*;
 import fr.lezoo.stonks.stock.Stock;
 import fr.lezoo.stonks.stock.TimeScale;
+import fr.lezoo.stonks.stock.api.QuoteScheduler;
+import fr.lezoo.stonks.stock.api.QuoteStream;
 import fr.lezoo.stonks.stock.api.StockAPI;
+import fr.lezoo.stonks.storage.FileStorage;
+import fr.lezoo.stonks.storage.FileStorageMigration;
+import fr.lezoo.stonks.storage.Storage;
 import fr.lezoo.stonks.util.ConfigSchedule;
 import fr.lezoo.stonks.version.ServerVersion;
 import fr.lezoo.stonks.version.SpigotPlugin;
@@ -38,8 +46,13 @@ public class Stonks extends JavaPlugin {
     public final ShareManager shareManager = new ShareManager();
     public final SignManager signManager = new SignManager();
     public final PlayerDataManager playerManager = new PlayerDataManager();
+    public final PriceModelManager priceModelManager = new PriceModelManager();
     public final StockManager stockManager = new StockManager();
     public final BoardManager boardManager = new BoardManager();
+    public final LeaderboardManager leaderboardManager = new LeaderboardManager();
+    public final AutosaveManager autosaveManager = new AutosaveManager();
+    public final QuoteScheduler quoteScheduler = new QuoteScheduler(getLogger());
+    public final QuoteStream quoteStream = new QuoteStream(getLogger());
 
     @NotNull
     public PlaceholderParser placeholderParser = new DefaultPlaceholderParser();
@@ -49,6 +62,7 @@ public class Stonks extends JavaPlugin {
     public Economy economy;
     @Nullable
     public StockAPI stockAPI;
+    public Storage storage;
 
     /*
      * TODO Comment obtenir les lives de trading
@@ -91,12 +105,34 @@ public class Stonks extends JavaPlugin {
 
         // Initialize managers
         configManager.reload();
-        stockManager.load();
-        shareManager.load();
-        // A delay is required otherwise entities are not loaded yet
-        Bukkit.getScheduler().runTaskLater(this, () -> boardManager.load(), 20);
-        signManager.load();
-        playerManager.load();
+        try {
+            storage = Storage.fromConfig(getConfig().getConfigurationSection("storage"), getDataFolder());
+        } catch (RuntimeException exception) {
+            getLogger().log(Level.SEVERE, "Could not initialize storage, disabling: " + exception.getMessage());
+            Bukkit.getPluginManager().disablePlugin(this);
+            return;
+        }
+
+        playerManager.start();
+
+        // Data saved by the file storage before switching storage
+        if (!(storage instanceof FileStorage))
+            timed("Migrated file storage data", new FileStorageMigration(storage)::migrateData);
+
+        // Cached quotes are needed when loading real stocks
+        timed("Loaded quote cache", quoteScheduler::load);
+        new StartupLoader()
+                .add("stocks", stockManager::read)
+                .add("shares", shareManager::read)
+                .add("signs", signManager::read)
+                .add("leaderboards", leaderboardManager::read)
+                .add("player data", playerManager::read)
+                .add("boards", session -> {
+                    // A delay is required otherwise entities are not loaded yet
+                    Runnable registerBoards = boardManager.read(session);
+                    return () -> Bukkit.getScheduler().runTaskLater(this, () -> timed("Loaded boards", registerBoards), 20);
+                })
+                .load();
 
         // PlaceholderAPI compatibility
         if (Bukkit.getPluginManager().getPlugin("PlaceholderAPI") != null) {
@@ -112,12 +148,15 @@ public class Stonks extends JavaPlugin {
         getCommand("redeemdividends").setExecutor(new RedeemDividendsCommand());
         getCommand("stocks").setExecutor(new StocksCommand());
         getCommand("portfolio").setExecutor(new PortfolioCommand());
+        getCommand("leaderboard").setExecutor(new LeaderboardCommand());
 
         // Register listeners
         Bukkit.getPluginManager().registerEvents(new PlayerListener(), this);
         Bukkit.getPluginManager().registerEvents(new SharePaperListener(), this);
         Bukkit.getPluginManager().registerEvents(new DisplaySignListener(), this);
         Bukkit.getPluginManager().registerEvents(new DisplayBoardListener(), this);
+        Bukkit.getPluginManager().registerEvents(new ShareTriggerListener(), this);
+        Bukkit.getPluginManager().registerEvents(new PortfolioListener(), this);
 
         // Refresh the signs
         new BukkitRunnable() {
@@ -158,16 +197,65 @@ public class Stonks extends JavaPlugin {
                 shareManager.refresh();
             }
         }.runTaskTimer(this, 0L, configManager.shareRefreshTime);
+
+        // Fold the share journal into its snapshot
+        new BukkitRunnable() {
+
+            @Override
+            public void run() {
+                shareManager.compact();
+            }
+        }.runTaskTimer(this, 20L * configManager.shareJournalCompactionPeriod, 20L * configManager.shareJournalCompactionPeriod);
+
+        // Fetch real stock prices in the background
+        quoteScheduler.start();
+        quoteStream.start();
+
+        // Hand streamed prices to stocks
+        new BukkitRunnable() {
+
+            @Override
+            public void run() {
+                quoteStream.flush();
+            }
+        }.runTaskTimer(this, 1L, 1L);
+
+        // Step fictive stock prices
+        priceModelManager.start();
+
+        // Periodically save data in the background
+        autosaveManager.start(20L * configManager.autosavePeriod);
     }
 
 
     @Override
     public void onDisable() {
-        stockManager.save();
-        boardManager.save();
-        playerManager.save();
-        shareManager.save();
-        signManager.save();
+
+        // Plugin could not enable
+        if (storage == null)
+            return;
+
+        autosaveManager.stop();
+        quoteScheduler.stop();
+        quoteStream.stop();
+        priceModelManager.stop();
+        timed("Saved stocks", stockManager::save);
+        timed("Saved quote cache", quoteScheduler::save);
+        timed("Saved boards", boardManager::save);
+        timed("Saved player data", playerManager::save);
+        playerManager.close();
+        timed("Saved signs", signManager::save);
+        timed("Saved leaderboards", leaderboardManager::save);
+        timed("Closed storage", storage::close);
+    }
+
+    /**
+     * Logs how long an action took so that slow loads and saves are visible
+     */
+    private void timed(String name, Runnable action) {
+        final long start = System.nanoTime();
+        action.run();
+        getLogger().log(Level.INFO, name + " in " + (System.nanoTime() - start) / 1000000 + "ms");
     }
 
     /**
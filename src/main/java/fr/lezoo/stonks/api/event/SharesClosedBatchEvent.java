@@ -0,0 +1,49 @@
+package fr.lezoo.stonks.api.event;
+
+import fr.lezoo.stonks.share.Share;
+import fr.lezoo.stonks.stock.Stock;
+import org.bukkit.event.Event;
+import org.bukkit.event.HandlerList;
+
+import java.util.Collections;
+import java.util.List;
+
+public class SharesClosedBatchEvent extends Event {
+    private final Stock stock;
+    private final List<Share> shares;
+
+    private static final HandlerList handlers = new HandlerList();
+
+    /**
+     * Called once when many shares from the same stock are closed at
+     * once, for instance when they automatically close. Their price
+     * impact is applied once so they all have the same sell price.
+     * <p>
+     * A {@link ShareClosedEvent} may also be called for every share
+     * depending on the plugin config
+     *
+     * @param stock  Stock of closed shares
+     * @param shares Shares that were closed
+     */
+    public SharesClosedBatchEvent(Stock stock, List<Share> shares) {
+        this.stock = stock;
+        this.shares = Collections.unmodifiableList(shares);
+    }
+
+    public Stock getStock() {
+        return stock;
+    }
+
+    public List<Share> getShares() {
+        return shares;
+    }
+
+    @Override
+    public HandlerList getHandlers() {
+        return handlers;
+    }
+
+    public static HandlerList getHandlerList() {
+        return handlers;
+    }
+}
@@ -0,0 +1,29 @@
+package fr.lezoo.stonks.command;
+
+import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.player.PlayerData;
+import fr.lezoo.stonks.util.message.Message;
+import org.bukkit.command.Command;
+import org.bukkit.command.CommandExecutor;
+import org.bukkit.command.CommandSender;
+import org.bukkit.entity.Player;
+
+public class LeaderboardCommand implements CommandExecutor {
+
+    @Override
+    public boolean onCommand(CommandSender sender, Command command, String label, String[] args) {
+        if (!(sender instanceof Player)) {
+            sender.sendMessage("This command is only for players.");
+            return false;
+        }
+
+        Player player = (Player) sender;
+        if (!player.hasPermission("stonks.leaderboard")) {
+            Message.NOT_ENOUGH_PERMISSIONS.format().send(player);
+            return true;
+        }
+
+        Stonks.plugin.configManager.LEADERBOARD.generate(PlayerData.get(player)).open();
+        return true;
+    }
+}
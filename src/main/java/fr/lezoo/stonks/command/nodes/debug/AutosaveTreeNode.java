@@ -0,0 +1,26 @@
+package fr.lezoo.stonks.command.nodes.debug;
+
+import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.command.objects.CommandTreeNode;
+import fr.lezoo.stonks.manager.AutosaveManager;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+public class AutosaveTreeNode extends CommandTreeNode {
+    public AutosaveTreeNode(CommandTreeNode parent) {
+        super(parent, "autosave");
+    }
+
+    @Override
+    public CommandResult execute(CommandSender sender, String[] args) {
+        AutosaveManager autosave = Stonks.plugin.autosaveManager;
+        sender.sendMessage(ChatColor.BLUE + "Autosaves: " + autosave.getAutosaves());
+        sender.sendMessage(ChatColor.BLUE + "Last main thread time: " + toMillis(autosave.getLastSnapshotTime()) + "ms (max " + toMillis(autosave.getMaxSnapshotTime()) + "ms)");
+        sender.sendMessage(ChatColor.BLUE + "Last write time: " + toMillis(autosave.getLastWriteTime()) + "ms");
+        return CommandResult.SUCCESS;
+    }
+
+    private String toMillis(long nanos) {
+        return String.valueOf(nanos / 10000 / 100d);
+    }
+}
@@ -8,6 +8,8 @@ public class DebugTreeNode extends CommandTreeNode {
         super(parent, "debug");
 
         addChild(new UpdateSignsTreeNode(this));
+        addChild(new AutosaveTreeNode(this));
+        addChild(new QuotesTreeNode(this));
     }
 
     @Override
@@ -0,0 +1,30 @@
+package fr.lezoo.stonks.command.nodes.debug;
+
+import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.command.objects.CommandTreeNode;
+import fr.lezoo.stonks.stock.api.QuoteScheduler;
+import fr.lezoo.stonks.stock.api.QuoteStream;
+import org.bukkit.ChatColor;
+import org.bukkit.command.CommandSender;
+
+public class QuotesTreeNode extends CommandTreeNode {
+    public QuotesTreeNode(CommandTreeNode parent) {
+        super(parent, "quotes");
+    }
+
+    @Override
+    public CommandResult execute(CommandSender sender, String[] args) {
+        QuoteScheduler quotes = Stonks.plugin.quoteScheduler;
+        sender.sendMessage(ChatColor.BLUE + "Real stocks: " + quotes.getSymbols());
+        sender.sendMessage(ChatColor.BLUE + "Calls last minute: " + quotes.getCallsLastMinute() + " (budget " + quotes.getBudget() + ")");
+        if (quotes.getDailyBudget() > 0)
+            sender.sendMessage(ChatColor.BLUE + "Calls today: " + (int) quotes.getDailyCalls() + " (budget " + quotes.getDailyBudget() + ", " + (int) quotes.getDailyCallsLeft() + " available now)");
+        sender.sendMessage(ChatColor.BLUE + "Circuit breaker: " + quotes.getBreakerState());
+        sender.sendMessage(ChatColor.BLUE + "Calls: " + quotes.getCalls() + ", quotes fetched: " + quotes.getFetchedQuotes() + ", failures: " + quotes.getFailures());
+
+        QuoteStream stream = Stonks.plugin.quoteStream;
+        sender.sendMessage(ChatColor.BLUE + "Price stream: " + (stream.isConnected() ? "connected" : "disconnected") + " (" + stream.getBreakerState() + ")");
+        sender.sendMessage(ChatColor.BLUE + "Streamed symbols: " + stream.getSubscriptions() + ", trades: " + stream.getTrades());
+        return CommandResult.SUCCESS;
+    }
+}
@@ -1,12 +1,12 @@
 package fr.lezoo.stonks.compat.placeholder;
 
 import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.player.Leaderboard;
 import fr.lezoo.stonks.player.PlayerData;
-import fr.lezoo.stonks.share.Share;
-import fr.lezoo.stonks.stock.Stock;
+import fr.lezoo.stonks.player.Portfolio;
 import me.clip.placeholderapi.expansion.PlaceholderExpansion;
+import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
-import org.bukkit.entity.Player;
 import org.jetbrains.annotations.NotNull;
 
 public class StonksPlaceholders extends PlaceholderExpansion {
@@ -37,18 +37,26 @@ public class StonksPlaceholders extends PlaceholderExpansion {
 
     @Override
     public String onRequest(OfflinePlayer offlinePlayer, @NotNull String params) {
-        if (!offlinePlayer.isOnline())
+
+        // Leaderboards do not depend on the player
+        if (params.startsWith("top_"))
+            return onTopRequest(params.substring(4));
+
+        // Player data of offline players can only be accessed on the main thread
+        if (offlinePlayer == null || (!offlinePlayer.isOnline() && !Bukkit.isPrimaryThread()))
             return "?";
 
-        Player player = offlinePlayer.getPlayer();
-        PlayerData playerData = PlayerData.get(player);
+        PlayerData playerData = Stonks.plugin.playerManager.get(offlinePlayer);
+
+        // Portfolio values are kept up to date when shares or stock prices change
+        Portfolio portfolio = playerData.getPortfolio();
 
         if (params.startsWith("shares_")) {
             String id = params.substring(7);
             if (!Stonks.plugin.stockManager.has(id))
                 return "?";
 
-            return Double.toString(playerData.countShares(Stonks.plugin.stockManager.get(id)));
+            return Double.toString(portfolio.getPosition(id).getAmount());
         }
 
         if (params.startsWith("share_money_")) {
@@ -56,19 +64,63 @@ public class StonksPlaceholders extends PlaceholderExpansion {
             if (!Stonks.plugin.stockManager.has(id))
                 return "?";
 
-            double sum = 0;
-            for (Share share : playerData.getShares(Stonks.plugin.stockManager.get(id)))
-                sum += share.getCloseEarning(0, 0);
-            return String.valueOf(sum);
+            return String.valueOf(portfolio.getPosition(id).getValue());
+        }
+
+        if (params.startsWith("portfolio_money"))
+            return String.valueOf(portfolio.getTotal().getValue());
+
+        if (params.startsWith("portfolio_cost"))
+            return String.valueOf(portfolio.getTotal().getCostBasis());
+
+        if (params.startsWith("portfolio_shares"))
+            return String.valueOf(portfolio.getTotal().getCount());
+
+        if (params.startsWith("realized_gain"))
+            return String.valueOf(playerData.getRealizedGain());
+
+        return null;
+    }
+
+    /**
+     * Parses top_<rank>_name, top_gain_<rank>_name and
+     * top_holdings_<stock>_<rank>_name, or _value instead of _name
+     *
+     * @param params Placeholder without the 'top_' prefix
+     */
+    private String onTopRequest(String params) {
+        int index = params.lastIndexOf('_');
+        if (index < 0)
+            return null;
+        final String field = params.substring(index + 1);
+        params = params.substring(0, index);
+
+        index = params.lastIndexOf('_');
+        final int rank;
+        try {
+            rank = Integer.parseInt(params.substring(index + 1));
+        } catch (NumberFormatException exception) {
+            return null;
         }
+        params = index < 0 ? "" : params.substring(0, index);
+
+        Leaderboard leaderboard;
+        if (params.isEmpty())
+            leaderboard = Stonks.plugin.leaderboardManager.getPortfolios();
+        else if (params.equals("gain"))
+            leaderboard = Stonks.plugin.leaderboardManager.getRealizedGains();
+        else if (params.startsWith("holdings_") && Stonks.plugin.stockManager.has(params.substring(9)))
+            leaderboard = Stonks.plugin.leaderboardManager.getHoldings(Stonks.plugin.stockManager.get(params.substring(9)));
+        else
+            return null;
 
-        if (params.startsWith("portfolio_money")) {
-            double sum = 0;
-            for (Stock stock : Stonks.plugin.stockManager.getStocks())
-                for (Share share : playerData.getShares(stock))
-                    sum += share.getCloseEarning(0, 0);
-            return String.valueOf(sum);
+        Leaderboard.Entry entry = leaderboard.get(rank);
+        if (field.equals("name")) {
+            String name = entry == null ? null : Stonks.plugin.leaderboardManager.getName(entry.getUniqueId());
+            return name == null ? "" : name;
         }
+        if (field.equals("value"))
+            return entry == null ? "" : String.valueOf(entry.getValue());
 
         return null;
     }
@@ -0,0 +1,82 @@
+package fr.lezoo.stonks.display;
+
+import fr.lezoo.stonks.stock.StockSeries;
+import fr.lezoo.stonks.util.Utils;
+
+import java.awt.*;
+import java.awt.geom.Line2D;
+import java.awt.geom.Path2D;
+import java.awt.geom.Rectangle2D;
+
+/**
+ * How stock data is charted on boards and maps
+ */
+public enum ChartType {
+
+    /**
+     * Line going through the close price of every candle
+     */
+    LINE {
+        @Override
+        public void draw(Graphics2D g2d, StockSeries series, double left, double step, double bottom, double height) {
+            final double min = series.getLowest(), max = series.getHighest();
+
+            g2d.setColor(Color.RED);
+            Path2D.Double curve = new Path2D.Double();
+            curve.moveTo(left, toY(series.getClose(0), min, max, bottom, height));
+            for (int i = 1; i < series.size(); i++)
+                curve.lineTo(left + i * step, toY(series.getClose(i), min, max, bottom, height));
+            g2d.draw(curve);
+        }
+    },
+
+    /**
+     * One body from open to close price and one wick
+     * from low to high price for every candle
+     */
+    CANDLESTICK {
+        @Override
+        public void draw(Graphics2D g2d, StockSeries series, double left, double step, double bottom, double height) {
+            final double min = series.getLowest(), max = series.getHighest();
+            final double bodyWidth = Math.max(1, step * .6);
+
+            for (int i = 0; i < series.size(); i++) {
+                final double x = left + i * step, open = series.getOpen(i), close = series.getClose(i);
+                g2d.setColor(close >= open ? CANDLE_UP : CANDLE_DOWN);
+
+                // Wick from low to high
+                g2d.draw(new Line2D.Double(x, toY(series.getHigh(i), min, max, bottom, height), x, toY(series.getLow(i), min, max, bottom, height)));
+
+                // Body from open to close
+                final double top = toY(Math.max(open, close), min, max, bottom, height);
+                final double bodyHeight = Math.max(1, toY(Math.min(open, close), min, max, bottom, height) - top);
+                g2d.fill(new Rectangle2D.Double(x - bodyWidth / 2, top, bodyWidth, bodyHeight));
+            }
+        }
+    };
+
+    private static final Color CANDLE_UP = new Color(0, 150, 0), CANDLE_DOWN = new Color(200, 0, 0);
+
+    /**
+     * Charts the whole series. The lowest price is drawn at the
+     * bottom of the chart and the highest price at its top.
+     *
+     * @param left   X coordinate of the oldest candle
+     * @param step   Horizontal distance between two candles
+     * @param bottom Y coordinate of the lowest price
+     * @param height Vertical distance between lowest and highest prices
+     */
+    public abstract void draw(Graphics2D g2d, StockSeries series, double left, double step, double bottom, double height);
+
+    private static double toY(double price, double min, double max, double bottom, double height) {
+        return max == min ? bottom - height / 2 : bottom - height * (price - min) / (max - min);
+    }
+
+    /**
+     * @param input Chart type as input in a config file, or null
+     * @return Corresponding chart type, line chart by default
+     */
+    public static ChartType fromConfig(String input) {
+        return input == null ? LINE : valueOf(Utils.enumName(input));
+    }
+}
@@ -2,9 +2,8 @@ package fr.lezoo.stonks.display.board;
 
 import fr.lezoo.stonks.Stonks;
 import fr.lezoo.stonks.gui.objects.item.Placeholders;
-import fr.lezoo.stonks.manager.ConfigManager;
 import fr.lezoo.stonks.stock.Stock;
-import fr.lezoo.stonks.stock.StockInfo;
+import fr.lezoo.stonks.stock.StockSeries;
 import fr.lezoo.stonks.stock.TimeScale;
 import fr.lezoo.stonks.util.Utils;
 import org.apache.commons.lang.Validate;
@@ -15,7 +14,6 @@ import org.bukkit.NamespacedKey;
 import org.bukkit.block.BlockFace;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.EntityType;
 import org.bukkit.entity.ItemFrame;
 import org.bukkit.inventory.ItemStack;
@@ -27,11 +25,9 @@ import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
 import java.awt.geom.Line2D;
-import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
 import java.text.DecimalFormat;
-import java.util.List;
 import java.util.UUID;
 import java.util.logging.Level;
 
@@ -246,7 +242,7 @@ public class Board {
     }
 
     public BufferedImage getImage() {
-        FileConfiguration config = YamlConfiguration.loadConfiguration(ConfigManager.DefaultFile.BOARD.getFile());
+        FileConfiguration config = Stonks.plugin.configManager.boardLayout;
         ConfigurationSection description = config.getConfigurationSection("description");
         ConfigurationSection buttons = config.getConfigurationSection("buttons");
         if (buttons == null) {
@@ -262,23 +258,9 @@ public class Board {
         // If not enough data on stock data we take care of avoiding IndexOutOfBounds
         BufferedImage image = new BufferedImage(BOARD_WIDTH, BOARD_HEIGHT, BufferedImage.TYPE_INT_RGB);
         Graphics2D g2d = (Graphics2D) image.getGraphics();
-        List<StockInfo> stockData = stock.getData(time);
+        StockSeries stockData = stock.getChartData(time, Stock.BOARD_DATA_NUMBER * width);
         //If the stock is Empty we print an error
-        Validate.isTrue(stockData.size() != 0, "The stock : " + stock.getId() + " has no values!!");
-
-        int data_taken = Math.min(Stock.BOARD_DATA_NUMBER, stockData.size());
-
-        int index = stockData.size() - data_taken;
-
-        // Look at the lowest val in the time we look backward to set the scale
-        double minVal = stockData.get(index).getPrice();
-        double maxVal = stockData.get(index).getPrice();
-        for (int i = 1; i < data_taken; i++) {
-            if (stockData.get(index + i).getPrice() > maxVal)
-                maxVal = stockData.get(index + i).getPrice();
-            if (stockData.get(index + i).getPrice() < minVal)
-                minVal = stockData.get(index + i).getPrice();
-        }
+        Validate.isTrue(!stockData.isEmpty(), "The stock : " + stock.getId() + " has no values!!");
 
         // White background
         g2d.setColor(Color.WHITE);
@@ -320,21 +302,11 @@ public class Board {
         g2d.drawString(buttons.getString("short", "SHORT"), (int) (0.83 * BOARD_WIDTH), (int) (0.60 * BOARD_HEIGHT));
         g2d.drawString(buttons.getString("orders", "ORDERS"), (int) (0.83 * BOARD_WIDTH), (int) (0.85 * BOARD_HEIGHT));
 
-        g2d.setColor(Color.RED);
-        Path2D.Double curve = new Path2D.Double();
         // If price = maxVal y =0.05 IMAGE_SIZE
         // If price = min Val y=0.75*IMAGE_SIZE (BOTTOM)
-        double x = 0;
-        double y = 0.75 * BOARD_HEIGHT - (0.7 * BOARD_HEIGHT * (stockData.get(index).getPrice() - minVal) / (maxVal - minVal));
-        curve.moveTo(x, y);
-        for (int i = 1; i < data_taken; i++) {
-            // if data_taken < NUMBER_DATA,the graphics will be on the left of the screen mainly
-            x = i * BOARD_WIDTH * 0.8 / Stock.BOARD_DATA_NUMBER;
-            y = 0.75 * BOARD_HEIGHT - (0.7 * BOARD_HEIGHT * (stockData.get(index + i).getPrice() - minVal) / (maxVal - minVal));
-            curve.lineTo(x, y);
-        }
-
-        g2d.draw(curve);
+        // If there are less than BOARD_DATA_NUMBER candles, the graphics will be on the left of the screen mainly
+        final int candles = Math.max(Stock.BOARD_DATA_NUMBER, stockData.size());
+        Stonks.plugin.configManager.boardChartType.draw(g2d, stockData, 0, BOARD_WIDTH * 0.8 / candles, 0.75 * BOARD_HEIGHT, 0.7 * BOARD_HEIGHT);
         return image;
     }
 
@@ -6,7 +6,7 @@ import fr.lezoo.stonks.display.board.DisplayInfo;
 import fr.lezoo.stonks.gui.objects.item.Placeholders;
 import fr.lezoo.stonks.item.StockMap;
 import fr.lezoo.stonks.stock.Stock;
-import fr.lezoo.stonks.stock.StockInfo;
+import fr.lezoo.stonks.stock.StockSeries;
 import fr.lezoo.stonks.stock.TimeScale;
 import org.apache.commons.lang.Validate;
 import org.bukkit.entity.Player;
@@ -18,10 +18,8 @@ import org.bukkit.map.MapRenderer;
 import org.bukkit.map.MapView;
 
 import java.awt.*;
-import java.awt.geom.Path2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.BufferedImage;
-import java.util.List;
 import java.util.stream.Collectors;
 
 /**
@@ -34,7 +32,7 @@ public class StockMapRenderer extends MapRenderer {
 
     private final Stock stock;
     private final int datataken;
-    private List<StockInfo> stockData;
+    private StockSeries stockData;
     private TimeScale time;
     private final int refreshRate = (int) (Stonks.plugin.configManager.mapRefreshTime * 20);
     private int counter = refreshRate;
@@ -53,39 +51,17 @@ public class StockMapRenderer extends MapRenderer {
         BufferedImage image = new BufferedImage(128, 128, BufferedImage.TYPE_INT_RGB);
         Graphics2D g2d = (Graphics2D) image.getGraphics();
 
-        List<StockInfo> stockData = stock.getData(time);
+        StockSeries stockData = stock.getChartData(time, Stock.BOARD_DATA_NUMBER);
         // If the stock is Empty we print an error
-        Validate.isTrue(stockData.size() != 0, "Quotation '" + stock.getId() + "' has no data!");
+        Validate.isTrue(!stockData.isEmpty(), "Quotation '" + stock.getId() + "' has no data!");
 
-        int data_taken = Math.min(Stock.BOARD_DATA_NUMBER, stockData.size());
-        int index = stockData.size() - data_taken;
-
-        // We look at the lowest val in the time we look backward to set the scale
-        double minVal = stockData.get(index).getPrice();
-        double maxVal = stockData.get(index).getPrice();
-        for (int i = 1; i < data_taken; i++) {
-            if (stockData.get(index + i).getPrice() > maxVal)
-                maxVal = stockData.get(index + i).getPrice();
-            if (stockData.get(index + i).getPrice() < minVal)
-                minVal = stockData.get(index + i).getPrice();
-        }
         g2d.setColor(Color.WHITE);
         g2d.fill(new Rectangle2D.Double(0, 0, 128, 128));
 
-        g2d.setColor(Color.RED);
-        Path2D.Double curve = new Path2D.Double();
         // If price = maxVal y =0.05 IMAGE_SIZE
         // If price = min Val y=0.95*IMAGE_SIZE (BOTTOM)
-        double x = 5;
-        double y = 0.95 * 128 - (0.9 * 128 * (stockData.get(index).getPrice() - minVal) / (maxVal - minVal));
-        curve.moveTo(x, y);
-        for (int i = 1; i < data_taken; i++) {
-            // if data_taken < NUMBER_DATA,the graphics will be on the left of the screen mainly
-            x = 5 + i * 128 / 0.95 / Stock.BOARD_DATA_NUMBER;
-            y = 0.95 * 128 - (0.9 * 128 * (stockData.get(index + i).getPrice() - minVal) / (maxVal - minVal));
-            curve.lineTo(x, y);
-        }
-        g2d.draw(curve);
+        // If there are less than BOARD_DATA_NUMBER candles, the graphics will be on the left of the screen mainly
+        Stonks.plugin.configManager.stockMap.getChartType().draw(g2d, stockData, 5, 128 / 0.95 / Stock.BOARD_DATA_NUMBER, 0.95 * 128, 0.9 * 128);
         return image;
     }
 
@@ -0,0 +1,197 @@
+package fr.lezoo.stonks.gui;
+
+import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.gui.objects.EditableInventory;
+import fr.lezoo.stonks.gui.objects.GeneratedInventory;
+import fr.lezoo.stonks.gui.objects.item.InventoryItem;
+import fr.lezoo.stonks.gui.objects.item.Placeholders;
+import fr.lezoo.stonks.gui.objects.item.SimpleItem;
+import fr.lezoo.stonks.player.Leaderboard;
+import fr.lezoo.stonks.player.PlayerData;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryCloseEvent;
+import org.bukkit.inventory.ItemStack;
+
+import java.util.List;
+
+/**
+ * Displays the players with the most valuable portfolios
+ * or with the highest realized gains
+ */
+public class LeaderboardMenu extends EditableInventory {
+    private String portfoliosName, realizedGainsName;
+
+    public LeaderboardMenu() {
+        super("leaderboard");
+    }
+
+    @Override
+    public void reload(ConfigurationSection config) {
+        super.reload(config);
+
+        portfoliosName = config.getString("leaderboard-names.portfolio", "Portfolios");
+        realizedGainsName = config.getString("leaderboard-names.realized-gain", "Realized Gains");
+    }
+
+    @Override
+    public InventoryItem loadItem(String function, ConfigurationSection config) {
+
+        if (function.equalsIgnoreCase("rank"))
+            return new RankItem(config);
+
+        if (function.equalsIgnoreCase("switch"))
+            return new SwitchItem(config);
+
+        if (function.equalsIgnoreCase("next-page"))
+            return new NextPageItem(config);
+
+        if (function.equalsIgnoreCase("previous-page"))
+            return new PreviousPageItem(config);
+
+        return new SimpleItem(config);
+    }
+
+    public GeneratedInventory generate(PlayerData player) {
+        return new GeneratedLeaderboard(player, this);
+    }
+
+    public class GeneratedLeaderboard extends GeneratedInventory {
+        private final int perPage;
+
+        /**
+         * Tops of rankings are immutable copies, so they
+         * do not change while the inventory is open
+         */
+        private List<Leaderboard.Entry> ranks;
+        private int maxPage;
+        private boolean realizedGains;
+
+        // Page indexing arbitrarily starts at 0
+        private int page = 0;
+
+        public GeneratedLeaderboard(PlayerData playerData, EditableInventory editable) {
+            super(playerData, editable);
+
+            perPage = editable.getByFunction("rank").getSlots().size();
+            updateInventoryData();
+        }
+
+        private void updateInventoryData() {
+            ranks = (realizedGains ? Stonks.plugin.leaderboardManager.getRealizedGains() : Stonks.plugin.leaderboardManager.getPortfolios()).getTop();
+            maxPage = Math.max(((int) Math.ceil((double) ranks.size() / perPage)) - 1, 0);
+            page = Math.min(page, maxPage);
+        }
+
+        @Override
+        public String applyNamePlaceholders(String str) {
+            return str.replace("{leaderboard}", realizedGains ? realizedGainsName : portfoliosName)
+                    .replace("{page}", "" + (page + 1))
+                    .replace("{max}", "" + (maxPage + 1));
+        }
+
+        @Override
+        public void whenClicked(InventoryClickEvent event, InventoryItem item) {
+
+            // Next Page
+            if (item instanceof NextPageItem && page < maxPage) {
+                page++;
+                open();
+                return;
+            }
+
+            // Previous Page
+            if (item instanceof PreviousPageItem && page > 0) {
+                page--;
+                open();
+                return;
+            }
+
+            if (item instanceof SwitchItem) {
+                realizedGains = !realizedGains;
+                page = 0;
+                updateInventoryData();
+                open();
+            }
+        }
+
+        @Override
+        public void whenClosed(InventoryCloseEvent event) {
+            // Nothing
+        }
+    }
+
+    public class NextPageItem extends SimpleItem<GeneratedLeaderboard> {
+        public NextPageItem(ConfigurationSection config) {
+            super(config);
+        }
+
+        @Override
+        public boolean isDisplayed(GeneratedLeaderboard inv) {
+            return inv.page < inv.maxPage;
+        }
+    }
+
+    public class PreviousPageItem extends SimpleItem<GeneratedLeaderboard> {
+        public PreviousPageItem(ConfigurationSection config) {
+            super(config);
+        }
+
+        @Override
+        public boolean isDisplayed(GeneratedLeaderboard inv) {
+            return inv.page > 0;
+        }
+    }
+
+    public class SwitchItem extends SimpleItem<GeneratedLeaderboard> {
+        public SwitchItem(ConfigurationSection config) {
+            super(config);
+        }
+
+        @Override
+        public Placeholders getPlaceholders(GeneratedLeaderboard inv, int n) {
+            Placeholders holders = new Placeholders();
+            holders.register("leaderboard", inv.realizedGains ? portfoliosName : realizedGainsName);
+            return holders;
+        }
+    }
+
+    public class RankItem extends InventoryItem<GeneratedLeaderboard> {
+        private final InventoryItem none;
+
+        public RankItem(ConfigurationSection config) {
+            super(config);
+
+            none = new SimpleItem(config.getConfigurationSection("none"));
+        }
+
+        @Override
+        public ItemStack getDisplayedItem(GeneratedLeaderboard inv, int n) {
+            int index = getSlots().size() * inv.page + n;
+
+            // If above ranked players number, display 'No player'
+            if (index >= inv.ranks.size())
+                return none.getDisplayedItem(inv, n);
+
+            return super.getDisplayedItem(inv, n);
+        }
+
+        @Override
+        public boolean hasDifferentDisplay() {
+            return true;
+        }
+
+        @Override
+        public Placeholders getPlaceholders(GeneratedLeaderboard inv, int n) {
+            int index = getSlots().size() * inv.page + n;
+            Leaderboard.Entry entry = inv.ranks.get(index);
+            String name = Stonks.plugin.leaderboardManager.getName(entry.getUniqueId());
+
+            Placeholders holders = new Placeholders();
+            holders.register("rank", index + 1);
+            holders.register("name", name == null ? "?" : name);
+            holders.register("value", Stonks.plugin.configManager.stockPriceFormat.format(entry.getValue()));
+            return holders;
+        }
+    }
+}
@@ -27,11 +27,12 @@ import org.bukkit.inventory.meta.ItemMeta;
 import org.bukkit.persistence.PersistentDataContainer;
 import org.bukkit.persistence.PersistentDataType;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.UUID;
+import java.util.*;
+import java.util.logging.Level;
 
 /**
  * Displays all your shares from a SPECIFIC stock
@@ -76,6 +77,16 @@ public class SpecificPortfolio extends EditableInventory {
         private final List<Share> shares = new ArrayList<>();
         private int maxPage;
 
+        /**
+         * Archived closed shares, read in the background one page at a time
+         * once closed shares are displayed, and only decoded when displayed
+         */
+        private final Map<UUID, byte[]> archived = new HashMap<>();
+        private final List<UUID> archivedIds = new ArrayList<>();
+        private final Map<UUID, Share> decodedArchived = new HashMap<>();
+        private final Set<UUID> removedArchived = new HashSet<>();
+        private boolean archiveRead, readingArchive;
+
         public GeneratedSpecificPortfolio(PlayerData playerData, Stock stock, EditableInventory editable) {
             super(playerData, editable);
 
@@ -95,7 +106,88 @@ public class SpecificPortfolio extends EditableInventory {
         private void updateInventoryData() {
             shares.clear();
             shares.addAll(playerData.getShares(stock, displayOpenShares));
-            maxPage = Math.max(((int) Math.ceil((double) shares.size() / perPage)) - 1, 0);
+
+            if (!displayOpenShares)
+                readArchived();
+
+            maxPage = Math.max(((int) Math.ceil((double) size() / perPage)) - 1, 0);
+        }
+
+        /**
+         * Reads the archived shares displayed on the current page, plus one
+         * to know if there is a next page. The inventory is opened again
+         * once they are read
+         */
+        private void readArchived() {
+            final int needed = (page + 1) * perPage + 1 - shares.size(), offset = archivedIds.size();
+            if (archiveRead || readingArchive || offset >= needed)
+                return;
+
+            readingArchive = true;
+            Stonks.plugin.shareManager.loadArchived(playerData.getUniqueId(), stock, offset, needed - offset).whenComplete((loaded, error) -> Bukkit.getScheduler().runTask(Stonks.plugin, () -> {
+                readingArchive = false;
+                if (error != null) {
+                    Stonks.plugin.getLogger().log(Level.WARNING, "Could not load archived shares of " + playerData.getUniqueId() + ": " + error.getMessage());
+                    archiveRead = true;
+                    return;
+                }
+
+                // Removals may not be written yet, which shifts the page by as many shares
+                archiveRead = loaded.size() < needed - offset;
+                loaded.forEach((uuid, data) -> {
+                    if (!removedArchived.contains(uuid) && archived.putIfAbsent(uuid, data) == null)
+                        archivedIds.add(uuid);
+                });
+
+                if (!displayOpenShares && player.isOnline() && player.getOpenInventory().getTopInventory().getHolder() == this) {
+                    updateInventoryData();
+                    open();
+                }
+            }));
+        }
+
+        /**
+         * @return Amount of shares displayed, including archived shares
+         */
+        private int size() {
+            return shares.size() + (displayOpenShares ? 0 : archivedIds.size());
+        }
+
+        /**
+         * @return Share at that index, or null if it could not be decoded
+         */
+        @Nullable
+        private Share getShare(int index) {
+            if (index < shares.size())
+                return shares.get(index);
+
+            final UUID uuid = archivedIds.get(index - shares.size());
+            return decodedArchived.computeIfAbsent(uuid, unused -> {
+                try {
+                    return Stonks.plugin.shareManager.decodeArchived(uuid, archived.get(uuid));
+                } catch (IOException | IllegalArgumentException exception) {
+                    Stonks.plugin.getLogger().log(Level.WARNING, "Could not load archived share " + uuid + ": " + exception.getMessage());
+                    return null;
+                }
+            });
+        }
+
+        private Share findShare(UUID uuid) {
+            Share archived = decodedArchived.get(uuid);
+            return archived != null ? archived : playerData.getShareById(stock, uuid);
+        }
+
+        /**
+         * Removes a share from the player, or from the archive if archived
+         */
+        private void removeShare(Share share) {
+            if (decodedArchived.remove(share.getUniqueId()) != null) {
+                archived.remove(share.getUniqueId());
+                archivedIds.remove(share.getUniqueId());
+                removedArchived.add(share.getUniqueId());
+                Stonks.plugin.shareManager.removeArchived(share);
+            } else
+                playerData.unregisterShare(share);
         }
 
         @Override
@@ -124,8 +216,9 @@ public class SpecificPortfolio extends EditableInventory {
             }
 
             // Next Page
-            if (item instanceof PreviousPageItem && page < maxPage) {
+            if (item instanceof NextPageItem && page < maxPage) {
                 page++;
+                updateInventoryData();
                 open();
                 return;
             }
@@ -145,7 +238,7 @@ public class SpecificPortfolio extends EditableInventory {
                 if (shareId == null || shareId.isEmpty())
                     return;
 
-                Share share = playerData.getShareById(stock, UUID.fromString(shareId));
+                Share share = findShare(UUID.fromString(shareId));
 
                 if (event.getAction() == InventoryAction.PICKUP_HALF) {
                     PlayerGenerateSharePaperEvent called = new PlayerGenerateSharePaperEvent(playerData, share);
@@ -154,7 +247,7 @@ public class SpecificPortfolio extends EditableInventory {
                         return;
 
                     // Unregister share before
-                    playerData.unregisterShare(share);
+                    removeShare(share);
 
                     // Get and give bill
                     ItemStack paper = Stonks.plugin.configManager.sharePaper.build(playerData.getPlayer(), share);
@@ -183,11 +276,13 @@ public class SpecificPortfolio extends EditableInventory {
 
                     // Update tax deduction for later
                     playerData.deductTax(Math.max(0, -gain * taxRate) - array[1]);
+                    playerData.addRealizedGain(gain, stock);
 
-                    // Close and call event
-                    share.close(CloseReason.MANUAL);
-                    if (displayOpenShares)
+                    // Close and call event, closed shares are only claimed
+                    if (share.isOpen()) {
+                        share.close(CloseReason.MANUAL);
                         Bukkit.getPluginManager().callEvent(new ShareClosedEvent(share));
+                    }
 
                     // Virtual stock
                     if (share.getStock().isVirtual())
@@ -209,7 +304,7 @@ public class SpecificPortfolio extends EditableInventory {
                         }
                     }
 
-                    playerData.unregisterShare(share);
+                    removeShare(share);
                     updateInventoryData();
                     open();
                 }
@@ -284,10 +379,10 @@ public class SpecificPortfolio extends EditableInventory {
             int index = getSlots().size() * inv.page + n;
 
             // If above stock number, display 'No share'
-            if (index >= inv.shares.size())
+            if (index >= inv.size() || inv.getShare(index) == null)
                 return noShare.getDisplayedItem(inv, n);
 
-            Share share = inv.shares.get(index);
+            Share share = inv.getShare(index);
 
             ItemStack itemStack = super.getDisplayedItem(inv, n);
             ItemMeta meta = itemStack.getItemMeta();
@@ -306,7 +401,7 @@ public class SpecificPortfolio extends EditableInventory {
         @Override
         public Placeholders getPlaceholders(GeneratedSpecificPortfolio inv, int n) {
             int index = getSlots().size() * inv.page + n;
-            Share share = inv.shares.get(index);
+            Share share = inv.getShare(index);
 
             Placeholders holders = new Placeholders();
 
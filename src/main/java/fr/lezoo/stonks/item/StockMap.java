@@ -1,6 +1,7 @@
 package fr.lezoo.stonks.item;
 
 import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.display.ChartType;
 import fr.lezoo.stonks.display.board.DisplayInfo;
 import fr.lezoo.stonks.display.map.StockMapRenderer;
 import fr.lezoo.stonks.gui.objects.item.Placeholders;
@@ -18,9 +19,16 @@ import org.bukkit.map.MapView;
 import java.text.DecimalFormat;
 
 public class StockMap extends CustomItem<DisplayInfo> {
+    private final ChartType chartType;
 
     public StockMap(ConfigurationSection config) {
         super(config);
+
+        chartType = ChartType.fromConfig(config.getString("chart-type"));
+    }
+
+    public ChartType getChartType() {
+        return chartType;
     }
 
     //We add the mapRenderer
@@ -3,9 +3,13 @@ package fr.lezoo.stonks.listener;
 import fr.lezoo.stonks.Stonks;
 import fr.lezoo.stonks.gui.objects.PluginInventory;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerLoginEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
 import org.bukkit.inventory.InventoryHolder;
 
 public class PlayerListener implements Listener {
@@ -27,4 +31,28 @@ public class PlayerListener implements Listener {
         if (holder != null && holder instanceof PluginInventory)
             ((PluginInventory) holder).whenClicked(event);
     }
+
+    /**
+     * Player data of offline players can be evicted from memory
+     */
+    @EventHandler
+    public void c(PlayerQuitEvent event) {
+        Stonks.plugin.playerManager.unload(event.getPlayer());
+    }
+
+    /**
+     * Read player data before players join. Monitor priority so
+     * that data is not read for players who are not allowed to join
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void d(AsyncPlayerPreLoginEvent event) {
+        if (event.getLoginResult() == AsyncPlayerPreLoginEvent.Result.ALLOWED)
+            Stonks.plugin.playerManager.preload(event.getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void e(PlayerLoginEvent event) {
+        if (event.getResult() != PlayerLoginEvent.Result.ALLOWED)
+            Stonks.plugin.playerManager.discardPreloaded(event.getPlayer().getUniqueId());
+    }
 }
@@ -0,0 +1,35 @@
+package fr.lezoo.stonks.listener;
+
+import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.api.event.StockPriceUpdateEvent;
+import fr.lezoo.stonks.player.PlayerData;
+import fr.lezoo.stonks.share.Share;
+import fr.lezoo.stonks.stock.Stock;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.UUID;
+
+public class PortfolioListener implements Listener {
+
+    /**
+     * Updates the portfolio of loaded players owning open shares from the
+     * stock once the price changed. Closed shares have a frozen value and
+     * are only updated when they close
+     */
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void markPortfolios(StockPriceUpdateEvent event) {
+        final Stock stock = event.getStock();
+        Set<UUID> owners = new HashSet<>();
+
+        for (Share share : Stonks.plugin.shareManager.getOpenByStock(stock))
+            if (owners.add(share.getOwner())) {
+                PlayerData playerData = Stonks.plugin.playerManager.getIfLoaded(share.getOwner());
+                if (playerData != null)
+                    playerData.markPortfolio(stock);
+            }
+    }
+}
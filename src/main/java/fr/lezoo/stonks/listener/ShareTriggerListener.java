@@ -0,0 +1,18 @@
+package fr.lezoo.stonks.listener;
+
+import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.api.event.StockPriceUpdateEvent;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.Listener;
+
+public class ShareTriggerListener implements Listener {
+
+    /**
+     * Closes shares as soon as the stock price reaches their
+     * max or min price, or as soon as they are in deficit
+     */
+    @EventHandler
+    public void closeTriggered(StockPriceUpdateEvent event) {
+        Stonks.plugin.shareManager.closeTriggered(event.getStock());
+    }
+}
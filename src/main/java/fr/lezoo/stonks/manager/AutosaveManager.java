@@ -0,0 +1,123 @@
+package fr.lezoo.stonks.manager;
+
+import fr.lezoo.stonks.Stonks;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+
+/**
+ * Periodically saves plugin data without stalling the server. The main
+ * thread only captures a snapshot of every {@link FileManager}, which is
+ * then serialized and written to files on a single background thread.
+ * <p>
+ * Shares are not part of the autosave as every share change is
+ * already written to the share journal when it happens.
+ */
+public class AutosaveManager {
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "Stonks Autosave"));
+
+    /**
+     * Prevents autosaves from piling up if writing takes longer than the period
+     */
+    private final AtomicBoolean saving = new AtomicBoolean();
+
+    private BukkitTask task;
+
+    /**
+     * Timings of the last autosave, in nanoseconds
+     */
+    private volatile long lastSnapshotTime, lastWriteTime, maxSnapshotTime;
+    private volatile int autosaves;
+
+    /**
+     * @param period Ticks between two autosaves, 0 or less to disable autosave
+     */
+    public void start(long period) {
+        if (period > 0)
+            task = Bukkit.getScheduler().runTaskTimer(Stonks.plugin, this::autosave, period, period);
+    }
+
+    /**
+     * Captures a snapshot of all managers and writes it in the background
+     */
+    public void autosave() {
+        if (!saving.compareAndSet(false, true))
+            return;
+
+        final long start = System.nanoTime();
+        List<Runnable> writes = new ArrayList<>();
+        for (FileManager manager : getManagers())
+            try {
+                writes.add(manager.snapshot());
+            } catch (RuntimeException exception) {
+                Stonks.plugin.getLogger().log(Level.SEVERE, "Could not capture data of " + manager.getClass().getSimpleName() + ": " + exception.getMessage());
+            }
+        lastSnapshotTime = System.nanoTime() - start;
+        maxSnapshotTime = Math.max(maxSnapshotTime, lastSnapshotTime);
+
+        writer.execute(() -> {
+            final long writeStart = System.nanoTime();
+            for (Runnable write : writes)
+                try {
+                    write.run();
+                } catch (RuntimeException exception) {
+                    Stonks.plugin.getLogger().log(Level.SEVERE, "Could not autosave data: " + exception.getMessage());
+                }
+            lastWriteTime = System.nanoTime() - writeStart;
+            autosaves++;
+            saving.set(false);
+        });
+    }
+
+    /**
+     * Cancels autosave and waits for the last one to be written
+     */
+    public void stop() {
+        if (task != null)
+            task.cancel();
+
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(30, TimeUnit.SECONDS))
+                Stonks.plugin.getLogger().log(Level.SEVERE, "Timed out while waiting for autosave to complete");
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return Time spent on the main thread by the last autosave, in nanoseconds
+     */
+    public long getLastSnapshotTime() {
+        return lastSnapshotTime;
+    }
+
+    /**
+     * @return Longest time spent on the main thread by an autosave, in nanoseconds
+     */
+    public long getMaxSnapshotTime() {
+        return maxSnapshotTime;
+    }
+
+    /**
+     * @return Time spent writing files by the last autosave, in nanoseconds
+     */
+    public long getLastWriteTime() {
+        return lastWriteTime;
+    }
+
+    public int getAutosaves() {
+        return autosaves;
+    }
+
+    private FileManager[] getManagers() {
+        return new FileManager[]{Stonks.plugin.stockManager, Stonks.plugin.boardManager, Stonks.plugin.playerManager, Stonks.plugin.signManager, Stonks.plugin.leaderboardManager, Stonks.plugin.quoteScheduler};
+    }
+}
@@ -3,7 +3,9 @@ package fr.lezoo.stonks.manager;
 import fr.lezoo.stonks.Stonks;
 import fr.lezoo.stonks.display.board.Board;
 import fr.lezoo.stonks.util.ConfigFile;
+import fr.lezoo.stonks.util.ConfigSession;
 import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.Collection;
@@ -29,14 +31,16 @@ public class BoardManager implements FileManager {
     }
 
     @Override
-    public void load() {
-        FileConfiguration config = new ConfigFile("board-data").getConfig();
-        for (String key : config.getKeys(false))
-            try {
-                register(new Board(config.getConfigurationSection(key)));
-            } catch (IllegalArgumentException exception) {
-                Stonks.plugin.getLogger().log(Level.WARNING, "Could not load board info '" + key + "'");
-            }
+    public Runnable read(ConfigSession session) {
+        FileConfiguration config = session.getConfig("", "board-data");
+        return () -> {
+            for (String key : config.getKeys(false))
+                try {
+                    register(new Board(config.getConfigurationSection(key)));
+                } catch (IllegalArgumentException exception) {
+                    Stonks.plugin.getLogger().log(Level.WARNING, "Could not load board info '" + key + "'");
+                }
+        };
     }
 
     public void refreshBoards() {
@@ -47,17 +51,14 @@ public class BoardManager implements FileManager {
     }
 
     @Override
-    public void save() {
-        ConfigFile configfile = new ConfigFile("board-data");
+    public Runnable snapshot() {
+        FileConfiguration config = new YamlConfiguration();
 
-        // Remove older (!!)
-        configfile.getConfig().getKeys(false).forEach(key -> configfile.getConfig().set(key, null));
-
-        // Save newest
-        boards.values().forEach(board -> board.saveBoard(configfile.getConfig()));
+        // Save newest, older boards are overwritten
+        boards.values().forEach(board -> board.saveBoard(config));
 
         // Last, save
-        configfile.save();
+        return () -> new ConfigFile("", "board-data", config).save();
     }
 
     public void register(Board board) {
@@ -1,6 +1,8 @@
 package fr.lezoo.stonks.manager;
 
 import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.display.ChartType;
+import fr.lezoo.stonks.gui.LeaderboardMenu;
 import fr.lezoo.stonks.gui.ShareMenu;
 import fr.lezoo.stonks.gui.SpecificPortfolio;
 import fr.lezoo.stonks.gui.StockList;
@@ -8,11 +10,13 @@ import fr.lezoo.stonks.gui.objects.EditableInventory;
 import fr.lezoo.stonks.item.SharePaper;
 import fr.lezoo.stonks.item.StockMap;
 import fr.lezoo.stonks.stock.api.StockAPI;
-import fr.lezoo.stonks.util.ConfigFile;
 import fr.lezoo.stonks.util.ConfigSchedule;
+import fr.lezoo.stonks.util.ConfigSession;
+import fr.lezoo.stonks.util.Utils;
 import fr.lezoo.stonks.util.message.Language;
 import fr.lezoo.stonks.util.message.Message;
 import org.apache.commons.lang.Validate;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
 
 import java.io.File;
@@ -35,21 +39,38 @@ public class ConfigManager {
     public final ShareMenu SHARE_MENU = new ShareMenu();
 
     public final SpecificPortfolio SPECIFIC_PORTFOLIO = new SpecificPortfolio();
+    public final LeaderboardMenu LEADERBOARD = new LeaderboardMenu();
 
-    private final EditableInventory[] guis = {STOCK_LIST, SHARE_MENU, SPECIFIC_PORTFOLIO};
+    private final EditableInventory[] guis = {STOCK_LIST, SHARE_MENU, SPECIFIC_PORTFOLIO, LEADERBOARD};
 
     // Accessible public config fields
     public DecimalFormat stockPriceFormat, shareFormat;
     public DateFormat dateFormat;
     public ConfigSchedule closeTime, openTime;
-    public boolean closeTimeEnabled;
+    public boolean closeTimeEnabled, callShareClosedEvents;
     public List<String> displaySignFormat;
     public int dividendsRedeemHour;
 
-    public long boardRefreshTime, shareRefreshTime, signRefreshTime, mapRefreshTime;
+    public long boardRefreshTime, shareRefreshTime, signRefreshTime, mapRefreshTime, shareJournalCompactionPeriod, autosavePeriod;
+
+    /**
+     * In millis. Retention is 0 if archived shares are never deleted
+     */
+    public long closedShareArchiveAge, closedShareRetention;
     public double defaultTaxRate, maximumLeverage;
-    public int maxInteractionDistance, defaultDividendPeriod;
+    public int maxInteractionDistance, defaultDividendPeriod, playerDataIOThreads, offlinePlayerDataCacheSize, leaderboardSize;
     public String defaultDividendFormula;
+    public ConfigurationSection defaultPriceHistory;
+
+    /**
+     * Layout of display boards, parsed once instead of every board refresh
+     */
+    public FileConfiguration boardLayout;
+
+    /**
+     * Parsed with the board layout so that a wrong value does not fail board refreshes
+     */
+    public ChartType boardChartType;
 
     public void reload() {
 
@@ -68,11 +89,22 @@ public class ConfigManager {
         mapRefreshTime = Stonks.plugin.getConfig().getLong("map-refresh-time");
         shareRefreshTime = Stonks.plugin.getConfig().getLong("share-refresh-time");
         signRefreshTime = Stonks.plugin.getConfig().getLong("sign-refresh-time");
+        shareJournalCompactionPeriod = Stonks.plugin.getConfig().getLong("share-journal-compaction-period", 300);
+        Validate.isTrue(shareJournalCompactionPeriod > 0, "Share journal compaction period must be strictly positive");
+        autosavePeriod = Stonks.plugin.getConfig().getLong("autosave-period", 300);
+        playerDataIOThreads = Stonks.plugin.getConfig().getInt("player-data-io-threads", 4);
+        offlinePlayerDataCacheSize = Stonks.plugin.getConfig().getInt("offline-player-data-cache-size", 1000);
+        leaderboardSize = Stonks.plugin.getConfig().getInt("leaderboard-size", 100);
+        callShareClosedEvents = Stonks.plugin.getConfig().getBoolean("call-share-closed-events", true);
+        closedShareArchiveAge = Utils.parseDuration(Stonks.plugin.getConfig().getString("closed-share-archive.archive-after", "7d"));
+        final String retention = Stonks.plugin.getConfig().getString("closed-share-archive.retention", "");
+        closedShareRetention = retention.isEmpty() ? 0 : Utils.parseDuration(retention);
         maxInteractionDistance = Stonks.plugin.getConfig().getInt("max-interaction-distance");
         defaultTaxRate = Stonks.plugin.getConfig().getDouble("default-tax-rate");
         defaultDividendFormula = Stonks.plugin.getConfig().getString("default-dividends.formula");
         defaultDividendPeriod = Stonks.plugin.getConfig().getInt("default-dividends.period");
         maximumLeverage = Stonks.plugin.getConfig().getDouble("maximum-leverage",10);
+        defaultPriceHistory = Stonks.plugin.getConfig().getConfigurationSection("default-price-history");
         // Useful checks
         Validate.isTrue(displaySignFormat.size() == 4, "Display sign format should be of length 4");
 
@@ -80,55 +112,64 @@ public class ConfigManager {
         for (DefaultFile def : DefaultFile.values())
             def.checkFile();
 
+        // Every language file is parsed and saved at most once
+        ConfigSession session = new ConfigSession("language files");
+
         // Save default language file
-        ConfigFile language = new ConfigFile("/language", "language");
+        FileConfiguration language = session.getConfig("/language", "language");
         for (Language key : Language.values()) {
             String path = key.getPath();
-            if (!language.getConfig().contains(path))
-                language.getConfig().set(path, key.getCached());
+            if (!language.contains(path)) {
+                language.set(path, key.getCached());
+                session.setChanged("/language", "language");
+            }
 
-            key.update(language.getConfig().getString(path));
+            key.update(language.getString(path));
         }
-        language.save();
 
-        // Save default messages
-        ConfigFile messages = new ConfigFile("/language", "messages");
+        // Save default messages and reload messages
+        FileConfiguration messages = session.getConfig("/language", "messages");
         for (Message key : Message.values()) {
             String path = key.getPath();
-            if (!messages.getConfig().contains(path)) {
-                messages.getConfig().set(path + ".format", key.getCached());
+            if (!messages.contains(path)) {
+                messages.set(path + ".format", key.getCached());
                 if (key.hasSound()) {
-                    messages.getConfig().set(path + ".sound.name", key.getSound().getSound().name());
-                    messages.getConfig().set(path + ".sound.vol", key.getSound().getVolume());
-                    messages.getConfig().set(path + ".sound.pitch", key.getSound().getPitch());
+                    messages.set(path + ".sound.name", key.getSound().getSound().name());
+                    messages.set(path + ".sound.vol", key.getSound().getVolume());
+                    messages.set(path + ".sound.pitch", key.getSound().getPitch());
                 }
+                session.setChanged("/language", "messages");
             }
 
-            key.update(messages.getConfig().getConfigurationSection(path));
-        }
-        messages.save();
-
-        // Reload messages
-        FileConfiguration messagesConfig = new ConfigFile("/language", "messages").getConfig();
-        for (Message message : Message.values())
             try {
-                message.update(messagesConfig.getConfigurationSection(message.getPath()));
+                key.update(messages.getConfigurationSection(path));
             } catch (IllegalArgumentException exception) {
-                Stonks.plugin.getLogger().log(Level.WARNING, "Could not reload message " + message.name() + ": " + exception.getMessage());
+                Stonks.plugin.getLogger().log(Level.WARNING, "Could not reload message " + key.name() + ": " + exception.getMessage());
             }
+        }
 
         // Reload items
-        FileConfiguration itemsConfig = new ConfigFile("/language", "items").getConfig();
+        FileConfiguration itemsConfig = session.getConfig("/language", "items");
         sharePaper = new SharePaper(itemsConfig.getConfigurationSection("PHYSICAL_SHARE_BILL"));
         stockMap = new StockMap(itemsConfig.getConfigurationSection("STOCK_MAP"));
 
+        // Reload board layout
+        boardLayout = session.getConfig("/language", "board");
+        try {
+            boardChartType = ChartType.fromConfig(boardLayout.getString("chart-type"));
+        } catch (IllegalArgumentException exception) {
+            boardChartType = ChartType.LINE;
+            Stonks.plugin.getLogger().log(Level.WARNING, "Could not load board chart type: " + exception.getMessage());
+        }
+
         // Reload GUIs
         for (EditableInventory inv : guis)
             try {
-                inv.reload(new ConfigFile("/language/gui", inv.getId()).getConfig());
+                inv.reload(session.getConfig("/language/gui", inv.getId()));
             } catch (IllegalArgumentException exception) {
                 Stonks.plugin.getLogger().log(Level.WARNING, "Could not load custom inventory '" + inv.getId() + "': " + exception.getMessage());
             }
+        session.flush();
 
 
         // Reload real stock API
@@ -148,6 +189,7 @@ public class ConfigManager {
         GUI_STOCK_LIST("language/gui", "stock-list.yml"),
         GUI_SHARE_MENU("language/gui", "share-menu.yml"),
         GUI_SPECIFIC_PORTFOLIO("language/gui", "specific-portfolio.yml"),
+        GUI_LEADERBOARD("language/gui", "leaderboard.yml"),
         ;
 
         private final String folderName, fileName;
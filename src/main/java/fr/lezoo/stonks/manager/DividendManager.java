@@ -40,7 +40,7 @@ public class DividendManager {
                 stock.getDividends().setLastApplication(System.currentTimeMillis() - DIVIDEND_SAFE_TIME_OUT);
 
                 // Give money to shares
-                for (Share share : Stonks.plugin.shareManager.getByStock(stock))
+                for (Share share : Stonks.plugin.shareManager.getOpenByStock(stock))
                     share.addToWallet(stock.getDividends().applyFormula(share));
             }
     }
@@ -1,7 +1,43 @@
 package fr.lezoo.stonks.manager;
 
+import fr.lezoo.stonks.util.ConfigSession;
+
 public interface FileManager {
-    public void load();
 
-    public void save();
+    /**
+     * Loads synchronously, using its own config session
+     */
+    public default void load() {
+        ConfigSession session = new ConfigSession(getClass().getSimpleName() + " files");
+        read(session).run();
+        session.flush();
+    }
+
+    /**
+     * Called on a worker thread when the plugin enables. Reads and parses
+     * files, but must not register anything in live plugin objects: this
+     * is done by the returned task, run on the main thread.
+     *
+     * @param session Session shared by all managers loading at the same
+     *                time, config files must be requested from it
+     * @return Task registering what was read
+     */
+    public Runnable read(ConfigSession session);
+
+    /**
+     * Called on the main thread, captures everything that needs to be
+     * saved. This must be cheap: serializing and writing files is done
+     * by the returned task which may run on another thread, so it must
+     * only use the captured data and never live plugin objects.
+     *
+     * @return Task writing the captured data to files
+     */
+    public Runnable snapshot();
+
+    /**
+     * Saves synchronously, used when the plugin disables
+     */
+    public default void save() {
+        snapshot().run();
+    }
 }
@@ -0,0 +1,211 @@
+package fr.lezoo.stonks.manager;
+
+import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.player.Leaderboard;
+import fr.lezoo.stonks.player.PlayerData;
+import fr.lezoo.stonks.player.Portfolio;
+import fr.lezoo.stonks.stock.Stock;
+import fr.lezoo.stonks.util.ConfigFile;
+import fr.lezoo.stonks.util.ConfigSession;
+import org.bukkit.Bukkit;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+
+/**
+ * Ranks players by portfolio value, realized gain and holdings in
+ * every stock. Rankings are updated by loaded player data whenever
+ * their portfolio changes. Values of players whose data is not loaded
+ * are the last ones known, saved in the leaderboard data file.
+ */
+public class LeaderboardManager implements FileManager {
+    private final Leaderboard portfolios = new Leaderboard(), realizedGains = new Leaderboard();
+
+    /**
+     * Links stock IDs to rankings of the amount of shares owned. Concurrent
+     * like names, as both are read by asynchronous placeholders
+     */
+    private final Map<String, Leaderboard> holdings = new ConcurrentHashMap<>();
+
+    /**
+     * Last known names of ranked players
+     */
+    private final Map<UUID, String> names = new ConcurrentHashMap<>();
+
+    private boolean refreshScheduled;
+
+    public Leaderboard getPortfolios() {
+        return portfolios;
+    }
+
+    public Leaderboard getRealizedGains() {
+        return realizedGains;
+    }
+
+    /**
+     * @return Ranking of the amount of shares owned from that stock
+     */
+    @NotNull
+    public Leaderboard getHoldings(Stock stock) {
+        return holdings.computeIfAbsent(stock.getId(), id -> new Leaderboard());
+    }
+
+    /**
+     * @return Name of a ranked player, or null if unknown
+     */
+    @Nullable
+    public String getName(UUID uuid) {
+        return names.get(uuid);
+    }
+
+    /**
+     * Updates every ranking of a player, called when player data is loaded
+     */
+    public void update(PlayerData playerData) {
+        updateName(playerData);
+        updateTotals(playerData);
+        for (Stock stock : Stonks.plugin.stockManager.getStocks())
+            updateHoldings(playerData, stock);
+        scheduleRefresh();
+    }
+
+    /**
+     * Updates the rankings of a player after the value of
+     * their shares from one stock or their realized gain changed
+     */
+    public void update(PlayerData playerData, Stock stock) {
+        updateName(playerData);
+        updateTotals(playerData);
+        updateHoldings(playerData, stock);
+        scheduleRefresh();
+    }
+
+    private void updateName(PlayerData playerData) {
+        final UUID uuid = playerData.getUniqueId();
+        if (playerData.isOnline())
+            names.put(uuid, playerData.getPlayer().getName());
+        else if (!names.containsKey(uuid)) {
+            String name = Bukkit.getOfflinePlayer(uuid).getName();
+            if (name != null)
+                names.put(uuid, name);
+        }
+    }
+
+    private void updateTotals(PlayerData playerData) {
+        final UUID uuid = playerData.getUniqueId();
+        Portfolio.Position total = playerData.getPortfolio().getTotal();
+        if (total.getCount() > 0)
+            portfolios.update(uuid, total.getValue());
+        else
+            portfolios.remove(uuid);
+
+        if (playerData.getRealizedGain() != 0)
+            realizedGains.update(uuid, playerData.getRealizedGain());
+        else
+            realizedGains.remove(uuid);
+    }
+
+    private void updateHoldings(PlayerData playerData, Stock stock) {
+        final double amount = playerData.getPortfolio().getPosition(stock.getId()).getAmount();
+        if (amount > 0)
+            getHoldings(stock).update(playerData.getUniqueId(), amount);
+        else {
+            Leaderboard holdings = this.holdings.get(stock.getId());
+            if (holdings != null)
+                holdings.remove(playerData.getUniqueId());
+        }
+    }
+
+    /**
+     * Tops of rankings are copied once at the end of the tick
+     * however many players were updated during that tick
+     */
+    private void scheduleRefresh() {
+        if (refreshScheduled || !Stonks.plugin.isEnabled())
+            return;
+
+        refreshScheduled = true;
+        Bukkit.getScheduler().runTask(Stonks.plugin, this::refresh);
+    }
+
+    private void refresh() {
+        refreshScheduled = false;
+        final int size = Stonks.plugin.configManager.leaderboardSize;
+
+        refresh(portfolios, size);
+        refresh(realizedGains, size);
+        for (Leaderboard leaderboard : holdings.values())
+            refresh(leaderboard, size);
+    }
+
+    private void refresh(Leaderboard leaderboard, int size) {
+        if (leaderboard.isOutdated())
+            leaderboard.refresh(size);
+    }
+
+    @Override
+    public Runnable read(ConfigSession session) {
+        FileConfiguration config = session.getConfig("", "leaderboard-data");
+        return () -> {
+            load(config.getConfigurationSection("portfolio"), portfolios);
+            load(config.getConfigurationSection("realized-gain"), realizedGains);
+
+            if (config.contains("holdings"))
+                for (String stockId : config.getConfigurationSection("holdings").getKeys(false))
+                    if (Stonks.plugin.stockManager.has(stockId))
+                        load(config.getConfigurationSection("holdings." + stockId), holdings.computeIfAbsent(stockId, id -> new Leaderboard()));
+
+            if (config.contains("names"))
+                for (String key : config.getConfigurationSection("names").getKeys(false))
+                    try {
+                        names.put(UUID.fromString(key), config.getString("names." + key, "?"));
+                    } catch (IllegalArgumentException exception) {
+                        Stonks.plugin.getLogger().log(Level.WARNING, "Could not load leaderboard name of " + key + ": " + exception.getMessage());
+                    }
+
+            scheduleRefresh();
+        };
+    }
+
+    private void load(@Nullable ConfigurationSection config, Leaderboard leaderboard) {
+        if (config != null)
+            for (String key : config.getKeys(false))
+                try {
+                    leaderboard.update(UUID.fromString(key), config.getDouble(key));
+                } catch (IllegalArgumentException exception) {
+                    Stonks.plugin.getLogger().log(Level.WARNING, "Could not load leaderboard value of " + key + ": " + exception.getMessage());
+                }
+    }
+
+    /**
+     * Entries are immutable, so only the lists are copied on
+     * the main thread and the file is built in the background
+     */
+    @Override
+    public Runnable snapshot() {
+        Map<String, List<Leaderboard.Entry>> entries = new LinkedHashMap<>();
+        entries.put("portfolio", new ArrayList<>(portfolios.getEntries()));
+        entries.put("realized-gain", new ArrayList<>(realizedGains.getEntries()));
+        holdings.forEach((stockId, leaderboard) -> {
+            if (Stonks.plugin.stockManager.has(stockId))
+                entries.put("holdings." + stockId, new ArrayList<>(leaderboard.getEntries()));
+        });
+        Map<UUID, String> names = new HashMap<>(this.names);
+
+        return () -> {
+            FileConfiguration config = new YamlConfiguration();
+            entries.forEach((path, list) -> {
+                for (Leaderboard.Entry entry : list)
+                    config.set(path + "." + entry.getUniqueId(), entry.getValue());
+            });
+            names.forEach((uuid, name) -> config.set("names." + uuid, name));
+            new ConfigFile("", "leaderboard-data", config).save();
+        };
+    }
+}
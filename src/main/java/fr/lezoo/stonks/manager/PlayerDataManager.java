@@ -1,46 +1,306 @@
 package fr.lezoo.stonks.manager;
 
+import fr.lezoo.stonks.Stonks;
 import fr.lezoo.stonks.player.PlayerData;
-import fr.lezoo.stonks.util.ConfigFile;
+import fr.lezoo.stonks.util.ConfigSession;
+import org.apache.commons.lang.Validate;
 import org.bukkit.Bukkit;
 import org.bukkit.OfflinePlayer;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.UUID;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.logging.Level;
 
+/**
+ * Player data of online players is always kept in memory. Player data of
+ * offline players is loaded on demand and kept in a size-bounded LRU cache.
+ * When evicted from the cache, it is written back if it changed since the
+ * last save.
+ */
 public class PlayerDataManager implements FileManager {
-    private final Map<UUID, PlayerData> map = new HashMap<>();
+    private final Map<UUID, PlayerData> online = new HashMap<>();
 
+    /**
+     * Ordered by last access, least recently used player data first
+     */
+    private final Map<UUID, PlayerData> offline = new LinkedHashMap<UUID, PlayerData>(16, .75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, PlayerData> eldest) {
+            if (size() <= Stonks.plugin.configManager.offlinePlayerDataCacheSize)
+                return false;
+
+            writeBack(eldest.getValue());
+            return true;
+        }
+    };
+
+    /**
+     * Player data captured but not written yet. It is used instead of
+     * the storage when loading player data so that pending changes are
+     * not lost if player data is loaded again in the meantime
+     */
+    private final Map<UUID, FileConfiguration> pendingWrites = new ConcurrentHashMap<>();
+
+    /**
+     * Player data read before players join the server
+     */
+    private final Map<UUID, PreloadedData> preloaded = new ConcurrentHashMap<>();
+
+    /**
+     * Threads writing player data, created once the config is loaded.
+     * When its queue is full, files are written by the thread submitting
+     * them which slows down submission instead of queuing an unbounded
+     * amount of writes
+     */
+    private ThreadPoolExecutor writers;
+
+    /**
+     * Must be called once the config and the storage are loaded
+     */
+    public void start() {
+        Validate.isTrue(writers == null, "Player data manager already started");
+
+        final int threads = Math.max(1, Stonks.plugin.configManager.playerDataIOThreads);
+        writers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(threads * 16),
+                runnable -> new Thread(runnable, "Stonks Player Data Writer"), new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Waits for pending writes, including write-backs of evicted
+     * player data. Must be called before the storage is closed
+     */
+    public void close() {
+        if (writers == null)
+            return;
+
+        writers.shutdown();
+        try {
+            if (!writers.awaitTermination(30, TimeUnit.SECONDS))
+                Stonks.plugin.getLogger().log(Level.SEVERE, "Timed out while waiting for player data to be written");
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gets the player data of a player, loading it if the player is offline
+     * and their data is not cached yet. Loading is synchronous.
+     *
+     * @param player Online or offline player
+     * @return Player data
+     */
+    @NotNull
     public PlayerData get(OfflinePlayer player) {
-        return map.get(player.getUniqueId());
+        final UUID uuid = player.getUniqueId();
+        PlayerData found = online.get(uuid);
+        if (found != null)
+            return found;
+
+        found = offline.get(uuid);
+        if (found == null) {
+            found = new PlayerData(uuid, null, loadConfig(uuid));
+            offline.put(uuid, found);
+        }
+        return found;
     }
 
+    /**
+     * Reads player data of online players, which is only the case when
+     * the plugin is enabled after startup. The main thread waits for
+     * startup loading, so players cannot log in or off meanwhile
+     */
     @Override
-    public void load() {
-        // Load player data of online players
-        Bukkit.getOnlinePlayers().forEach(player -> map.put(player.getUniqueId(), new PlayerData(player)));
+    public Runnable read(ConfigSession session) {
+        for (Player player : Bukkit.getOnlinePlayers())
+            preload(player.getUniqueId());
+
+        return () -> Bukkit.getOnlinePlayers().forEach(this::setup);
+    }
+
+    /**
+     * Does not load player data
+     *
+     * @return Player data if in memory, or null
+     */
+    @Nullable
+    public PlayerData getIfLoaded(UUID uuid) {
+        PlayerData found = online.get(uuid);
+        return found != null ? found : offline.get(uuid);
     }
 
     /**
-     * Called when a player logs on the server
+     * Called asynchronously when a player tries to log in so that player
+     * data is read and parsed before they join, off the main thread
+     */
+    public void preload(UUID uuid) {
+        PreloadedData preloaded = new PreloadedData();
+        this.preloaded.put(uuid, preloaded);
+
+        try {
+            preloaded.config = loadConfig(uuid);
+        } catch (IllegalArgumentException exception) {
+            // Loaded again when joining
+            Stonks.plugin.getLogger().log(Level.WARNING, exception.getMessage());
+        }
+    }
+
+    /**
+     * Called when a player fails to log in after their data was preloaded
+     */
+    public void discardPreloaded(UUID uuid) {
+        preloaded.remove(uuid);
+    }
+
+    /**
+     * Called when a player logs on the server. Only binds player data
+     * to the player if it was preloaded
      */
     public void setup(Player player) {
-        if (map.containsKey(player.getUniqueId()))
-            map.get(player.getUniqueId()).updatePlayer(player);
-        else
-            map.put(player.getUniqueId(), new PlayerData(player));
+        final UUID uuid = player.getUniqueId();
+        final PreloadedData preloaded = this.preloaded.remove(uuid);
+
+        PlayerData playerData = offline.remove(uuid);
+        if (playerData == null)
+            playerData = online.containsKey(uuid) ? online.get(uuid) : new PlayerData(uuid, player, preloaded != null && preloaded.isValid() ? preloaded.config : loadConfig(uuid));
+        playerData.updatePlayer(player);
+        online.put(uuid, playerData);
+    }
+
+    /**
+     * Called when a player logs off. Their player data is moved to the
+     * offline player data cache and can be evicted from then on
+     */
+    public void unload(Player player) {
+        PlayerData playerData = online.remove(player.getUniqueId());
+        if (playerData == null)
+            return;
+
+        playerData.updatePlayer(null);
+        offline.put(player.getUniqueId(), playerData);
+    }
+
+    private FileConfiguration loadConfig(UUID uuid) {
+        FileConfiguration pending = pendingWrites.get(uuid);
+        if (pending != null)
+            return pending;
+
+        try {
+            return Stonks.plugin.storage.loadPlayerData(uuid);
+        } catch (IOException exception) {
+            throw new IllegalArgumentException("Could not load player data of " + uuid + ": " + exception.getMessage(), exception);
+        }
+    }
+
+    /**
+     * Saves evicted player data with the writer threads if it changed,
+     * so that it is written before the storage is closed
+     */
+    private void writeBack(PlayerData playerData) {
+        if (!playerData.isDirty())
+            return;
+
+        final FileConfiguration config = capture(playerData);
+        writers.execute(() -> write(playerData.getUniqueId(), config));
     }
 
+    /**
+     * Must be called on the main thread
+     */
+    private FileConfiguration capture(PlayerData playerData) {
+        FileConfiguration config = new YamlConfiguration();
+        playerData.saveInConfig(config);
+        playerData.setDirty(false);
+        pendingWrites.put(playerData.getUniqueId(), config);
+
+        // Preloaded data might be older than what was just captured
+        PreloadedData preloaded = this.preloaded.get(playerData.getUniqueId());
+        if (preloaded != null)
+            preloaded.outdated = true;
+
+        return config;
+    }
+
+    /**
+     * @return If player data was successfully written
+     */
+    private boolean write(UUID uuid, FileConfiguration config) {
+        try {
+            Stonks.plugin.storage.savePlayerData(uuid, config);
+            return true;
+        } catch (IOException exception) {
+            Stonks.plugin.getLogger().log(Level.SEVERE, "Could not save player data of " + uuid + ": " + exception.getMessage());
+            return false;
+        } finally {
+            // Newer changes may have been captured in the meantime
+            pendingWrites.remove(uuid, config);
+        }
+    }
+
+    /**
+     * Only player data which changed since the last save is captured
+     */
     @Override
-    public void save() {
+    public Runnable snapshot() {
+
+        // Capture player data
+        Map<PlayerData, FileConfiguration> configs = new HashMap<>();
+        for (PlayerData player : online.values())
+            if (player.isDirty())
+                configs.put(player, capture(player));
+        for (PlayerData player : offline.values())
+            if (player.isDirty())
+                configs.put(player, capture(player));
+
+        return () -> write(configs);
+    }
+
+    /**
+     * Files are written by the writer threads, the calling thread waits for them
+     */
+    private void write(Map<PlayerData, FileConfiguration> configs) {
+        if (configs.isEmpty())
+            return;
+
+        List<Future<?>> writes = new ArrayList<>(configs.size());
+        configs.forEach((player, config) -> writes.add(writers.submit(() -> {
+
+            // Try again during next save
+            if (!write(player.getUniqueId(), config))
+                player.setDirty(true);
+        })));
+
+        for (Future<?> write : writes)
+            try {
+                write.get();
+            } catch (ExecutionException exception) {
+                Stonks.plugin.getLogger().log(Level.SEVERE, "Could not save player data: " + exception.getCause().getMessage());
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+    }
+
+    private static class PreloadedData {
+
+        /**
+         * Null until read, or if it could not be read
+         */
+        private volatile FileConfiguration config;
+
+        /**
+         * Set if player data was captured for saving while being
+         * preloaded, in which case the preloaded data may be outdated
+         */
+        private volatile boolean outdated;
 
-        // Save player data
-        for (PlayerData player : map.values()) {
-            ConfigFile config = new ConfigFile("/userdata", player.getUniqueId().toString());
-            player.saveInConfig(config.getConfig());
-            config.save();
+        boolean isValid() {
+            return config != null && !outdated;
         }
     }
 }
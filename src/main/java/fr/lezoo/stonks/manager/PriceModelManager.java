@@ -0,0 +1,107 @@
+package fr.lezoo.stonks.manager;
+
+import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.api.event.StockPriceUpdateEvent;
+import fr.lezoo.stonks.stock.handler.FictiveStockHandler;
+import fr.lezoo.stonks.stock.model.GeometricBrownianMotion;
+import fr.lezoo.stonks.stock.model.JumpDiffusionModel;
+import fr.lezoo.stonks.stock.model.MeanReversionModel;
+import fr.lezoo.stonks.stock.model.PriceModel;
+import fr.lezoo.stonks.stock.model.PriceModelGroup;
+import org.apache.commons.lang.Validate;
+import org.bukkit.Bukkit;
+import org.bukkit.scheduler.BukkitTask;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Steps the prices of all fictive stocks with one task running
+ * every tick, instead of one task per stock. Stocks are grouped
+ * by price model, and every group has its own random generator.
+ */
+public class PriceModelManager {
+
+    /**
+     * Concurrent as models are looked up when stocks load
+     */
+    private final Map<String, PriceModel> models = new ConcurrentHashMap<>();
+    private final Map<PriceModel, PriceModelGroup> groups = new HashMap<>();
+    private final SplittableRandom random = new SplittableRandom();
+    private final PriceModel defaultModel = new GeometricBrownianMotion();
+
+    private BukkitTask task;
+    private long tick;
+
+    public PriceModelManager() {
+        register(defaultModel);
+        register(new MeanReversionModel());
+        register(new JumpDiffusionModel());
+    }
+
+    /**
+     * Models must be registered before stocks load
+     */
+    public void register(PriceModel model) {
+        Validate.isTrue(!models.containsKey(model.getId()), "There is already a price model with ID '" + model.getId() + "'");
+        models.put(model.getId(), model);
+    }
+
+    /**
+     * Gets the model with corresponding ID, or throws an IAE
+     */
+    @NotNull
+    public PriceModel get(String id) {
+        Validate.isTrue(models.containsKey(id), "No price model found with ID '" + id + "'");
+        return models.get(id);
+    }
+
+    /**
+     * @return Model used by stocks which do not specify one
+     */
+    @NotNull
+    public PriceModel getDefault() {
+        return defaultModel;
+    }
+
+    /**
+     * Starts stepping the price of a stock every refresh period
+     */
+    public void add(FictiveStockHandler handler) {
+        groups.computeIfAbsent(handler.getModel(), model -> new PriceModelGroup(model, random.split())).add(handler, handler.getStock().getRefreshPeriod());
+    }
+
+    public void remove(FictiveStockHandler handler) {
+        PriceModelGroup group = groups.get(handler.getModel());
+        if (group != null && handler.getSlot() >= 0)
+            group.remove(handler.getSlot());
+    }
+
+    public void start() {
+        Validate.isTrue(task == null, "Price models already started");
+        task = Bukkit.getScheduler().runTaskTimer(Stonks.plugin, this::step, 20, 1);
+    }
+
+    public void stop() {
+        if (task != null)
+            task.cancel();
+        task = null;
+    }
+
+    private void step() {
+        tick++;
+
+        for (PriceModelGroup group : groups.values()) {
+            if (group.size() == 0)
+                continue;
+
+            group.step(tick);
+            for (int i = 0; i < group.size(); i++)
+                if (group.isStepped(i))
+                    Bukkit.getPluginManager().callEvent(new StockPriceUpdateEvent(group.getHandler(i).getStock()));
+        }
+    }
+}
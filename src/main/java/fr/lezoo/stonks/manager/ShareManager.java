@@ -2,90 +2,366 @@ package fr.lezoo.stonks.manager;
 
 import fr.lezoo.stonks.Stonks;
 import fr.lezoo.stonks.api.event.ShareClosedEvent;
+import fr.lezoo.stonks.api.event.SharesClosedBatchEvent;
 import fr.lezoo.stonks.player.PlayerData;
 import fr.lezoo.stonks.stock.Stock;
 import fr.lezoo.stonks.share.CloseReason;
 import fr.lezoo.stonks.share.Share;
-import fr.lezoo.stonks.util.ConfigFile;
+import fr.lezoo.stonks.share.ShareType;
+import fr.lezoo.stonks.share.TriggerBook;
+import fr.lezoo.stonks.storage.FileStorage;
+import fr.lezoo.stonks.storage.FileStorageMigration;
+import fr.lezoo.stonks.util.ConfigSession;
 import org.apache.commons.lang.Validate;
 import org.bukkit.Bukkit;
 import org.bukkit.configuration.file.FileConfiguration;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Level;
 
 public class ShareManager {
     private final Map<UUID, Share> mapped = new HashMap<>();
 
+    /**
+     * Indexes kept up to date when shares are registered, unregistered
+     * or closed so that queries do not have to go through every share.
+     * Stocks are indexed by ID. Empty sets are removed.
+     */
+    private final Map<String, Set<Share>> openByStock = new HashMap<>(), closedByStock = new HashMap<>();
+    private final Map<UUID, Set<Share>> byOwner = new HashMap<>();
+
+    /**
+     * Open shares sorted by the prices at which they close, for every stock
+     */
+    private final Map<String, TriggerBook> triggerBooks = new HashMap<>();
+
+    /**
+     * Closed shares being written to the archive
+     */
+    private final Set<UUID> archiving = new HashSet<>();
+
+    /**
+     * Stock prices are updated by price update events, but fictive stock
+     * prices also change when shares are bought or closed
+     */
     public void refresh() {
-        for (Share share : mapped.values())
-            if (share.isOpen()) {
+        Stonks.plugin.stockManager.forEachStock(this::closeTriggered);
+    }
 
-                // Check if the share needs to be closed
-                if (share.getMaxPrice() <= share.getStock().getPrice() || share.getMinPrice() >= share.getStock().getPrice()) {
-                    // Close the share
-                    share.close(CloseReason.AUTOMATIC);
-                    Bukkit.getPluginManager().callEvent(new ShareClosedEvent(share));
-                    return;
-                }
+    /**
+     * Closes every open share of that stock which reached its
+     * max or min price, or which is in deficit
+     */
+    public void closeTriggered(Stock stock) {
+        TriggerBook book = triggerBooks.get(stock.getId());
+        if (book == null)
+            return;
+
+        closeAll(book.getTriggered(stock));
+    }
+
+    /**
+     * Closes many shares at once with the same reason
+     *
+     * @see #closeAll(Map)
+     */
+    public void closeAll(Collection<Share> shares, CloseReason reason) {
+        Map<Share, CloseReason> reasons = new LinkedHashMap<>();
+        for (Share share : shares)
+            reasons.put(share, reason);
+        closeAll(reasons);
+    }
+
+    /**
+     * Closes many shares at once. Contrary to closing shares one by one,
+     * the amounts of shares closed are netted so that the price of every
+     * stock is only impacted once, and all shares from a stock are closed
+     * at the same price. One {@link SharesClosedBatchEvent} is called for
+     * every stock, and one {@link ShareClosedEvent} for every share if
+     * enabled in the config.
+     *
+     * @param shares Open shares to close, with the reason why
+     */
+    public void closeAll(Map<Share, CloseReason> shares) {
+        Map<Stock, List<Share>> byStock = new LinkedHashMap<>();
+        for (Share share : shares.keySet()) {
+            Validate.isTrue(share.isOpen(), "Share is already closed");
+            byStock.computeIfAbsent(share.getStock(), unused -> new ArrayList<>()).add(share);
+        }
+
+        byStock.forEach((stock, closed) -> {
+
+            // Net price impact
+            double normal = 0, shorts = 0;
+            for (Share share : closed)
+                if (share.getType() == ShareType.SHORT)
+                    shorts += share.getShares();
+                else
+                    normal += share.getShares();
+            stock.getHandler().whenBought(ShareType.NORMAL, -normal);
+            stock.getHandler().whenBought(ShareType.SHORT, -shorts);
+            stock.registerVolume(normal + shorts);
+
+            final double sellPrice = stock.getPrice();
+            for (Share share : closed)
+                share.setClosed(shares.get(share), sellPrice);
 
-                // Automatically closes share when in deficit
-                if (share.getCloseEarning(0, 0) <= 0) {
-                    share.close(CloseReason.DEFICIT);
+            Bukkit.getPluginManager().callEvent(new SharesClosedBatchEvent(stock, closed));
+            if (Stonks.plugin.configManager.callShareClosedEvents)
+                for (Share share : closed)
                     Bukkit.getPluginManager().callEvent(new ShareClosedEvent(share));
-                    return;
-                }
-            }
+        });
     }
 
     public void load() {
+        ConfigSession session = new ConfigSession("share files");
+        read(session).run();
+        session.flush();
+    }
+
+    /**
+     * Reads saved shares. Shares can only be parsed once stocks are
+     * registered, so parsing is done by the returned task
+     *
+     * @param session Session shared by all managers loading at the same time
+     * @return Task registering shares, run on the main thread
+     */
+    public Runnable read(ConfigSession session) {
+
+        // Register shares from storage
+        try {
+            if (Stonks.plugin.storage.hasShares()) {
+                Map<UUID, byte[]> saved = Stonks.plugin.storage.loadShares();
+                return () -> index(saved);
+            }
+
+            // Register shares saved by the file storage before switching storage
+            if (!(Stonks.plugin.storage instanceof FileStorage)) {
+                FileStorageMigration migration = new FileStorageMigration(Stonks.plugin.storage);
+                if (migration.hasShares()) {
+                    Map<UUID, byte[]> saved = migration.readShares();
+                    Map<UUID, Map<UUID, byte[]>> archived = migration.readArchivedShares();
+                    return () -> migrate(migration, saved, archived);
+                }
+            }
+        } catch (IOException exception) {
+            Stonks.plugin.getLogger().log(Level.SEVERE, "Could not load shares: " + exception.getMessage());
+            return () -> {
+            };
+        }
+
+        // Register shares saved before storages were introduced
+        FileConfiguration config = session.getConfig("", "share-data");
+        return () -> {
+            for (String key : config.getKeys(false))
+                try {
+                    Share share = new Share(config.getConfigurationSection(key));
+                    index(share);
+                } catch (IllegalArgumentException exception) {
+                    Stonks.plugin.getLogger().log(Level.WARNING, "Could not load share '" + key + "': " + exception.getMessage());
+                }
 
-        // Register shares
-        FileConfiguration config = new ConfigFile("share-data").getConfig();
-        for (String key : config.getKeys(false))
+            // Migrate them to the storage
+            if (!mapped.isEmpty())
+                try {
+                    Stonks.plugin.storage.resetShares(mapped.values());
+                    new File(Stonks.plugin.getDataFolder(), "share-data.yml").delete();
+                } catch (IOException exception) {
+                    Stonks.plugin.getLogger().log(Level.SEVERE, "Could not migrate share data: " + exception.getMessage());
+                }
+        };
+    }
+
+    private void index(Map<UUID, byte[]> saved) {
+        for (Map.Entry<UUID, byte[]> entry : saved.entrySet())
             try {
-                Share share = new Share(config.getConfigurationSection(key));
-                mapped.put(share.getUniqueId(), share);
-            } catch (IllegalArgumentException exception) {
-                Stonks.plugin.getLogger().log(Level.WARNING, "Could not load share '" + key + "': " + exception.getMessage());
+                index(new Share(entry.getKey(), new DataInputStream(new ByteArrayInputStream(entry.getValue()))));
+            } catch (IllegalArgumentException | IOException exception) {
+                Stonks.plugin.getLogger().log(Level.WARNING, "Could not load share '" + entry.getKey() + "': " + exception.getMessage());
             }
     }
 
-    public void save() {
-        ConfigFile config = new ConfigFile("share-data");
+    /**
+     * Writes shares and archived shares saved by the file storage to the
+     * current storage. Files are only marked as migrated once written
+     */
+    private void migrate(FileStorageMigration migration, Map<UUID, byte[]> saved, Map<UUID, Map<UUID, byte[]>> archived) {
+        index(saved);
 
-        // Remove old
-        for (String key : config.getConfig().getKeys(false))
-            config.getConfig().set(key, null);
+        List<CompletableFuture<Void>> archiveWrites = new ArrayList<>();
+        archived.forEach((owner, serialized) -> {
+            List<Share> shares = new ArrayList<>();
+            serialized.forEach((uuid, data) -> {
+                try {
+                    shares.add(decodeArchived(uuid, data));
+                } catch (IllegalArgumentException | IOException exception) {
+                    Stonks.plugin.getLogger().log(Level.WARNING, "Could not load archived share '" + uuid + "': " + exception.getMessage());
+                }
+            });
+            if (!shares.isEmpty())
+                archiveWrites.add(Stonks.plugin.storage.archiveShares(owner, shares));
+        });
 
-        // Save newest
-        for (Share share : mapped.values())
-            share.saveInConfig(config.getConfig());
+        try {
+            Stonks.plugin.storage.resetShares(mapped.values());
+            CompletableFuture.allOf(archiveWrites.toArray(new CompletableFuture[0])).join();
+            migration.markSharesMigrated();
+            Stonks.plugin.getLogger().log(Level.INFO, "Migrated " + mapped.size() + " shares from the file storage");
+        } catch (IOException | CompletionException exception) {
+            Stonks.plugin.getLogger().log(Level.SEVERE, "Could not migrate shares from the file storage: " + exception.getMessage());
+        }
+    }
 
-        config.save();
+    /**
+     * Archives old closed shares, then lets the storage compact
+     * saved shares in the background
+     */
+    public void compact() {
+        archive();
+        Stonks.plugin.storage.compact();
+    }
+
+    /**
+     * Moves shares closed for longer than the configured duration out of
+     * memory to the storage archive, and deletes removed or expired archived
+     * shares. Shares are unregistered once the archive write completed
+     */
+    public void archive() {
+        final long now = System.currentTimeMillis();
+        final long closedBefore = now - Stonks.plugin.configManager.closedShareArchiveAge;
+
+        Map<UUID, List<Share>> archived = new HashMap<>();
+        for (Set<Share> closed : closedByStock.values())
+            for (Share share : closed)
+                if (share.getCloseTime() <= closedBefore && !archiving.contains(share.getUniqueId()))
+                    archived.computeIfAbsent(share.getOwner(), unused -> new ArrayList<>()).add(share);
+
+        archived.forEach((owner, shares) -> {
+            for (Share share : shares)
+                archiving.add(share.getUniqueId());
+
+            // Shares are only removed once safely archived
+            Stonks.plugin.storage.archiveShares(owner, shares).whenComplete((unused, error) -> Bukkit.getScheduler().runTask(Stonks.plugin, () -> {
+                for (Share share : shares)
+                    archiving.remove(share.getUniqueId());
+
+                if (error != null) {
+                    Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                    Stonks.plugin.getLogger().log(Level.SEVERE, "Could not archive shares of " + owner + ", keeping them in memory: " + cause.getMessage());
+                    return;
+                }
+
+                // Share is no longer in memory
+                PlayerData playerData = Stonks.plugin.playerManager.getIfLoaded(owner);
+                for (Share share : shares)
+
+                    // Share was claimed while being archived
+                    if (mapped.get(share.getUniqueId()) != share)
+                        Stonks.plugin.storage.removeArchivedShare(owner, share.getStock().getId(), share.getUniqueId());
+                    else if (playerData != null)
+                        playerData.unregisterShare(share);
+                    else
+                        unregister(share);
+            }));
+        });
+
+        final long retention = Stonks.plugin.configManager.closedShareRetention;
+        Stonks.plugin.storage.purgeArchivedShares(retention > 0 ? now - retention : 0);
+    }
+
+    /**
+     * Reads one page of archived shares in the background
+     *
+     * @return Archived shares of that player from that stock, most recently
+     *         archived first. Shares are decoded by {@link #decodeArchived(UUID, byte[])}
+     */
+    public CompletableFuture<Map<UUID, byte[]>> loadArchived(UUID owner, Stock stock, int offset, int limit) {
+        return Stonks.plugin.storage.loadArchivedShares(owner, stock.getId(), offset, limit);
+    }
+
+    public Share decodeArchived(UUID uuid, byte[] data) throws IOException {
+        return new Share(uuid, new DataInputStream(new ByteArrayInputStream(data)));
+    }
+
+    /**
+     * Removes a share from the archive, once claimed or turned into a paper
+     */
+    public void removeArchived(Share share) {
+        Stonks.plugin.storage.removeArchivedShare(share.getOwner(), share.getStock().getId(), share.getUniqueId());
+    }
+
+    /**
+     * Saves the current state of a share. Must be called every
+     * time a registered share is modified
+     *
+     * @param share Share that was modified
+     */
+    public void update(Share share) {
+        if (!mapped.containsKey(share.getUniqueId()))
+            return;
+
+        // Share may have been closed
+        if (!share.isOpen() && removeFromIndex(openByStock, share.getStock().getId(), share))
+            addToIndex(closedByStock, share.getStock().getId(), share);
+
+        // Order info may have changed
+        updateTriggers(share);
+
+        // Share value may have changed
+        PlayerData owner = Stonks.plugin.playerManager.getIfLoaded(share.getOwner());
+        if (owner != null)
+            owner.markPortfolio(share.getStock());
+
+        Stonks.plugin.storage.saveShare(share);
     }
 
     public boolean has(UUID uuid) {
         return mapped.containsKey(uuid);
     }
 
+    /**
+     * @return Unmodifiable view of all registered shares
+     */
     public Collection<Share> getShares() {
-        return mapped.values();
+        return Collections.unmodifiableCollection(mapped.values());
     }
 
     /**
-     * @return All shares from that stock
+     * @return Unmodifiable view of open shares from that stock
      */
-    public Set<Share> getByStock(Stock stock) {
-        Set<Share> shares = new HashSet<>();
+    public Set<Share> getOpenByStock(Stock stock) {
+        return view(openByStock.get(stock.getId()));
+    }
 
-        for (Share checked : mapped.values())
-            if (checked.getStock().equals(stock))
-                shares.add(checked);
+    /**
+     * @return Unmodifiable view of closed shares from that stock
+     */
+    public Set<Share> getClosedByStock(Stock stock) {
+        return view(closedByStock.get(stock.getId()));
+    }
 
+    /**
+     * @return All shares from that stock, open or closed
+     */
+    public Set<Share> getByStock(Stock stock) {
+        Set<Share> shares = new HashSet<>(getOpenByStock(stock));
+        shares.addAll(getClosedByStock(stock));
         return shares;
     }
 
+    /**
+     * @return Unmodifiable view of shares owned by that player
+     */
+    public Set<Share> getByOwner(UUID owner) {
+        return view(byOwner.get(owner));
+    }
+
     /**
      * Registers a player share in the share registry. This
      * does NOT add the share to the player's mapped shares list
@@ -96,7 +372,8 @@ public class ShareManager {
     public void register(Share share) {
         Validate.isTrue(!mapped.containsKey(share.getUniqueId()), "Cannot register two shares with the same ID");
 
-        mapped.put(share.getUniqueId(), share);
+        index(share);
+        Stonks.plugin.storage.saveShare(share);
     }
 
     /**
@@ -107,10 +384,61 @@ public class ShareManager {
      * @param share Share to unregister
      */
     public void unregister(Share share) {
-        mapped.remove(share.getUniqueId());
+        if (mapped.remove(share.getUniqueId()) == null)
+            return;
+
+        removeFromIndex(share.isOpen() ? openByStock : closedByStock, share.getStock().getId(), share);
+        removeFromIndex(byOwner, share.getOwner(), share);
+        removeTriggers(share);
+        Stonks.plugin.storage.removeShare(share.getUniqueId());
     }
 
     public Share get(UUID uuid) {
         return mapped.get(uuid);
     }
+
+    private void index(Share share) {
+        mapped.put(share.getUniqueId(), share);
+        addToIndex(share.isOpen() ? openByStock : closedByStock, share.getStock().getId(), share);
+        addToIndex(byOwner, share.getOwner(), share);
+        updateTriggers(share);
+    }
+
+    private void updateTriggers(Share share) {
+        if (share.isOpen())
+            triggerBooks.computeIfAbsent(share.getStock().getId(), unused -> new TriggerBook()).add(share);
+        else
+            removeTriggers(share);
+    }
+
+    private void removeTriggers(Share share) {
+        TriggerBook book = triggerBooks.get(share.getStock().getId());
+        if (book == null)
+            return;
+
+        book.remove(share);
+        if (book.isEmpty())
+            triggerBooks.remove(share.getStock().getId());
+    }
+
+    private static <K> void addToIndex(Map<K, Set<Share>> index, K key, Share share) {
+        index.computeIfAbsent(key, unused -> new HashSet<>()).add(share);
+    }
+
+    /**
+     * @return If the share was indexed
+     */
+    private static <K> boolean removeFromIndex(Map<K, Set<Share>> index, K key, Share share) {
+        Set<Share> shares = index.get(key);
+        if (shares == null || !shares.remove(share))
+            return false;
+
+        if (shares.isEmpty())
+            index.remove(key);
+        return true;
+    }
+
+    private static Set<Share> view(Set<Share> shares) {
+        return shares == null ? Collections.emptySet() : Collections.unmodifiableSet(shares);
+    }
 }
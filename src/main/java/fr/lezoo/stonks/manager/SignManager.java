@@ -4,10 +4,12 @@ import fr.lezoo.stonks.Stonks;
 import fr.lezoo.stonks.display.sign.DisplaySign;
 import fr.lezoo.stonks.stock.Stock;
 import fr.lezoo.stonks.util.ConfigFile;
+import fr.lezoo.stonks.util.ConfigSession;
 import fr.lezoo.stonks.util.Position;
 import org.apache.commons.lang.Validate;
 import org.bukkit.Location;
 import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
 
 import javax.annotation.Nullable;
 import java.util.*;
@@ -61,28 +63,26 @@ public class SignManager implements FileManager {
     }
 
     @Override
-    public void load() {
-        FileConfiguration config = new ConfigFile("sign-data").getConfig();
-        for (String key : config.getKeys(false))
-            try {
-                register(new DisplaySign(config.getConfigurationSection(key)));
-            } catch (RuntimeException exception) {
-                Stonks.plugin.getLogger().log(Level.WARNING, "Could not load display sign " + key + ": " + exception.getMessage());
-            }
+    public Runnable read(ConfigSession session) {
+        FileConfiguration config = session.getConfig("", "sign-data");
+        return () -> {
+            for (String key : config.getKeys(false))
+                try {
+                    register(new DisplaySign(config.getConfigurationSection(key)));
+                } catch (RuntimeException exception) {
+                    Stonks.plugin.getLogger().log(Level.WARNING, "Could not load display sign " + key + ": " + exception.getMessage());
+                }
+        };
     }
 
     @Override
-    public void save() {
-        ConfigFile config = new ConfigFile("sign-data");
+    public Runnable snapshot() {
+        FileConfiguration config = new YamlConfiguration();
 
-        // Remove older
-        for (String key : config.getConfig().getKeys(false))
-            config.getConfig().set(key, null);
-
-        // Save latest
+        // Save latest, older signs are overwritten
         for (DisplaySign sign : getActive())
-            sign.save(config.getConfig());
+            sign.save(config);
 
-        config.save();
+        return () -> new ConfigFile("", "sign-data", config).save();
     }
 }
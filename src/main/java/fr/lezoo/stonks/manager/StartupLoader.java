@@ -0,0 +1,118 @@
+package fr.lezoo.stonks.manager;
+
+import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.util.ConfigSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.Function;
+import java.util.logging.Level;
+
+/**
+ * Loads plugin data when the plugin enables. Files are read and parsed
+ * concurrently by a pool of worker threads, then what was read is
+ * registered on the main thread in one step, in the order phases were
+ * added so that phases can depend on previous ones (shares need stocks).
+ * All phases share one config session, so every data file is parsed at
+ * most once and saved at most once when everything is loaded.
+ * A timing table is logged once everything is loaded.
+ */
+public class StartupLoader {
+    private final List<Phase> phases = new ArrayList<>();
+    private final ConfigSession session = new ConfigSession("data files");
+
+    /**
+     * @param name Phase name displayed in the timing table
+     * @param read Reads data on a worker thread using the shared config
+     *             session, and returns the task registering it, run on
+     *             the main thread
+     */
+    public StartupLoader add(String name, Function<ConfigSession, Runnable> read) {
+        phases.add(new Phase(name, read));
+        return this;
+    }
+
+    /**
+     * Must be called on the main thread, which waits until every
+     * phase is read and registered
+     */
+    public void load() {
+        final long start = System.nanoTime();
+        final int threads = Math.max(1, Math.min(phases.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> new Thread(runnable, "Stonks Loader"));
+
+        List<Future<Runnable>> reads = new ArrayList<>(phases.size());
+        for (Phase phase : phases)
+            reads.add(pool.submit(() -> {
+                final long readStart = System.nanoTime();
+                try {
+                    return phase.read.apply(session);
+                } finally {
+                    phase.readTime = System.nanoTime() - readStart;
+                }
+            }));
+        pool.shutdown();
+
+        // Register everything once all files are read
+        List<Runnable> applies = new ArrayList<>(phases.size());
+        for (int i = 0; i < phases.size(); i++)
+            try {
+                applies.add(reads.get(i).get());
+            } catch (ExecutionException exception) {
+                Stonks.plugin.getLogger().log(Level.SEVERE, "Could not load " + phases.get(i).name + ": " + exception.getCause().getMessage());
+                applies.add(null);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                pool.shutdownNow();
+                return;
+            }
+        final long readEnd = System.nanoTime();
+
+        for (int i = 0; i < phases.size(); i++) {
+            final Phase phase = phases.get(i);
+            final Runnable apply = applies.get(i);
+            if (apply == null)
+                continue;
+
+            final long applyStart = System.nanoTime();
+            try {
+                apply.run();
+            } catch (RuntimeException exception) {
+                Stonks.plugin.getLogger().log(Level.SEVERE, "Could not load " + phase.name + ": " + exception.getMessage());
+            }
+            phase.applyTime = System.nanoTime() - applyStart;
+        }
+        session.flush();
+
+        logTimings(start, readEnd, System.nanoTime(), threads);
+    }
+
+    private void logTimings(long start, long readEnd, long end, int threads) {
+        StringBuilder table = new StringBuilder("Loaded data in " + millis(end - start) + " (" + millis(readEnd - start) + " reading on "
+                + threads + " threads, " + millis(end - readEnd) + " registering)");
+        table.append(String.format("%n  %-16s %10s %10s", "Phase", "Read", "Register"));
+        for (Phase phase : phases)
+            table.append(String.format("%n  %-16s %10s %10s", phase.name, millis(phase.readTime), millis(phase.applyTime)));
+        Stonks.plugin.getLogger().log(Level.INFO, table.toString());
+    }
+
+    private static String millis(long nanos) {
+        return nanos / 1000000 + "ms";
+    }
+
+    private static class Phase {
+        private final String name;
+        private final Function<ConfigSession, Runnable> read;
+
+        /**
+         * Written by worker threads, only read after their futures complete
+         */
+        private long readTime, applyTime;
+
+        Phase(String name, Function<ConfigSession, Runnable> read) {
+            this.name = name;
+            this.read = read;
+        }
+    }
+}
@@ -2,37 +2,85 @@ package fr.lezoo.stonks.manager;
 
 import fr.lezoo.stonks.Stonks;
 import fr.lezoo.stonks.api.event.StockPriceUpdateEvent;
+import fr.lezoo.stonks.share.CloseReason;
+import fr.lezoo.stonks.stock.PriceHistory;
 import fr.lezoo.stonks.stock.Stock;
 import fr.lezoo.stonks.stock.StockInfo;
+import fr.lezoo.stonks.stock.StockSeries;
 import fr.lezoo.stonks.stock.TimeScale;
+import fr.lezoo.stonks.stock.handler.FictiveStockHandler;
 import fr.lezoo.stonks.stock.handler.RealStockHandler;
 import fr.lezoo.stonks.util.ConfigFile;
+import fr.lezoo.stonks.util.ConfigSession;
 import org.apache.commons.lang.Validate;
 import org.bukkit.Bukkit;
 import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.scheduler.BukkitRunnable;
 import org.jetbrains.annotations.NotNull;
-import org.json.simple.parser.ParseException;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
 import java.io.IOException;
-import java.net.URISyntaxException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 import java.util.logging.Level;
 
 public class StockManager implements FileManager {
     private final Map<String, LoadedStock> mapped = new HashMap<>();
 
+    /**
+     * Parsed stocks.yml used by the next save, so that the main thread
+     * does not have to parse it. It is handed over to the autosave thread
+     * which parses it again after saving, to take into account changes
+     * made by server admins in the meantime. Null while being saved
+     */
+    private volatile FileConfiguration stocksConfig;
+
+    /**
+     * Removed stocks, which are removed again from stocks.yml every time
+     * it is parsed after being saved in case it was being saved when they
+     * were removed
+     */
+    private final Set<String> removedStocks = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Loaded once with stocks and only used to migrate data from older versions
+     */
+    private FileConfiguration legacyStockData = new YamlConfiguration();
+
+    /**
+     * Stocks and their data are read off the main thread but
+     * only registered, which starts their refresh tasks, on it
+     */
     @Override
-    public void load() {
-        FileConfiguration config = new ConfigFile("stocks").getConfig();
+    public Runnable read(ConfigSession session) {
+        FileConfiguration config = session.getConfig("", "stocks");
+
+        // Stock data saved before storages were introduced, used while parsing stocks
+        if (new File(Stonks.plugin.getDataFolder(), "stock-data.yml").exists())
+            legacyStockData = session.getConfig("", "stock-data");
+
+        List<Stock> stocks = new ArrayList<>();
         for (String key : config.getKeys(false))
             try {
-                register(new Stock(config.getConfigurationSection(key)));
+                stocks.add(new Stock(config.getConfigurationSection(key)));
             } catch (RuntimeException exception) {
                 Stonks.plugin.getLogger().log(Level.WARNING, "Could not load stock '" + key + "': " + exception.getMessage());
             }
+
+        return () -> {
+            for (Stock stock : stocks)
+                try {
+                    register(stock);
+                } catch (IllegalArgumentException exception) {
+                    Stonks.plugin.getLogger().log(Level.WARNING, "Could not load stock '" + stock.getId() + "': " + exception.getMessage());
+                }
+            stocksConfig = config;
+        };
     }
 
     public void remove(String stockId) {
@@ -41,15 +89,28 @@ public class StockManager implements FileManager {
 
         LoadedStock removed = mapped.remove(stockId);
 
-        removed.refreshRunnable.cancel();
-
-        //Remove in the yml
-        ConfigFile config = new ConfigFile("stocks");
-        ConfigurationSection section = config.getConfig().getConfigurationSection(stockId);
-
-
-        config.getConfig().set(stockId,null);
-        config.save();
+        if (removed.refreshRunnable != null)
+            removed.refreshRunnable.cancel();
+        if (removed.stock.getHandler() instanceof FictiveStockHandler)
+            Stonks.plugin.priceModelManager.remove((FictiveStockHandler) removed.stock.getHandler());
+        if (removed.stock.isRealStock())
+            Stonks.plugin.quoteScheduler.unregister(((RealStockHandler) removed.stock.getHandler()).getSymbol(), stockId);
+
+        // Close open shares at the last stock price
+        Stonks.plugin.shareManager.closeAll(new ArrayList<>(Stonks.plugin.shareManager.getOpenByStock(removed.stock)), CloseReason.OTHER);
+
+        /*
+         * Removed from stocks.yml by the next save, which is the only one
+         * writing that file. The stock is removed from the parsed config
+         * if it is not being saved, otherwise after it is saved
+         */
+        removedStocks.add(stockId);
+        FileConfiguration stocksConfig = this.stocksConfig;
+        if (stocksConfig != null)
+            stocksConfig.set(stockId, null);
+
+        // Remove stock data
+        Stonks.plugin.storage.deleteStockData(stockId);
     }
 
     /**
@@ -62,21 +123,31 @@ public class StockManager implements FileManager {
     }
 
     @Override
-    public void save() {
-        ConfigFile config = new ConfigFile("stocks");
-
-        //Remove the data of the stocks in stock-data.yml
-        ConfigFile stockDataConfig = new ConfigFile("stock-data");
-        for (String key : stockDataConfig.getConfig().getKeys(true))
-            stockDataConfig.getConfig().set(key, null);
-        stockDataConfig.save();
+    public Runnable snapshot() {
+        FileConfiguration config = stocksConfig != null ? stocksConfig : new ConfigFile("stocks").getConfig();
+        stocksConfig = null;
+
         // Save newest
+        List<Runnable> dataWrites = new ArrayList<>();
+        AtomicBoolean dataSaved = new AtomicBoolean(true);
         for (LoadedStock loaded : mapped.values()) {
-            loaded.stock.save(config.getConfig());
+            loaded.stock.save(config);
+            captureData(loaded, dataWrites, dataSaved);
         }
 
-        config.save();
+        return () -> {
+            dataWrites.forEach(Runnable::run);
+
+            for (String stockId : removedStocks)
+                config.set(stockId, null);
+            new ConfigFile("", "stocks", config).save();
+            stocksConfig = new ConfigFile("stocks").getConfig();
 
+            // Stock data is now stored by the storage, once all of it was saved
+            File legacyStockData = new File(Stonks.plugin.getDataFolder(), "stock-data.yml");
+            if (dataSaved.get() && legacyStockData.exists())
+                legacyStockData.delete();
+        };
     }
 
     public boolean has(String id) {
@@ -98,6 +169,15 @@ public class StockManager implements FileManager {
     public void register(Stock stock) {
         Validate.isTrue(!mapped.containsKey(stock.getId()), "There is already a stock with ID " + stock.getId() + "'");
         mapped.put(stock.getId(), new LoadedStock(stock));
+        removedStocks.remove(stock.getId());
+
+        // Fictive stock prices are stepped all at once
+        if (stock.getHandler() instanceof FictiveStockHandler)
+            Stonks.plugin.priceModelManager.add((FictiveStockHandler) stock.getHandler());
+
+        // Real stock prices are fetched by the quote scheduler
+        if (stock.isRealStock())
+            Stonks.plugin.quoteScheduler.register(((RealStockHandler) stock.getHandler()).getSymbol(), stock.getId(), stock.getRefreshPeriod() * 50);
     }
 
     public void forEachStock(Consumer<Stock> action) {
@@ -118,10 +198,26 @@ public class StockManager implements FileManager {
 
     class LoadedStock {
         final Stock stock;
+
+        /**
+         * Null for fictive stocks, which are stepped by the price model manager
+         */
+        @Nullable
         final BukkitRunnable refreshRunnable;
 
+        /**
+         * Time stamp of the latest candle saved for every data file.
+         * Concurrent as entries are removed by failed background writes
+         */
+        final Map<String, Long> savedUntil = new ConcurrentHashMap<>();
+
         LoadedStock(Stock stock) {
             this.stock = stock;
+            if (stock.getHandler() instanceof FictiveStockHandler) {
+                this.refreshRunnable = null;
+                return;
+            }
+
             this.refreshRunnable = new BukkitRunnable() {
                 @Override
                 public void run() {
@@ -140,35 +236,60 @@ public class StockManager implements FileManager {
      */
     public void initializeStockData(Stock stock) {
 
-        // Load the different data from the yml if they exist
-        FileConfiguration stockData = new ConfigFile("stock-data").getConfig();
-        if (stockData.contains(stock.getId())) {
-            ConfigurationSection section = new ConfigFile("stock-data").getConfig().getConfigurationSection(stock.getId());
+        // Load the different data from the storage if they exist
+        if (hasStockData(stock)) {
+            try {
+                for (TimeScale time : TimeScale.values())
+                    Stonks.plugin.storage.loadCandles(stock.getId(), time.toString().toLowerCase(), stock.getData(time));
+                for (PriceHistory.Tier tier : stock.getHistory().getTiers())
+                    Stonks.plugin.storage.loadCandles(stock.getId(), "history-" + tier.getId(), tier.getSeries());
+            } catch (IOException exception) {
+                Stonks.plugin.getLogger().log(Level.WARNING, "Could not load data of stock '" + stock.getId() + "': " + exception.getMessage());
+            }
+        }
+
+        // Data saved before storages were introduced
+        else if (legacyStockData.contains(stock.getId())) {
+            ConfigurationSection section = legacyStockData.getConfigurationSection(stock.getId());
 
             for (TimeScale time : TimeScale.values()) {
                 int i = 0;
-                List<StockInfo> workingStock = stock.getData(time);
+                StockSeries workingStock = stock.getData(time);
                 while (section.contains(time.toString().toLowerCase() + "data." + i)) {
-                    workingStock.add(new StockInfo(section.getConfigurationSection(time.toString().toLowerCase() + "data." + i)));
+                    ConfigurationSection point = section.getConfigurationSection(time.toString().toLowerCase() + "data." + i);
+                    // Data saved before candles were introduced only has a price
+                    double price = point.getDouble("price");
+                    workingStock.add(point.getLong("timestamp"), point.getDouble("open", price), point.getDouble("high", price),
+                            point.getDouble("low", price), price, point.getDouble("volume"));
                     i++;
                 }
             }
+
+            for (PriceHistory.Tier tier : stock.getHistory().getTiers())
+                for (String line : section.getStringList("history." + tier.getId())) {
+                    String[] split = line.split(" ");
+                    tier.getSeries().add(Long.parseLong(split[0]), Double.parseDouble(split[1]), Double.parseDouble(split[2]),
+                            Double.parseDouble(split[3]), Double.parseDouble(split[4]), Double.parseDouble(split[5]));
+                }
         }
 
         // Otherwise we create the first stock data depending on stock type
         else {
             if (stock.isRealStock()) {
-                Bukkit.getScheduler().runTaskAsynchronously(Stonks.plugin, () -> {
-                    try {
-                        double price = Stonks.plugin.stockAPI.getPrice(stock.getId());
-                        StockInfo firstStockData = new StockInfo(System.currentTimeMillis(), price);
-                        for (TimeScale disp : TimeScale.values())
-                            stock.getData(disp).add(firstStockData);
+                final String symbol = ((RealStockHandler) stock.getHandler()).getSymbol();
+
+                // Cached quotes do not need any call, even if outdated
+                final StockInfo cached = Stonks.plugin.quoteScheduler.getQuote(symbol);
+                if (cached != null)
+                    for (TimeScale disp : TimeScale.values())
+                        stock.getData(disp).add(cached);
 
-                    } catch (URISyntaxException | IOException | InterruptedException | ParseException e) {
-                        e.printStackTrace();
-                    }
-                });
+                // Stock data is only edited on the main thread
+                else
+                    Stonks.plugin.quoteScheduler.fetchAsync(symbol).thenAccept(quote -> Bukkit.getScheduler().runTask(Stonks.plugin, () -> {
+                        for (TimeScale disp : TimeScale.values())
+                            stock.getData(disp).add(quote);
+                    }));
             }
 
             // If it is a virtual stock
@@ -180,28 +301,49 @@ public class StockManager implements FileManager {
     }
 
     /**
-     * Saves all the data of the stocks in stock-data.yml file
+     * Copies the candles which changed since the last save so
+     * that they can be written to the binary files in the background
+     *
+     * @param saved Set to false if any write fails
      */
-    public void save(Stock stock) {
-        ConfigFile configFile = new ConfigFile("stock-data");
-        FileConfiguration config = configFile.getConfig();
-        //We remove the old data
-        if (config.contains(stock.getId())) {
-            ConfigurationSection section = config.getConfigurationSection(stock.getId());
-            for (String key : section.getKeys(true)) {
-                section.set(key, null);
+    private void captureData(LoadedStock loaded, List<Runnable> writes, AtomicBoolean saved) {
+        for (TimeScale time : TimeScale.values())
+            captureData(loaded, time.toString().toLowerCase(), loaded.stock.getData(time), writes, saved);
+        for (PriceHistory.Tier tier : loaded.stock.getHistory().getTiers())
+            captureData(loaded, "history-" + tier.getId(), tier.getSeries(), writes, saved);
+    }
 
+    private void captureData(LoadedStock loaded, String name, StockSeries series, List<Runnable> writes, AtomicBoolean saved) {
+        if (series.isEmpty())
+            return;
+
+        // Latest saved candle may have changed since so it is saved again
+        final Long savedUntil = loaded.savedUntil.get(name);
+        final StockSeries changed = series.subSeries(savedUntil == null ? 0 : series.indexOf(savedUntil));
+        final long latest = series.getLatestTimeStamp();
+        loaded.savedUntil.put(name, latest);
+
+        final String stockId = loaded.stock.getId();
+        final int capacity = series.getCapacity();
+        writes.add(() -> {
+            try {
+                Stonks.plugin.storage.saveCandles(stockId, name, changed, capacity);
+            } catch (IOException exception) {
+                saved.set(false);
+
+                // Whole series is saved again next time
+                loaded.savedUntil.remove(name, latest);
+                Stonks.plugin.getLogger().log(Level.SEVERE, "Could not save data '" + name + "' of stock '" + stockId + "': " + exception.getMessage());
             }
+        });
+    }
+
+    private boolean hasStockData(Stock stock) {
+        try {
+            return Stonks.plugin.storage.hasStockData(stock.getId());
+        } catch (IOException exception) {
+            Stonks.plugin.getLogger().log(Level.WARNING, "Could not check data of stock '" + stock.getId() + "': " + exception.getMessage());
+            return false;
         }
-        //We save the information of the data using stockDataManager
-        for (TimeScale time : TimeScale.values()) {
-            List<StockInfo> stockData = stock.getData(time);
-            //We load the data needed
-            for (int i = 0; i < stockData.size(); i++) {
-                config.set(stock.getId() + "." + time.toString().toLowerCase() + "data." + i + ".price", stockData.get(i).getPrice());
-                config.set(stock.getId() + "." + time.toString().toLowerCase() + "data." + i + ".timestamp", stockData.get(i).getTimeStamp());
-            }
-        }
-        configFile.save();
     }
 }
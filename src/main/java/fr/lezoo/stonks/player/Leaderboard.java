@@ -0,0 +1,161 @@
+package fr.lezoo.stonks.player;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Players ranked by a value, highest first. Values are updated one
+ * player at a time in logarithmic time, the ranking is never sorted
+ * again from scratch.
+ * <p>
+ * Reading ranks goes through a copy of the top of the ranking, which
+ * is rebuilt on the main thread at most once per tick when the top
+ * changed, so that it can also be read by asynchronous placeholders.
+ */
+public class Leaderboard {
+    private final Map<UUID, Entry> entries = new HashMap<>();
+    private final NavigableSet<Entry> ranking = new TreeSet<>();
+
+    /**
+     * Top of the ranking, replaced and never modified
+     */
+    private volatile List<Entry> top = Collections.emptyList();
+
+    /**
+     * Amount of ranks copied during the last refresh
+     */
+    private int capacity;
+
+    /**
+     * Set when an update may have changed the top of the ranking
+     */
+    private boolean outdated;
+
+    /**
+     * Must be called on the main thread
+     *
+     * @param uuid  Player unique ID
+     * @param value New value of that player
+     */
+    public void update(UUID uuid, double value) {
+        Entry previous = entries.get(uuid);
+        if (previous != null && previous.value == value)
+            return;
+
+        Entry entry = new Entry(uuid, value);
+        if (previous != null) {
+            ranking.remove(previous);
+            checkTop(previous);
+        }
+        entries.put(uuid, entry);
+        ranking.add(entry);
+        checkTop(entry);
+    }
+
+    /**
+     * Must be called on the main thread
+     */
+    public void remove(UUID uuid) {
+        Entry previous = entries.remove(uuid);
+        if (previous != null) {
+            ranking.remove(previous);
+            checkTop(previous);
+        }
+    }
+
+    public boolean isOutdated() {
+        return outdated;
+    }
+
+    /**
+     * Copies the top of the ranking. Must be called on the main thread
+     *
+     * @param size Amount of ranks which can be read
+     */
+    public void refresh(int size) {
+        List<Entry> top = new ArrayList<>(Math.min(size, ranking.size()));
+        for (Entry entry : ranking) {
+            if (top.size() >= size)
+                break;
+            top.add(entry);
+        }
+
+        this.top = Collections.unmodifiableList(top);
+        capacity = size;
+        outdated = false;
+    }
+
+    /**
+     * @param rank Rank starting at 1
+     * @return Player at that rank, or null if there is none or
+     *         if the rank is not part of the top of the ranking
+     */
+    @Nullable
+    public Entry get(int rank) {
+        List<Entry> top = this.top;
+        return rank > 0 && rank <= top.size() ? top.get(rank - 1) : null;
+    }
+
+    /**
+     * @return Unmodifiable top of the ranking, as of the last refresh
+     */
+    public List<Entry> getTop() {
+        return top;
+    }
+
+    /**
+     * @return Amount of ranked players
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return Unmodifiable view of the values of every ranked player
+     */
+    public Collection<Entry> getEntries() {
+        return Collections.unmodifiableCollection(entries.values());
+    }
+
+    /**
+     * An entry changes the top of the ranking if it ranks
+     * before the last entry of the top, or if the top is not full
+     */
+    private void checkTop(Entry entry) {
+        if (outdated)
+            return;
+
+        List<Entry> top = this.top;
+        if (top.size() < capacity || top.isEmpty() || entry.compareTo(top.get(top.size() - 1)) <= 0)
+            outdated = true;
+    }
+
+    public static class Entry implements Comparable<Entry> {
+        private final UUID uuid;
+        private final double value;
+
+        Entry(UUID uuid, double value) {
+            this.uuid = uuid;
+            this.value = value;
+        }
+
+        public UUID getUniqueId() {
+            return uuid;
+        }
+
+        public double getValue() {
+            return value;
+        }
+
+        /**
+         * Highest values first. Players with the same value are
+         * ordered by unique ID so that no entry is dropped
+         */
+        @Override
+        public int compareTo(Entry entry) {
+            int compare = Double.compare(entry.value, value);
+            return compare != 0 ? compare : uuid.compareTo(entry.uuid);
+        }
+    }
+}
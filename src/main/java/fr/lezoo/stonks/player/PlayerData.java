@@ -8,13 +8,13 @@ import fr.lezoo.stonks.share.ShareType;
 import fr.lezoo.stonks.stock.ExchangeInventory;
 import fr.lezoo.stonks.stock.ExchangeType;
 import fr.lezoo.stonks.stock.Stock;
-import fr.lezoo.stonks.util.ConfigFile;
 import fr.lezoo.stonks.util.message.Message;
 import org.apache.commons.lang.Validate;
 import org.bukkit.Bukkit;
 import org.bukkit.configuration.file.FileConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.inventory.ItemStack;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 import java.util.stream.Collectors;
@@ -24,6 +24,11 @@ public class PlayerData {
     private Player player;
     private double taxRate, taxDeduction;
 
+    /**
+     * Sum of the gains of every claimed share, after taxes
+     */
+    private double realizedGain;
+
     /**
      * Links stock IDs to order infos
      */
@@ -44,10 +49,26 @@ public class PlayerData {
      */
     private final Map<String, Set<Share>> shares = new HashMap<>();
 
-    public PlayerData(Player player) {
+    /**
+     * Values of owned shares, updated when shares or stock prices change
+     */
+    private final Portfolio portfolio = new Portfolio();
+
+    /**
+     * Set to true when something which is saved in the player
+     * data file changes, so that only changed players are saved
+     */
+    private volatile boolean dirty;
+
+    /**
+     * @param uuid   Player unique ID
+     * @param player Player if online, or null if the data is loaded for an offline player
+     * @param config Saved player data
+     */
+    public PlayerData(UUID uuid, @Nullable Player player, FileConfiguration config) {
         this.player = player;
-        this.uuid = player.getUniqueId();
-        loadFromConfig(new ConfigFile("/userdata", uuid.toString()).getConfig());
+        this.uuid = uuid;
+        loadFromConfig(config);
     }
 
     public void loadFromConfig(FileConfiguration config) {
@@ -63,12 +84,17 @@ public class PlayerData {
                         shares.add(share);
                 }
 
-                if (!shares.isEmpty())
+                if (!shares.isEmpty()) {
                     this.shares.put(stockKey, shares);
+                    portfolio.mark(stockKey, shares);
+                }
             }
 
         taxDeduction = config.getDouble("tax-deduction");
         taxRate = config.getDouble("tax-rate", Stonks.plugin.configManager.defaultTaxRate);
+        realizedGain = config.getDouble("realized-gain");
+
+        Stonks.plugin.leaderboardManager.update(this);
     }
 
     public void saveInConfig(FileConfiguration config) {
@@ -77,6 +103,7 @@ public class PlayerData {
         config.set("shares", null);
         config.set("tax-deduction", taxDeduction);
         config.set("tax-rate", taxRate);
+        config.set("realized-gain", realizedGain);
 
         // Save newest shares
         for (String stockId : shares.keySet()) {
@@ -87,6 +114,17 @@ public class PlayerData {
         }
     }
 
+    public boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * @param dirty Whether the player data needs to be saved
+     */
+    public void setDirty(boolean dirty) {
+        this.dirty = dirty;
+    }
+
     public boolean hasOrderInfo(String stockId) {
         return orderInfos.containsKey(stockId);
     }
@@ -106,19 +144,30 @@ public class PlayerData {
         return uuid;
     }
 
+    /**
+     * @return Player, or null if the player is offline
+     */
+    @Nullable
     public Player getPlayer() {
         return player;
     }
 
-    public void updatePlayer(Player player) {
+    public boolean isOnline() {
+        return player != null;
+    }
+
+    /**
+     * @param player Player when logging in, or null when logging off
+     */
+    public void updatePlayer(@Nullable Player player) {
         this.player = player;
     }
 
     /**
-     * @return Owned shares from a specific stock
+     * @return Unmodifiable view of owned shares from a specific stock
      */
     public Set<Share> getShares(Stock stock) {
-        return shares.getOrDefault(stock.getId(), new HashSet<>());
+        return Collections.unmodifiableSet(shares.getOrDefault(stock.getId(), Collections.emptySet()));
     }
 
     /**
@@ -146,6 +195,7 @@ public class PlayerData {
     public void setTaxRate(double taxRate) {
         Validate.isTrue((taxRate >= 0 && taxRate <= 1) || taxRate == -1, "Tax rate must be positive");
         this.taxRate = taxRate;
+        dirty = true;
     }
 
     /**
@@ -169,6 +219,8 @@ public class PlayerData {
 
         // Add to shares list
         this.shares.get(share.getStock().getId()).add(share);
+        markPortfolio(share.getStock());
+        dirty = true;
     }
 
     public double getTaxDeduction() {
@@ -177,6 +229,8 @@ public class PlayerData {
 
     public void deductTax(double taxDeduction) {
         this.taxDeduction += taxDeduction;
+        if (taxDeduction != 0)
+            dirty = true;
     }
 
     public void unregisterShare(Share share) {
@@ -189,6 +243,8 @@ public class PlayerData {
 
         // Remove from list
         shares.remove(share);
+        markPortfolio(share.getStock());
+        dirty = true;
     }
 
     public Share getShareById(Stock stock, UUID uuid) {
@@ -200,16 +256,42 @@ public class PlayerData {
         throw new IllegalArgumentException("Could not find share with given ID");
     }
 
+    public Portfolio getPortfolio() {
+        return portfolio;
+    }
+
     /**
-     * @return Counts the shares the player owns in a certain stock
+     * Updates the value of the shares owned from a stock, called
+     * when one of them closes or when the stock price changes
      */
-    public double countShares(Stock stock) {
-        double total = 0;
+    public void markPortfolio(Stock stock) {
+        portfolio.mark(stock.getId(), getShares(stock));
+        Stonks.plugin.leaderboardManager.update(this, stock);
+    }
 
-        for (Share share : getShares(stock))
-            total += share.getOrderInfo().getAmount();
+    public double getRealizedGain() {
+        return realizedGain;
+    }
 
-        return total;
+    /**
+     * Called when the player claims a share
+     *
+     * @param gain  Gain of the claimed share after taxes, may be negative
+     * @param stock Stock of the claimed share
+     */
+    public void addRealizedGain(double gain, Stock stock) {
+        realizedGain += gain;
+        if (gain != 0) {
+            dirty = true;
+            Stonks.plugin.leaderboardManager.update(this, stock);
+        }
+    }
+
+    /**
+     * @return Counts the shares the player owns in a certain stock
+     */
+    public double countShares(Stock stock) {
+        return portfolio.getPosition(stock.getId()).getAmount();
     }
 
     /**
@@ -315,6 +397,7 @@ public class PlayerData {
         }
 
         stock.getHandler().whenBought(type, amount);
+        stock.registerVolume(amount);
 
         // Send player message
         (type == ShareType.NORMAL ? Message.BUY_SHARES : Message.SELL_SHARES).format(
@@ -0,0 +1,110 @@
+package fr.lezoo.stonks.player;
+
+import fr.lezoo.stonks.share.Share;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Aggregated values of the shares owned by a player, per stock and in
+ * total, so that they can be read in constant time by placeholders.
+ * <p>
+ * A position is computed again from the shares of its stock when these
+ * shares change and when the stock price changes. The total is then summed
+ * again from every position rather than updated by difference, which
+ * would let rounding errors build up. Values do not take taxes or
+ * dividend wallets into account.
+ */
+public class Portfolio {
+    private final Map<String, Position> positions = new HashMap<>();
+    private final Position total = new Position();
+
+    /**
+     * Computes again the position of the player in one stock
+     *
+     * @param stockId Stock ID
+     * @param shares  All shares owned by the player from that stock
+     */
+    public void mark(String stockId, Collection<Share> shares) {
+        if (shares.isEmpty())
+            positions.remove(stockId);
+        else {
+            Position position = new Position();
+            for (Share share : shares) {
+                position.count++;
+                position.amount += share.getShares();
+                position.costBasis += share.getInitialPrice() * share.getShares();
+                position.value += share.getCloseEarning(0, 0);
+            }
+            positions.put(stockId, position);
+        }
+
+        total.clear();
+        for (Position position : positions.values())
+            total.add(position);
+    }
+
+    /**
+     * @return Position in that stock, empty if the player has no share from it
+     */
+    public Position getPosition(String stockId) {
+        return positions.getOrDefault(stockId, Position.EMPTY);
+    }
+
+    /**
+     * @return Sum of the positions in every stock
+     */
+    public Position getTotal() {
+        return total;
+    }
+
+    public static class Position {
+        private int count;
+        private double amount, costBasis, value;
+
+        private static final Position EMPTY = new Position();
+
+        /**
+         * @return Amount of shares, open or closed
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * @return Sum of the amounts of stock of every share
+         */
+        public double getAmount() {
+            return amount;
+        }
+
+        /**
+         * @return Money spent to buy the shares
+         */
+        public double getCostBasis() {
+            return costBasis;
+        }
+
+        /**
+         * @return Money made if every share were closed right now
+         */
+        public double getValue() {
+            return value;
+        }
+
+        private void add(Position position) {
+            count += position.count;
+            amount += position.amount;
+            costBasis += position.costBasis;
+            value += position.value;
+        }
+
+        private void clear() {
+            count = 0;
+            amount = 0;
+            costBasis = 0;
+            value = 0;
+        }
+    }
+}
@@ -11,6 +11,7 @@ import org.bukkit.persistence.PersistentDataType;
 import org.jetbrains.annotations.NotNull;
 
 import javax.annotation.Nullable;
+import java.io.*;
 import java.util.Objects;
 import java.util.UUID;
 
@@ -39,9 +40,15 @@ public class Share {
      */
     private double sellPrice;
 
+    /**
+     * Time (in millis) at which the share closed
+     */
+    private long closeTime;
+
     /*
      * These fields can be modified by other plugins freely. maxPrice
-     * and minPrice corresponds to the prices where it sells automatically
+     * and minPrice corresponds to the prices where it sells automatically.
+     * ShareManager#update must be called afterwards so that changes are saved
      */
     private final OrderInfo orderInfo = new OrderInfo();
 
@@ -108,6 +115,27 @@ public class Share {
         this.wallet = config.getDouble("wallet");
         this.closeReason = config.contains("close-reason") ? CloseReason.valueOf(config.getString("close-reason")) : null;
         this.sellPrice = isOpen() ? 0 : config.getDouble("sell-price");
+        this.closeTime = isOpen() ? 0 : config.getLong("close-time", System.currentTimeMillis());
+    }
+
+    /**
+     * Loads a share from the share journal, see {@link #write(DataOutput)}
+     */
+    public Share(UUID uuid, DataInput input) throws IOException {
+        this.uuid = uuid;
+        this.owner = new UUID(input.readLong(), input.readLong());
+        this.type = ShareType.valueOf(input.readUTF());
+        this.stock = Stonks.plugin.stockManager.get(input.readUTF());
+        orderInfo.setAmount(input.readDouble());
+        orderInfo.setLeverage(input.readDouble());
+        this.timeStamp = input.readLong();
+        this.initialPrice = input.readDouble();
+        orderInfo.setMinPrice(input.readDouble());
+        orderInfo.setMaxPrice(input.readDouble());
+        this.wallet = input.readDouble();
+        this.closeReason = input.readBoolean() ? CloseReason.valueOf(input.readUTF()) : null;
+        this.sellPrice = isOpen() ? 0 : input.readDouble();
+        this.closeTime = isOpen() ? 0 : input.readLong();
     }
 
     /**
@@ -134,6 +162,7 @@ public class Share {
         this.wallet = container.get(Utils.namespacedKey("ShareWallet"), PersistentDataType.DOUBLE);
         this.closeReason = container.has(Utils.namespacedKey("CloseReason"), PersistentDataType.STRING) ? CloseReason.valueOf(container.get(Utils.namespacedKey("CloseReason"), PersistentDataType.STRING)) : null;
         this.sellPrice = isOpen() ? 0 : container.get(Utils.namespacedKey("SellPrice"), PersistentDataType.DOUBLE);
+        this.closeTime = isOpen() ? 0 : System.currentTimeMillis();
     }
 
     public void saveInConfig(ConfigurationSection config) {
@@ -150,7 +179,46 @@ public class Share {
         if (!isOpen()) {
             config.set(uuid + ".close-reason", closeReason.name());
             config.set(uuid + ".sell-price", sellPrice);
+            config.set(uuid + ".close-time", closeTime);
+        }
+    }
+
+    /**
+     * Binary counterpart of {@link #saveInConfig(ConfigurationSection)} used
+     * by the share journal. The unique ID is not written
+     */
+    public void write(DataOutput output) throws IOException {
+        output.writeLong(owner.getMostSignificantBits());
+        output.writeLong(owner.getLeastSignificantBits());
+        output.writeUTF(type.name());
+        output.writeUTF(stock.getId());
+        output.writeDouble(orderInfo.getAmount());
+        output.writeDouble(orderInfo.getLeverage());
+        output.writeLong(timeStamp);
+        output.writeDouble(initialPrice);
+        output.writeDouble(orderInfo.getMinPrice());
+        output.writeDouble(orderInfo.getMaxPrice());
+        output.writeDouble(wallet);
+        output.writeBoolean(!isOpen());
+        if (!isOpen()) {
+            output.writeUTF(closeReason.name());
+            output.writeDouble(sellPrice);
+            output.writeLong(closeTime);
+        }
+    }
+
+    /**
+     * @return Share serialized using {@link #write(DataOutput)}
+     */
+    public byte[] toByteArray() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try {
+            write(new DataOutputStream(bytes));
+        } catch (IOException exception) {
+            // Never thrown by a byte array stream
+            throw new UncheckedIOException(exception);
         }
+        return bytes.toByteArray();
     }
 
     public UUID getUniqueId() {
@@ -176,6 +244,13 @@ public class Share {
         return timeStamp;
     }
 
+    /**
+     * @return Time (in millis) at which the share closed, or 0 if it is open
+     */
+    public long getCloseTime() {
+        return closeTime;
+    }
+
     public double getInitialPrice() {
         return initialPrice;
     }
@@ -191,6 +266,21 @@ public class Share {
         return wallet;
     }
 
+    /**
+     * Share sell price at which the share is worth nothing, ignoring taxes.
+     * A normal share is in deficit when its sell price is lower, a short
+     * share when its sell price is higher
+     *
+     * @return Zero-equity sell price, or NaN if the share cannot be in deficit
+     */
+    public double getDeficitPrice() {
+        final double leverage = orderInfo.getLeverage();
+        if (leverage <= 0)
+            return Double.NaN;
+
+        return initialPrice * (type == ShareType.SHORT ? 1 + 1 / leverage : 1 - 1 / leverage);
+    }
+
     public double getMaxPrice() {
         return orderInfo.getMaxPrice();
     }
@@ -233,13 +323,30 @@ public class Share {
      */
     public void close(@NotNull CloseReason closeReason) {
         Validate.isTrue(isOpen(), "Share is already closed");
-        this.closeReason = Objects.requireNonNull(closeReason, "Reason cannot be null");
         stock.getHandler().whenBought(type, -getShares());
-        this.sellPrice = stock.getPrice();
+        stock.registerVolume(getShares());
+        setClosed(closeReason, stock.getPrice());
+    }
+
+    /**
+     * Closes the share without applying its impact on the stock price,
+     * which must be done by the caller. Used to close many shares at once,
+     * see {@link fr.lezoo.stonks.manager.ShareManager#closeAll(java.util.Map)}
+     *
+     * @param closeReason Why the share was closed
+     * @param sellPrice   Stock price once the share is closed
+     */
+    public void setClosed(@NotNull CloseReason closeReason, double sellPrice) {
+        Validate.isTrue(isOpen(), "Share is already closed");
+        this.closeReason = Objects.requireNonNull(closeReason, "Reason cannot be null");
+        this.sellPrice = sellPrice;
+        this.closeTime = System.currentTimeMillis();
+        Stonks.plugin.shareManager.update(this);
     }
 
     public void setWallet(double wallet) {
         this.wallet = wallet;
+        Stonks.plugin.shareManager.update(this);
     }
 
     /**
@@ -251,6 +358,7 @@ public class Share {
         Validate.isTrue(gain >= 0, "Gain must be positive");
 
         wallet += gain;
+        Stonks.plugin.shareManager.update(this);
     }
 
     public double getCloseEarning(PlayerData playerData) {
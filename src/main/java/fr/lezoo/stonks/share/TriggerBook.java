@@ -0,0 +1,117 @@
+package fr.lezoo.stonks.share;
+
+import fr.lezoo.stonks.stock.Stock;
+import org.apache.commons.lang.Validate;
+
+import java.util.*;
+
+/**
+ * Open shares of one stock sorted by the prices at which they must be
+ * closed, so that finding the shares to close only goes through the
+ * range of prices crossed instead of every open share.
+ * <p>
+ * Max and min prices are compared to the stock price. Deficits are
+ * compared to the share sell price, which also depends on the amount of
+ * shares for fictive stocks: a bound on the sell price of every share is
+ * computed from the biggest share, assuming that selling more shares
+ * moves the sell price further away from the stock price. Shares within
+ * that bound are checked exactly.
+ */
+public class TriggerBook {
+    private final NavigableMap<Double, Set<Share>> maxPrices = new TreeMap<>(), minPrices = new TreeMap<>();
+
+    /**
+     * Normal shares are in deficit below their deficit price, short shares above
+     */
+    private final NavigableMap<Double, Set<Share>> normalDeficits = new TreeMap<>(), shortDeficits = new TreeMap<>();
+
+    /**
+     * Used to find the biggest normal and short shares
+     */
+    private final NavigableMap<Double, Set<Share>> normalAmounts = new TreeMap<>(), shortAmounts = new TreeMap<>();
+
+    /**
+     * Keys each share was filed under, as share order info can be
+     * edited by other plugins: max price, min price, deficit price, amount
+     */
+    private final Map<Share, double[]> keys = new HashMap<>();
+
+    public void add(Share share) {
+        Validate.isTrue(share.isOpen(), "Share is closed");
+        remove(share);
+
+        final double[] keys = {share.getMaxPrice(), share.getMinPrice(), share.getDeficitPrice(), share.getShares()};
+        this.keys.put(share, keys);
+        add(maxPrices, keys[0], share);
+        add(minPrices, keys[1], share);
+        add(share.getType() == ShareType.SHORT ? shortDeficits : normalDeficits, keys[2], share);
+        add(share.getType() == ShareType.SHORT ? shortAmounts : normalAmounts, keys[3], share);
+    }
+
+    public void remove(Share share) {
+        final double[] keys = this.keys.remove(share);
+        if (keys == null)
+            return;
+
+        remove(maxPrices, keys[0], share);
+        remove(minPrices, keys[1], share);
+        remove(share.getType() == ShareType.SHORT ? shortDeficits : normalDeficits, keys[2], share);
+        remove(share.getType() == ShareType.SHORT ? shortAmounts : normalAmounts, keys[3], share);
+    }
+
+    public boolean isEmpty() {
+        return keys.isEmpty();
+    }
+
+    /**
+     * Does not close shares. Shares reaching their max or min price are
+     * closed automatically, before shares in deficit
+     *
+     * @param stock Stock of the shares in this book
+     * @return Shares which must be closed, with the reason why
+     */
+    public Map<Share, CloseReason> getTriggered(Stock stock) {
+        Map<Share, CloseReason> triggered = new LinkedHashMap<>();
+        if (isEmpty())
+            return triggered;
+
+        final double price = stock.getPrice();
+        for (Set<Share> shares : maxPrices.headMap(price, true).values())
+            shares.forEach(share -> triggered.put(share, CloseReason.AUTOMATIC));
+        for (Set<Share> shares : minPrices.tailMap(price, true).values())
+            shares.forEach(share -> triggered.putIfAbsent(share, CloseReason.AUTOMATIC));
+
+        // Normal shares may be in deficit when their deficit price is above the lowest sell price
+        if (!normalAmounts.isEmpty()) {
+            final double lowestSellPrice = Math.min(price, stock.getHandler().getSellPrice(normalAmounts.lastEntry().getValue().iterator().next()));
+            for (Set<Share> shares : normalDeficits.tailMap(lowestSellPrice, true).values())
+                addDeficits(shares, triggered);
+        }
+
+        // Short shares may be in deficit when their deficit price is below the highest sell price
+        if (!shortAmounts.isEmpty()) {
+            final double highestSellPrice = Math.max(price, stock.getHandler().getSellPrice(shortAmounts.lastEntry().getValue().iterator().next()));
+            for (Set<Share> shares : shortDeficits.headMap(highestSellPrice, true).values())
+                addDeficits(shares, triggered);
+        }
+
+        return triggered;
+    }
+
+    private void addDeficits(Set<Share> candidates, Map<Share, CloseReason> triggered) {
+        for (Share share : candidates)
+            if (!triggered.containsKey(share) && share.getCloseEarning(0, 0) <= 0)
+                triggered.put(share, CloseReason.DEFICIT);
+    }
+
+    private static void add(NavigableMap<Double, Set<Share>> map, double key, Share share) {
+        if (!Double.isNaN(key))
+            map.computeIfAbsent(key, unused -> new HashSet<>()).add(share);
+    }
+
+    private static void remove(NavigableMap<Double, Set<Share>> map, double key, Share share) {
+        Set<Share> shares = map.get(key);
+        if (shares != null && shares.remove(share) && shares.isEmpty())
+            map.remove(key);
+    }
+}
@@ -0,0 +1,183 @@
+package fr.lezoo.stonks.stock;
+
+import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.util.Utils;
+import org.apache.commons.lang.Validate;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Long-horizon price history of a stock. Unlike {@link TimeScale} series
+ * which always hold {@link Stock#BOARD_DATA_NUMBER} candles, the history is
+ * made of tiers with a configurable resolution and retention, for instance
+ * minute candles for a day, 15-minute candles for a month and daily
+ * candles for five years.
+ * <p>
+ * Every tier has a fixed capacity (retention / resolution) allocated
+ * once, so the memory used per stock is bounded and known in advance.
+ * Finished candles are merged into every tier, which means coarse tiers
+ * are compacted from fine data as it comes and old data is evicted
+ * from the ring buffers automatically.
+ */
+public class PriceHistory {
+    private final List<Tier> tiers = new ArrayList<>();
+
+    /**
+     * Prevents a typo in the config from allocating gigabytes
+     */
+    private static final int MAX_TIER_CANDLES = 100000;
+
+    /**
+     * Loads the default history tiers from the config.yml
+     */
+    public PriceHistory() {
+        this(Stonks.plugin.configManager.defaultPriceHistory);
+    }
+
+    /**
+     * Loads history tiers from a config section
+     */
+    public PriceHistory(ConfigurationSection config) {
+        Validate.notNull(config, "Could not find price history config");
+
+        for (String key : config.getKeys(false))
+            tiers.add(new Tier(key, config.getConfigurationSection(key)));
+        Validate.isTrue(!tiers.isEmpty(), "Price history needs at least one tier");
+
+        // Sort tiers from finest to coarsest resolution
+        tiers.sort((tier1, tier2) -> Long.compare(tier1.resolution, tier2.resolution));
+    }
+
+    /**
+     * @return Tiers sorted from finest to coarsest resolution
+     */
+    public List<Tier> getTiers() {
+        return Collections.unmodifiableList(tiers);
+    }
+
+    /**
+     * Merges a finished candle into every tier
+     *
+     * @param timeStamp Time at which the candle started
+     */
+    public void record(long timeStamp, double open, double high, double low, double close, double volume) {
+        for (Tier tier : tiers) {
+            long candleStart = timeStamp - timeStamp % tier.resolution;
+            if (!tier.series.isEmpty() && tier.series.getLatestTimeStamp() >= candleStart)
+                tier.series.merge(high, low, close, volume);
+            else
+                tier.series.add(candleStart, open, high, low, close, volume);
+        }
+    }
+
+    /**
+     * Stitches the candles of the different tiers. The most recent part of
+     * the range is taken from the finest tier, and the older parts from
+     * the coarser tiers, which cover a longer time span.
+     *
+     * @param from Start of the time range, in millis
+     * @param to   End of the time range, in millis
+     * @return New series containing all the candles in the given range
+     */
+    public StockSeries query(long from, long to) {
+
+        // Ranges of candle indexes, from finest to coarsest tier
+        int[] firstIndex = new int[tiers.size()], lastIndex = new int[tiers.size()];
+        int total = 0;
+        long upperBound = to;
+        for (int i = 0; i < tiers.size(); i++) {
+            StockSeries series = tiers.get(i).series;
+            firstIndex[i] = series.indexOf(from);
+            lastIndex[i] = upperBound == Long.MAX_VALUE ? series.size() - 1 : series.indexOf(upperBound + 1) - 1;
+            if (series.isEmpty())
+                continue;
+
+            total += Math.max(0, lastIndex[i] - firstIndex[i] + 1);
+
+            // Coarser tiers only fill what is older than this tier
+            upperBound = Math.min(upperBound, series.getTimeStamp(0) - 1);
+        }
+
+        // Copy from coarsest to finest so that candles stay ordered
+        StockSeries stitched = new StockSeries(Math.max(1, total));
+        for (int i = tiers.size() - 1; i >= 0; i--) {
+            StockSeries series = tiers.get(i).series;
+            for (int j = firstIndex[i]; j <= lastIndex[i]; j++)
+                stitched.add(series.getTimeStamp(j), series.getOpen(j), series.getHigh(j), series.getLow(j), series.getClose(j), series.getVolume(j));
+        }
+
+        return stitched;
+    }
+
+    /**
+     * Same as {@link #query(long, long)} but consecutive candles are
+     * merged so that the returned series can be charted directly
+     *
+     * @param maxCandles Max amount of candles returned
+     */
+    public StockSeries query(long from, long to, int maxCandles) {
+        Validate.isTrue(maxCandles > 0, "Max amount of candles must be strictly positive");
+
+        StockSeries stitched = query(from, to);
+        if (stitched.size() <= maxCandles)
+            return stitched;
+
+        final int groupSize = (int) Math.ceil((double) stitched.size() / maxCandles);
+        StockSeries merged = new StockSeries(maxCandles);
+        for (int i = 0; i < stitched.size(); i++)
+            if (i % groupSize == 0)
+                merged.add(stitched.getTimeStamp(i), stitched.getOpen(i), stitched.getHigh(i), stitched.getLow(i), stitched.getClose(i), stitched.getVolume(i));
+            else
+                merged.merge(stitched.getHigh(i), stitched.getLow(i), stitched.getClose(i), stitched.getVolume(i));
+
+        return merged;
+    }
+
+    public static class Tier {
+        private final String id;
+        private final long resolution, retention;
+        private final StockSeries series;
+
+        public Tier(String id, ConfigurationSection config) {
+            Validate.notNull(config, "Could not find config of history tier '" + id + "'");
+
+            this.id = id;
+            this.resolution = Utils.parseDuration(config.getString("resolution"));
+            this.retention = Utils.parseDuration(config.getString("retention"));
+            Validate.isTrue(resolution >= TimeScale.MINUTE.getCandleWidth(), "Resolution of tier '" + id + "' must be at least " + TimeScale.MINUTE.getCandleWidth() + "ms");
+            Validate.isTrue(retention >= resolution, "Retention of tier '" + id + "' must be greater than its resolution");
+
+            final long capacity = retention / resolution;
+            Validate.isTrue(capacity <= MAX_TIER_CANDLES, "Tier '" + id + "' would hold more than " + MAX_TIER_CANDLES + " candles");
+            this.series = new StockSeries((int) capacity);
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        /**
+         * @return Time in millis covered by one candle of the tier
+         */
+        public long getResolution() {
+            return resolution;
+        }
+
+        /**
+         * @return Time in millis after which candles are evicted
+         */
+        public long getRetention() {
+            return retention;
+        }
+
+        /**
+         * @return Returned object is NOT a clone
+         */
+        public StockSeries getSeries() {
+            return series;
+        }
+    }
+}
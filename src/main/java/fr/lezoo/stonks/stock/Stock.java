@@ -35,10 +35,28 @@ public class Stock {
     private final StockHandler handler;
 
     /**
-     * List of data for every scale. Allows to store just the right
+     * Series of data for every scale. Allows to store just the right
      * amount of data needed so that there aren't 10s timestamps on the yearly scale.
      */
-    protected final Map<TimeScale, List<StockInfo>> stockData = new HashMap<>();
+    protected final Map<TimeScale, StockSeries> stockData = new EnumMap<>(TimeScale.class);
+
+    /**
+     * Long-horizon price history, fed with finished candles
+     */
+    @NotNull
+    private final PriceHistory history;
+
+    /**
+     * Amount of shares traded since the last time a
+     * price tick was merged into the finest candle
+     */
+    private double pendingVolume;
+
+    /**
+     * Range of the prices streamed since the last time a price
+     * tick was merged into the finest candle, NaN if none
+     */
+    private double pendingOpen = Double.NaN, pendingHigh = Double.NaN, pendingLow = Double.NaN;
 
     /**
      * How frequently this stock refreshes in ticks!!
@@ -68,8 +86,9 @@ public class Stock {
         this.name = name;
         this.dividends = dividends;
         this.exchangeType = exchangeType;
+        this.history = new PriceHistory();
         for (TimeScale disp : TimeScale.values())
-            stockData.put(disp, new ArrayList(Arrays.asList(firstStockData)));
+            getData(disp).add(firstStockData);
         Stonks.plugin.stockManager.initializeStockData(this);
         // Handler provider needs to be set up in last
         this.handler = handlerProvider.apply(this);
@@ -87,7 +106,8 @@ public class Stock {
         this.dividends = config.contains("dividends") ? new Dividends(this, config.getConfigurationSection("dividends")) : new Dividends(this);
 
         exchangeType = config.contains("exchange-type") ? new ExchangeType(config.getConfigurationSection("exchange-type")) : null;
-        this.handler = config.getBoolean("real-stock") ? new RealStockHandler(this) : new FictiveStockHandler(this, config);
+        this.handler = config.getBoolean("real-stock") ? new RealStockHandler(this, config.getString("symbol", id)) : new FictiveStockHandler(this, config);
+        this.history = config.contains("price-history") ? new PriceHistory(config.getConfigurationSection("price-history")) : new PriceHistory();
         // Set the data of the stock after initializing stock handler
         Stonks.plugin.stockManager.initializeStockData(this);
         this.refreshPeriod = config.getLong("refresh-period", config.getBoolean("real-stock") ? REAL_STOCK_DEFAULT_REFRESH_PERIOD : VIRTUAL_STOCK_DEFAULT_REFRESH_PERIOD);
@@ -125,16 +145,40 @@ public class Stock {
      * @return Returned object is NOT a clone
      */
     @NotNull
-    public List<StockInfo> getData(TimeScale disp) {
-        List<StockInfo> found = stockData.get(disp);
+    public StockSeries getData(TimeScale disp) {
+        StockSeries found = stockData.get(disp);
         if (found != null)
             return found;
 
-        found = new ArrayList<>();
+        found = new StockSeries(BOARD_DATA_NUMBER);
         stockData.put(disp, found);
         return found;
     }
 
+    /**
+     * Candles charted over a time scale. They are read from the price
+     * history, which can give charts more candles than the time scale
+     * series, unless the history holds fewer candles over that time scale
+     * like right after the stock was created
+     *
+     * @param maxCandles Max amount of candles the chart has room for
+     * @return Returned object may NOT be a clone
+     */
+    @NotNull
+    public StockSeries getChartData(TimeScale time, int maxCandles) {
+        StockSeries data = getData(time);
+        StockSeries history = this.history.query(System.currentTimeMillis() - time.getTime(), Long.MAX_VALUE, maxCandles);
+        return history.size() > data.size() ? history : data;
+    }
+
+    /**
+     * @return Returned object is NOT a clone
+     */
+    @NotNull
+    public PriceHistory getHistory() {
+        return history;
+    }
+
     public boolean isRealStock() {
         return handler instanceof RealStockHandler;
     }
@@ -155,15 +199,15 @@ public class Stock {
      * @return Growth rate compared to some time ago
      */
     public double getEvolution(TimeScale time) {
-        List<StockInfo> stockData = this.getData(time);
+        StockSeries stockData = this.getData(time);
 
         /*
-         * Last information in the list corresponds to the latest information.
+         * Last information in the series corresponds to the latest information.
          * First information corresponds to the oldest, which gives us the growth rate.
          *
          * We need a division by zero check?
          */
-        double oldest = stockData.get(0).getPrice();
+        double oldest = stockData.getOldestPrice();
         double latest = getPrice();
 
         return Utils.truncate(100 * (latest - oldest) / oldest, 1);
@@ -175,7 +219,7 @@ public class Stock {
     public void save(FileConfiguration config) {
 
         // If the stock is empty we destroy it to not overload memory and avoid errors
-        if (stockData.get(TimeScale.HOUR) == null || stockData.get(TimeScale.HOUR).size() == 0) {
+        if (stockData.get(TimeScale.HOUR) == null || stockData.get(TimeScale.HOUR).isEmpty()) {
             config.set(id, null);
             return;
         }
@@ -206,8 +250,6 @@ public class Stock {
                 config.set(id + ".exchange-type.display", exchangeType.getDisplay());
             }
         }
-
-        Stonks.plugin.stockManager.save(this);
     }
 
     /**
@@ -215,15 +257,11 @@ public class Stock {
      * @return Lowest price for the given time
      */
     public double getLowest(TimeScale time) {
-        List<StockInfo> stockData = this.getData(time);
-        if (stockData.size() == 0)
+        StockSeries stockData = this.getData(time);
+        if (stockData.isEmpty())
             Stonks.plugin.getLogger().log(Level.WARNING, "Can't get lowest value of stock '" + id + "' as data is empty");
 
-        double min = stockData.get(0).getPrice();
-        for (StockInfo stockInfo : stockData)
-            if (stockInfo.getPrice() < min)
-                min = stockInfo.getPrice();
-        return min;
+        return stockData.getLowest();
     }
 
     /**
@@ -231,39 +269,93 @@ public class Stock {
      * @return Highest price for the given time
      */
     public double getHighest(TimeScale time) {
-        List<StockInfo> stockData = this.getData(time);
-        if (stockData.size() == 0)
+        StockSeries stockData = this.getData(time);
+        if (stockData.isEmpty())
             Stonks.plugin.getLogger().log(Level.WARNING, "Can't get highest value of stock '" + id + "' as data is empty");
 
-        double max = stockData.get(0).getPrice();
-        for (StockInfo stockInfo : stockData)
-            if (stockInfo.getPrice() > max)
-                max = stockInfo.getPrice();
-        return max;
+        return stockData.getHighest();
     }
 
-    public void saveCurrentStateAsStockData() {
-
-        // Compute current price
-        double price = handler.getCurrentPrice();
+    /**
+     * Called when shares are bought or closed so that
+     * the traded volume appears in the stock candles
+     *
+     * @param shares Amount of shares traded
+     */
+    public void registerVolume(double shares) {
+        pendingVolume += Math.abs(shares);
+    }
 
-        for (TimeScale time : TimeScale.values()) {
+    /**
+     * Called when real stock prices are streamed so that prices
+     * reached between two price ticks appear in the stock candles
+     *
+     * @param open Oldest price streamed
+     * @param high Highest price streamed
+     * @param low  Lowest price streamed
+     */
+    public void registerTicks(double open, double high, double low) {
+        if (Double.isNaN(pendingOpen))
+            pendingOpen = open;
+        pendingHigh = Double.isNaN(pendingHigh) ? high : Math.max(pendingHigh, high);
+        pendingLow = Double.isNaN(pendingLow) ? low : Math.min(pendingLow, low);
+    }
 
-            // Find mutable list of stock data
-            List<StockInfo> workingData = getData(time);
+    /**
+     * Price ticks are only written into the candle of the finest time
+     * scale. When that candle is finished, it is merged into the
+     * current candle of every coarser time scale.
+     * <p>
+     * Time scales are not multiples of one another (a month is not
+     * a whole amount of weeks) so finished candles are not cascaded
+     * from one scale to the next, which would misplace candles
+     * overlapping two buckets of the coarser scale.
+     */
+    public void saveCurrentStateAsStockData() {
 
-            // This fixes an issue with empty working data
-            long lastTimeStamp = workingData.isEmpty() ? 0 : workingData.get(workingData.size() - 1).getTimeStamp();
+        // Compute current price
+        final double price = handler.getCurrentPrice();
+        final long now = System.currentTimeMillis();
+        final StockSeries finest = getData(TimeScale.MINUTE);
+
+        final double open = Double.isNaN(pendingOpen) ? price : pendingOpen,
+                high = Double.isNaN(pendingHigh) ? price : Math.max(price, pendingHigh),
+                low = Double.isNaN(pendingLow) ? price : Math.min(price, pendingLow);
+
+        // Still in the same candle
+        if (!finest.isEmpty() && finest.getLatestTimeStamp() >= TimeScale.MINUTE.getCandleStart(now))
+            finest.merge(high, low, price, pendingVolume);
+
+        else {
+            if (!finest.isEmpty())
+                rollUp(finest);
+            finest.add(TimeScale.MINUTE.getCandleStart(now), open, high, low, price, pendingVolume);
+        }
 
-            // If the the latest data FOR THAT TIME SCALE is too old, ADD a new one
-            if (System.currentTimeMillis() - lastTimeStamp > time.getTime() / Stock.BOARD_DATA_NUMBER) {
-                workingData.add(new StockInfo(System.currentTimeMillis(), price));
+        pendingVolume = 0;
+        pendingOpen = pendingHigh = pendingLow = Double.NaN;
+    }
 
-                // If the list contains too much data we remove the older ones
-                if (workingData.size() > Stock.BOARD_DATA_NUMBER)
-                    workingData.remove(0);
+    /**
+     * Merges the latest candle of the finest time scale
+     * into the current candles of the coarser time scales
+     */
+    private void rollUp(StockSeries finest) {
+        final int last = finest.size() - 1;
+        final long start = finest.getTimeStamp(last);
+        final double open = finest.getOpen(last), high = finest.getHigh(last), low = finest.getLow(last),
+                close = finest.getClose(last), volume = finest.getVolume(last);
+        history.record(start, open, high, low, close, volume);
+
+        for (TimeScale time : TimeScale.values())
+            if (time != TimeScale.MINUTE) {
+                StockSeries series = getData(time);
+                long candleStart = time.getCandleStart(start);
+                if (!series.isEmpty() && series.getLatestTimeStamp() >= candleStart)
+                    series.merge(high, low, close, volume);
+                else
+                    series.add(candleStart, open, high, low, close, volume);
             }
-        }
     }
 
     /**
@@ -0,0 +1,358 @@
+package fr.lezoo.stonks.stock;
+
+import org.apache.commons.lang.Validate;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * Price history of a stock on one time scale, stored as candles
+ * (open, high, low, close and volume). Every candle field is stored
+ * in its own primitive ring buffer so that appending a candle and
+ * evicting the oldest one are both O(1) and no object is created
+ * per data point.
+ * <p>
+ * Index 0 always corresponds to the OLDEST candle and
+ * index {@code size() - 1} to the LATEST candle. The time stamp of
+ * a candle is the time at which its bucket starts, and its
+ * price is its close price.
+ * <p>
+ * Lowest and highest prices are maintained incrementally using two
+ * monotonic deques, which makes {@link #getLowest()} and {@link #getHighest()}
+ * O(1) instead of having to scan the whole series on every call.
+ */
+public class StockSeries {
+    private final long[] timeStamps;
+    private final double[] open, high, low, close, volume;
+
+    /**
+     * Total amount of candles appended since the last clear. Candle
+     * number N is stored at index N % capacity in the ring buffers
+     */
+    private long appended;
+
+    /**
+     * Amount of candles currently stored
+     */
+    private int size;
+
+    /**
+     * Candle numbers whose lows are increasing and whose
+     * highs are decreasing from front to back.
+     */
+    private final MonotonicDeque lowest, highest;
+
+    /**
+     * @param capacity Max amount of candles kept. When full, appending
+     *                 a new candle evicts the oldest one
+     */
+    public StockSeries(int capacity) {
+        Validate.isTrue(capacity > 0, "Capacity must be strictly positive");
+
+        this.timeStamps = new long[capacity];
+        this.open = new double[capacity];
+        this.high = new double[capacity];
+        this.low = new double[capacity];
+        this.close = new double[capacity];
+        this.volume = new double[capacity];
+        this.lowest = new MonotonicDeque(low, true);
+        this.highest = new MonotonicDeque(high, false);
+    }
+
+    public int getCapacity() {
+        return close.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean isFull() {
+        return size == close.length;
+    }
+
+    /**
+     * Appends a new candle where all prices are equal. If
+     * the series is full, the oldest candle is evicted.
+     *
+     * @param timeStamp Time at which the price was evaluated
+     * @param price     Stock price
+     */
+    public void add(long timeStamp, double price) {
+        add(timeStamp, price, price, price, price, 0);
+    }
+
+    public void add(StockInfo info) {
+        add(info.getTimeStamp(), info.getPrice());
+    }
+
+    /**
+     * Appends a new candle at the end of the series. If the
+     * series is full, the oldest candle is evicted.
+     *
+     * @param timeStamp Time at which the candle bucket starts
+     * @param volume    Amount of shares traded during the bucket
+     */
+    public void add(long timeStamp, double open, double high, double low, double close, double volume) {
+
+        // Buffer is full, the oldest candle is overwritten
+        if (size == this.close.length) {
+            final long evicted = appended - size;
+            lowest.evict(evicted);
+            highest.evict(evicted);
+        } else
+            size++;
+
+        final int tail = (int) (appended % this.close.length);
+        this.timeStamps[tail] = timeStamp;
+        this.open[tail] = open;
+        this.high[tail] = high;
+        this.low[tail] = low;
+        this.close[tail] = close;
+        this.volume[tail] = volume;
+
+        lowest.push(appended);
+        highest.push(appended);
+        appended++;
+    }
+
+    /**
+     * Merges a new price tick into the latest candle
+     *
+     * @param price  Current stock price
+     * @param volume Amount of shares traded since the last tick
+     */
+    public void update(double price, double volume) {
+        merge(price, price, price, volume);
+    }
+
+    /**
+     * Merges a finished candle from a finer time scale into the
+     * latest candle. The open price of the latest candle is kept.
+     */
+    public void merge(double high, double low, double close, double volume) {
+        Validate.isTrue(size > 0, "Series is empty");
+
+        final int last = toBufferIndex(size - 1);
+        this.close[last] = close;
+        this.volume[last] += volume;
+
+        // Latest candle is always at the back of the deques
+        if (high > this.high[last]) {
+            this.high[last] = high;
+            highest.refreshBack(appended - 1);
+        }
+        if (low < this.low[last]) {
+            this.low[last] = low;
+            lowest.refreshBack(appended - 1);
+        }
+    }
+
+    public void clear() {
+        appended = 0;
+        size = 0;
+        lowest.clear();
+        highest.clear();
+    }
+
+    /**
+     * @param index Index of candle, 0 being the oldest candle
+     * @return Close price at given index
+     */
+    public double getPrice(int index) {
+        return close[toBufferIndex(index)];
+    }
+
+    /**
+     * @param index Index of candle, 0 being the oldest candle
+     * @return Time stamp at given index
+     */
+    public long getTimeStamp(int index) {
+        return timeStamps[toBufferIndex(index)];
+    }
+
+    public double getOpen(int index) {
+        return open[toBufferIndex(index)];
+    }
+
+    public double getHigh(int index) {
+        return high[toBufferIndex(index)];
+    }
+
+    public double getLow(int index) {
+        return low[toBufferIndex(index)];
+    }
+
+    public double getClose(int index) {
+        return close[toBufferIndex(index)];
+    }
+
+    public double getVolume(int index) {
+        return volume[toBufferIndex(index)];
+    }
+
+    /**
+     * Candles are sorted by time stamp so this is a binary search
+     *
+     * @param timeStamp Time stamp in millis
+     * @return Index of the first candle starting at or after the given
+     *         time stamp, or {@link #size()} if there is none
+     */
+    public int indexOf(long timeStamp) {
+        int low = 0, high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (getTimeStamp(mid) < timeStamp)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return low;
+    }
+
+    /**
+     * @param fromIndex Index of the first candle copied
+     * @return New series containing a copy of the candles
+     *         from the given index to the latest candle
+     */
+    public StockSeries subSeries(int fromIndex) {
+        StockSeries copy = new StockSeries(Math.max(1, size - fromIndex));
+        for (int i = fromIndex; i < size; i++)
+            copy.add(getTimeStamp(i), getOpen(i), getHigh(i), getLow(i), getClose(i), getVolume(i));
+        return copy;
+    }
+
+    public double getOldestPrice() {
+        return getOpen(0);
+    }
+
+    public double getLatestPrice() {
+        return getPrice(size - 1);
+    }
+
+    /**
+     * @return Time stamp of the latest candle, or 0 if the series is empty
+     */
+    public long getLatestTimeStamp() {
+        return size == 0 ? 0 : getTimeStamp(size - 1);
+    }
+
+    /**
+     * @return Lowest price of the series
+     */
+    public double getLowest() {
+        Validate.isTrue(size > 0, "Series is empty");
+        return low[lowest.front()];
+    }
+
+    /**
+     * @return Highest price of the series
+     */
+    public double getHighest() {
+        Validate.isTrue(size > 0, "Series is empty");
+        return high[highest.front()];
+    }
+
+    /**
+     * Read-only view of the series, mostly used by external plugins.
+     * The returned list is backed by the series and reflects later
+     * appends. A new {@link StockInfo} is created on every access
+     * so prefer {@link #getPrice(int)} and {@link #getTimeStamp(int)}.
+     *
+     * @return Unmodifiable list of the close prices of the series
+     */
+    public List<StockInfo> asList() {
+        return new AbstractList<StockInfo>() {
+
+            @Override
+            public StockInfo get(int index) {
+                return new StockInfo(getTimeStamp(index), getPrice(index));
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int toBufferIndex(int index) {
+        if (index < 0 || index >= size)
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for series of size " + size);
+
+        return (int) ((appended - size + index) % close.length);
+    }
+
+    /**
+     * Deque of candle numbers whose values are monotonic from front
+     * to back. The front always holds the min (or max) of the series.
+     * Every candle is pushed and popped at most once (plus once per
+     * merge for the latest one) so the amortized cost of an append is O(1).
+     */
+    private class MonotonicDeque {
+        private final double[] values;
+        private final long[] candles;
+        private final boolean increasing;
+        private int head, size;
+
+        MonotonicDeque(double[] values, boolean increasing) {
+            this.values = values;
+            this.candles = new long[values.length];
+            this.increasing = increasing;
+        }
+
+        /**
+         * @return Buffer index of the candle at the front of the deque
+         */
+        int front() {
+            return (int) (candles[head] % values.length);
+        }
+
+        /**
+         * Pops the back of the deque while it would break monotony, then
+         * pushes the new candle. Must be called after the value was written
+         */
+        void push(long candle) {
+            final double value = values[(int) (candle % values.length)];
+            while (size > 0) {
+                final double back = values[(int) (candles[(head + size - 1) % candles.length] % values.length)];
+                if (increasing ? back < value : back > value)
+                    break;
+                size--;
+            }
+
+            candles[(head + size) % candles.length] = candle;
+            size++;
+        }
+
+        /**
+         * Called when the value of the latest candle was pushed further away
+         * from the others (lower low or higher high), which can only make it
+         * dominate more candles. It is always at the back of the deque.
+         */
+        void refreshBack(long candle) {
+            size--;
+            push(candle);
+        }
+
+        /**
+         * Removes the candle from the front of the deque if it's the
+         * one being evicted. Must be called before it's overwritten
+         */
+        void evict(long candle) {
+            if (size > 0 && candles[head] == candle) {
+                head = (head + 1) % candles.length;
+                size--;
+            }
+        }
+
+        void clear() {
+            head = 0;
+            size = 0;
+        }
+    }
+}
@@ -23,4 +23,21 @@ public enum TimeScale {
     public long getTime() {
         return time;
     }
+
+    /**
+     * Every time scale holds {@link Stock#BOARD_DATA_NUMBER} candles
+     *
+     * @return Time in milliseconds covered by one candle
+     */
+    public long getCandleWidth() {
+        return time / Stock.BOARD_DATA_NUMBER;
+    }
+
+    /**
+     * @param timeStamp Any time stamp in millis
+     * @return Time stamp at which the candle containing it starts
+     */
+    public long getCandleStart(long timeStamp) {
+        return timeStamp - timeStamp % getCandleWidth();
+    }
 }
@@ -6,20 +6,28 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-public class AlphaVantageAPI extends StockAPI {
+public class AlphaVantageAPI extends HttpStockAPI {
     public AlphaVantageAPI(ConfigurationSection config) {
-        super(config);
+        super(config, "https://www.alphavantage.co", 5, 1, 500, "15m");
     }
 
     @Override
     public String getURL(String stockId) {
-        return "https://www.alphavantage.co/query?function=GLOBAL_QUOTE&symbol=" + stockId + "&apikey=" + getStockKey();
+        return getBaseURL() + "/query?function=GLOBAL_QUOTE&symbol=" + stockId + "&apikey=" + getStockKey();
+    }
+
+    /**
+     * Reached rate limits are answered with a 200 status and a
+     * "Note" or "Information" message instead of a quote
+     */
+    @Override
+    protected void checkErrors(String response) throws StockAPIException {
+        if (response.contains("call frequency") || response.contains("rate limit"))
+            throw new StockAPIException(429, response);
     }
 
     @Override
     public double parseResponse(String response, String stockId) throws ParseException {
-        //Check if the amount of API call has been surpassed
-        Validate.isTrue(!response.contains("Our standard API call frequency is 5 calls"), "Max amount of 5 API calls/min (for free version of alphavantage) has been surpassed");
         JSONObject jsonObject = (JSONObject) new JSONParser().parse(response);
         JSONObject globalQuotes = (JSONObject) jsonObject.get("Global Quote");
         Validate.notNull(globalQuotes.get("05. price"), "AlphaVantage API Problem with" + stockId + "\n" + response);
@@ -0,0 +1,23 @@
+package fr.lezoo.stonks.stock.api;
+
+import org.json.simple.parser.ParseException;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Implemented by HTTP stock APIs which can fetch the prices of many
+ * stocks in one call, along with {@link StockAPI#getMaxBatchSize()}
+ */
+public interface BatchQuotes {
+
+    /**
+     * @param stockIds At most {@link StockAPI#getMaxBatchSize()} stock ids/symbols
+     */
+    String getBatchURL(List<String> stockIds);
+
+    /**
+     * @return Prices of the stocks which were found
+     */
+    Map<String, Double> parseBatchResponse(String response, List<String> stockIds) throws ParseException;
+}
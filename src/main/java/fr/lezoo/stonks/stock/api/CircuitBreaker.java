@@ -0,0 +1,103 @@
+package fr.lezoo.stonks.stock.api;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Stops calling the stock API when it keeps failing. After every
+ * transient failure, calls are delayed exponentially longer. Once too
+ * many calls failed in a row, the breaker opens and no call is made for
+ * a longer time, after which one single trial call decides whether calls
+ * resume or whether the breaker opens again. Thread safe.
+ * <p>
+ * Every call must end with {@link #onSuccess()}, {@link #onFailure()}
+ * or {@link #release()}, otherwise a trial call blocks calls forever.
+ */
+public class CircuitBreaker {
+    private final int threshold;
+    private final long baseDelay, maxDelay, openDelay;
+
+    private int failures;
+    private long retryAt;
+    private boolean trial;
+
+    /**
+     * @param threshold Failures in a row opening the breaker
+     * @param baseDelay Delay after the first failure in millis, doubled after every failure
+     * @param maxDelay  Max delay between calls while backing off in millis
+     * @param openDelay Time during which the breaker stays open in millis
+     */
+    public CircuitBreaker(int threshold, long baseDelay, long maxDelay, long openDelay) {
+        this.threshold = threshold;
+        this.baseDelay = baseDelay;
+        this.maxDelay = maxDelay;
+        this.openDelay = openDelay;
+    }
+
+    /**
+     * Does not reserve the call, see {@link #onCall()}
+     *
+     * @return If a call can be made right now
+     */
+    public synchronized boolean canCall() {
+        return System.currentTimeMillis() >= retryAt && !trial;
+    }
+
+    /**
+     * Called when a call is made. While the breaker is
+     * open, no other call is allowed until this one completes
+     */
+    public synchronized void onCall() {
+        if (failures >= threshold)
+            trial = true;
+    }
+
+    public synchronized void onSuccess() {
+        failures = 0;
+        retryAt = 0;
+        trial = false;
+    }
+
+    /**
+     * Ends a call which failed for a reason which does not depend on when
+     * calls are made, like a wrong API key. Calls stay delayed as they were,
+     * but a trial call no longer prevents other calls
+     */
+    public synchronized void release() {
+        trial = false;
+    }
+
+    /**
+     * Only transient failures, like timeouts or rate limits, should
+     * be reported. Other failures do not depend on when calls are made
+     */
+    public synchronized void onFailure() {
+        trial = false;
+        failures++;
+
+        // Random jitter so that many servers do not retry at the same time
+        final long delay = failures >= threshold ? openDelay : Math.min(maxDelay, baseDelay << Math.min(failures - 1, 30));
+        retryAt = System.currentTimeMillis() + delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    public synchronized State getState() {
+        return failures >= threshold ? State.OPEN : failures > 0 ? State.BACKING_OFF : State.CLOSED;
+    }
+
+    public enum State {
+
+        /**
+         * Calls are made normally
+         */
+        CLOSED,
+
+        /**
+         * Calls failed recently and are delayed
+         */
+        BACKING_OFF,
+
+        /**
+         * Too many calls failed, only trial calls are made
+         */
+        OPEN;
+    }
+}
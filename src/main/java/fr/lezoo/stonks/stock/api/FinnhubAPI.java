@@ -2,26 +2,76 @@ package fr.lezoo.stonks.stock.api;
 
 import org.apache.commons.lang.Validate;
 import org.bukkit.configuration.ConfigurationSection;
+import org.json.simple.JSONArray;
 import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-public class FinnhubAPI extends StockAPI {
+public class FinnhubAPI extends HttpStockAPI implements StreamingQuotes {
+
+    /**
+     * Null if prices are not streamed
+     */
+    private final String streamURL;
+
     public FinnhubAPI(ConfigurationSection config) {
-        super(config);
+        super(config, "https://finnhub.io/api/v1", 60, 1, 0, "1m");
+
+        streamURL = config.getBoolean("streaming") ? config.getString("stream-url", "wss://ws.finnhub.io") + "?token=" + getStockKey() : null;
     }
 
     @Override
     public String getURL(String stockId) {
-        return "https://finnhub.io/api/v1/quote?symbol=" + stockId.toUpperCase() + "&token=" + getStockKey();
+        return getBaseURL() + "/quote?symbol=" + stockId.toUpperCase() + "&token=" + getStockKey();
+    }
+
+    @Override
+    protected void checkErrors(String response) throws StockAPIException {
+        if (response.contains("API limit reached"))
+            throw new StockAPIException(429, response);
     }
 
     @Override
     public double parseResponse(String response, String stockId) throws ParseException {
-        Validate.isTrue(!response.contains("API limit reached"), "Max amount of 60 API calls/min (for free version of Finnhub) has been surpassed\"" +
-                " reduce the number of real stock stocks or the the stock-data-number in config.yml ");
         JSONObject object = (JSONObject) new JSONParser().parse(response);
         Validate.notNull(object.get("c"), "Finnhub API Problem with" + stockId + "\n" + response);
         return Double.parseDouble(object.get("c").toString());
     }
+
+    @Override
+    public String getStreamURL() {
+        return streamURL;
+    }
+
+    @Override
+    public String getStreamSymbol(String symbol) {
+        return symbol.toUpperCase();
+    }
+
+    @Override
+    public String getSubscribeMessage(String streamSymbol) {
+        return "{\"type\":\"subscribe\",\"symbol\":\"" + streamSymbol + "\"}";
+    }
+
+    @Override
+    public String getUnsubscribeMessage(String streamSymbol) {
+        return "{\"type\":\"unsubscribe\",\"symbol\":\"" + streamSymbol + "\"}";
+    }
+
+    /**
+     * Trade messages look like {"type":"trade","data":[{"s":"AAPL","p":150.2,"t":1650000000000,"v":10}]}
+     */
+    @Override
+    public void parseStreamMessage(String message, TradeConsumer consumer) throws ParseException {
+        JSONObject object = (JSONObject) new JSONParser().parse(message);
+        Validate.isTrue(!"error".equals(object.get("type")), "Finnhub stream error: " + object.get("msg"));
+        if (!"trade".equals(object.get("type")) || !(object.get("data") instanceof JSONArray))
+            return;
+
+        for (Object element : (JSONArray) object.get("data")) {
+            JSONObject trade = (JSONObject) element;
+            if (trade.get("s") != null && trade.get("p") instanceof Number && trade.get("t") instanceof Number)
+                consumer.accept(trade.get("s").toString(), ((Number) trade.get("p")).doubleValue(), ((Number) trade.get("t")).longValue());
+        }
+    }
 }
@@ -0,0 +1,160 @@
+package fr.lezoo.stonks.stock.api;
+
+import fr.lezoo.stonks.util.Utils;
+import org.bukkit.configuration.ConfigurationSection;
+import org.json.simple.parser.ParseException;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stock API fetching prices from a provider over HTTP. Implementations
+ * only build request URLs and parse the bodies of responses.
+ */
+public abstract class HttpStockAPI extends StockAPI {
+    private final String apiKey, baseURL;
+    private final Duration timeout;
+
+    /**
+     * Calls being made for single stocks
+     */
+    private final Map<String, CompletableFuture<Double>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * @param config                Stock API config section
+     * @param defaultBaseURL        Provider URL without trailing slash, which can be
+     *                              replaced in the config, for instance by a local server
+     * @param defaultCallsPerMinute Calls per minute allowed with a free API key
+     * @param defaultBurst          Calls which can be made at once with a free API key
+     * @param defaultCallsPerDay    Calls per day allowed with a free API key, or 0 if unlimited
+     * @param defaultQuoteTTL       Duration like '1m' after which quotes are fetched again
+     */
+    public HttpStockAPI(ConfigurationSection config, String defaultBaseURL, double defaultCallsPerMinute, double defaultBurst, double defaultCallsPerDay, String defaultQuoteTTL) {
+        this(config.getString("key"), config.getString("base-url", defaultBaseURL), Duration.ofSeconds(config.getLong("timeout", 10)),
+                config.getDouble("calls-per-minute", defaultCallsPerMinute), config.getDouble("burst", defaultBurst),
+                config.getDouble("calls-per-day", defaultCallsPerDay), Utils.parseDuration(config.getString("quote-ttl", defaultQuoteTTL)));
+    }
+
+    public HttpStockAPI(String apiKey, String baseURL, Duration timeout, double callsPerMinute, double burst, double callsPerDay, long quoteTTL) {
+        super(callsPerMinute, burst, callsPerDay, quoteTTL);
+
+        this.apiKey = Objects.requireNonNull(apiKey, "Could not find API key");
+        this.baseURL = Objects.requireNonNull(baseURL, "Could not find API URL");
+        this.timeout = Objects.requireNonNull(timeout, "Timeout cannot be null");
+    }
+
+    /**
+     * There is at most one call in flight per stock: if the price
+     * of that stock is already being fetched, that call is reused
+     */
+    @Override
+    public CompletableFuture<Double> getPriceAsync(String stockId) {
+        CompletableFuture<Double> future = new CompletableFuture<>();
+        CompletableFuture<Double> inFlight = this.inFlight.putIfAbsent(stockId, future);
+        if (inFlight != null)
+            return inFlight;
+
+        request(getURL(stockId)).thenApply(response -> {
+            try {
+                return parseResponse(response, stockId);
+            } catch (ParseException exception) {
+                throw new CompletionException(exception);
+            }
+        }).whenComplete((price, error) -> {
+            this.inFlight.remove(stockId, future);
+            if (error != null)
+                future.completeExceptionally(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error);
+            else
+                future.complete(price);
+        });
+        return future;
+    }
+
+    /**
+     * Fetches the prices of many stocks in one call if the API implements {@link BatchQuotes}
+     */
+    @Override
+    public CompletableFuture<Map<String, Double>> getPricesAsync(List<String> stockIds) {
+        if (stockIds.size() == 1)
+            return getPriceAsync(stockIds.get(0)).thenApply(price -> Collections.singletonMap(stockIds.get(0), price));
+        if (!(this instanceof BatchQuotes))
+            return super.getPricesAsync(stockIds);
+
+        final BatchQuotes batch = (BatchQuotes) this;
+        return request(batch.getBatchURL(stockIds)).thenApply(response -> {
+            try {
+                return batch.parseBatchResponse(response, stockIds);
+            } catch (ParseException exception) {
+                throw new CompletionException(exception);
+            }
+        });
+    }
+
+    /**
+     * Error statuses, including errors described in the body of
+     * responses, complete the call with a {@link StockAPIException}
+     *
+     * @return Body of the response
+     */
+    private CompletableFuture<String> request(String url) {
+        final HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(url)).timeout(timeout).GET().build();
+        } catch (IllegalArgumentException exception) {
+            return CompletableFuture.failedFuture(exception);
+        }
+
+        return CLIENT.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(response -> {
+            try {
+                if (response.statusCode() >= 400)
+                    throw new StockAPIException(response.statusCode(), response.body());
+                checkErrors(response.body());
+            } catch (StockAPIException exception) {
+                throw new CompletionException(exception);
+            }
+            return response.body();
+        });
+    }
+
+    /**
+     * Some providers answer errors, like reached rate limits, with a
+     * successful status and describe them in the body of the response
+     *
+     * @param response Body of a response with a successful status
+     * @throws StockAPIException If the response describes an error
+     */
+    protected void checkErrors(String response) throws StockAPIException {
+        // Errors are only reported with statuses by default
+    }
+
+    public String getStockKey() {
+        return apiKey;
+    }
+
+    /**
+     * @return Provider URL without trailing slash
+     */
+    public String getBaseURL() {
+        return baseURL;
+    }
+
+    public abstract String getURL(String stockId);
+
+    public abstract double parseResponse(String response, String stockId) throws ParseException;
+
+    /**
+     * Shared by every stock API, including after a reload, so
+     * that connections are reused across calls
+     */
+    static final HttpClient CLIENT = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(10)).build();
+}
@@ -0,0 +1,490 @@
+package fr.lezoo.stonks.stock.api;
+
+import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.manager.FileManager;
+import fr.lezoo.stonks.stock.StockInfo;
+import fr.lezoo.stonks.util.ConfigFile;
+import fr.lezoo.stonks.util.ConfigSession;
+import fr.lezoo.stonks.util.DailyCallCounter;
+import fr.lezoo.stonks.util.TokenBucket;
+import org.apache.commons.lang.Validate;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Fetches the prices of real stocks from the stock API. Instead of every
+ * real stock calling the API on its own, calls are made by one background
+ * thread which fetches the symbols whose quote is the oldest, as many at
+ * once as the API allows, without ever exceeding the call budget of the
+ * API key. Real stocks read the latest fetched quote.
+ * <p>
+ * Quotes are cached by symbol, so stocks using the same symbol share
+ * them, and the cache is saved so that real stocks have a price as soon
+ * as the plugin enables. Quotes are fetched again once older than both
+ * the quote TTL of the API and the shortest refresh period of the stocks
+ * using them, and older quotes are used in the meantime.
+ * <p>
+ * Calls are paced by a token bucket so that they are spread evenly
+ * within the budget rather than made in bursts. Calls are also counted
+ * per UTC day, when providers reset their daily limit, and the count is
+ * saved with the quote cache. APIs with a daily limit are given one hour
+ * of calls ahead of an even pace over the day, so that the limit is not
+ * used up hours before the day ends. Calls are asynchronous:
+ * a stock is not fetched again while a call for it is in flight, and
+ * calls are delayed by a circuit breaker when the API keeps failing.
+ */
+public class QuoteScheduler implements FileManager {
+    private final Map<String, Symbol> symbols = new ConcurrentHashMap<>();
+    private final Supplier<StockAPI> apiSupplier;
+    private final Logger logger;
+
+    /**
+     * Timestamps of the calls made during the last minute, oldest first
+     */
+    private final Deque<Long> recentCalls = new ArrayDeque<>();
+    private final AtomicLong calls = new AtomicLong(), fetchedQuotes = new AtomicLong(), failures = new AtomicLong();
+
+    /**
+     * Kept when the API is reloaded, which does not reset the daily limit
+     */
+    private final DailyCallCounter dailyCalls = new DailyCallCounter();
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * API the bucket and breaker were made for, rebuilt when the API is reloaded
+     */
+    private StockAPI api;
+    private TokenBucket bucket;
+    private CircuitBreaker breaker;
+
+    /**
+     * How often the background thread checks for quotes to fetch
+     */
+    private static final long POLL_PERIOD = 250;
+
+    /**
+     * Transient failures in a row after which calls stop for 5 minutes.
+     * Before that, calls are delayed from 1 second up to 1 minute
+     */
+    private static final int BREAKER_THRESHOLD = 5;
+
+    /**
+     * @param logger Logger of the plugin
+     */
+    public QuoteScheduler(Logger logger) {
+        this(() -> Stonks.plugin.stockAPI, logger);
+    }
+
+    /**
+     * @param apiSupplier Provides the current stock API, or null if disabled
+     */
+    public QuoteScheduler(Supplier<StockAPI> apiSupplier, Logger logger) {
+        this.apiSupplier = apiSupplier;
+        this.logger = logger;
+    }
+
+    public void start() {
+        Validate.isTrue(executor == null, "Quote scheduler already started");
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "Stonks Quote Fetcher"));
+        executor.scheduleWithFixedDelay(this::fetchNext, POLL_PERIOD, POLL_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (executor != null)
+            executor.shutdownNow();
+        executor = null;
+    }
+
+    /**
+     * Quotes of that symbol are fetched until the stock is unregistered
+     *
+     * @param symbol        Symbol used by the stock API
+     * @param stockId       Stock using that symbol
+     * @param refreshPeriod Time in millis after which the stock needs a new
+     *                      quote. Quotes are never fetched more often than the
+     *                      quote TTL of the API, whatever the refresh period
+     */
+    public void register(String symbol, String stockId, long refreshPeriod) {
+        symbols.computeIfAbsent(symbol, id -> new Symbol()).stocks.put(stockId, refreshPeriod);
+    }
+
+    /**
+     * The cached quote is dropped once no stock uses that symbol
+     */
+    public void unregister(String symbol, String stockId) {
+        symbols.computeIfPresent(symbol, (id, found) -> {
+            found.stocks.remove(stockId);
+            return found.stocks.isEmpty() && !found.requested ? null : found;
+        });
+    }
+
+    /**
+     * May be older than the quote TTL while a new quote is being fetched
+     *
+     * @return Latest quote fetched, or null if none was fetched yet
+     */
+    @Nullable
+    public StockInfo getQuote(String symbol) {
+        Symbol found = symbols.get(symbol);
+        return found == null ? null : found.quote;
+    }
+
+    /**
+     * Replaces the cached quote of a symbol, for instance with a streamed
+     * quote. The symbol is not fetched again until the quote is outdated
+     */
+    public void updateQuote(String symbol, StockInfo quote) {
+        Symbol found = symbols.get(symbol);
+        if (found != null)
+            found.setQuote(quote);
+    }
+
+    /**
+     * @return IDs of the stocks using that symbol
+     */
+    public Set<String> getStocks(String symbol) {
+        Symbol found = symbols.get(symbol);
+        return found == null ? Collections.emptySet() : Collections.unmodifiableSet(found.stocks.keySet());
+    }
+
+    /**
+     * @return Symbols used by at least one stock
+     */
+    public Set<String> getRegisteredSymbols() {
+        Set<String> registered = new HashSet<>();
+        symbols.forEach((id, symbol) -> {
+            if (!symbol.stocks.isEmpty())
+                registered.add(id);
+        });
+        return registered;
+    }
+
+    /**
+     * Fetches a quote as soon as the budget allows it, before quotes
+     * of other symbols. The symbol does not need to be registered
+     *
+     * @return Next quote fetched for that symbol
+     */
+    public CompletableFuture<StockInfo> fetchAsync(String symbol) {
+        Symbol found = symbols.computeIfAbsent(symbol, id -> new Symbol());
+        found.requested = true;
+        return found.next;
+    }
+
+    /**
+     * Calls the API once if the budget allows it, for the stocks with the
+     * oldest quotes among those which need to be fetched again
+     */
+    private void fetchNext() {
+        StockAPI api = apiSupplier.get();
+        if (api == null || symbols.isEmpty())
+            return;
+
+        // Checked first so that no token is used while backing off
+        CircuitBreaker breaker = getBreaker(api);
+        if (!breaker.canCall())
+            return;
+
+        // Symbols which need a new quote, requested ones then oldest quotes first
+        final long now = System.currentTimeMillis(), ttl = api.getQuoteTTL();
+        List<Map.Entry<String, Symbol>> due = new ArrayList<>();
+        for (Map.Entry<String, Symbol> entry : symbols.entrySet())
+            if (entry.getValue().isDue(now, ttl))
+                due.add(entry);
+        if (due.isEmpty())
+            return;
+        due.sort(Comparator.comparing((Map.Entry<String, Symbol> entry) -> !entry.getValue().requested).thenComparingLong(entry -> entry.getValue().getQuoteTime()));
+
+        // Biggest batch whose cost fits in the bucket and the daily limit
+        final double dailyLimit = api.getCallsPerDay();
+        final double dailyLeft = dailyLimit > 0 ? dailyCalls.getCallsLeft(dailyLimit, getDailyAdvance(api), now) : Double.MAX_VALUE;
+        int size = Math.min(due.size(), api.getMaxBatchSize());
+        while (size > 1 && api.getCost(size) > Math.min(api.getBurst(), dailyLeft))
+            size--;
+        if (dailyLeft < Math.min(api.getCost(size), dailyLimit))
+            return;
+        if (!getBucket(api).tryAcquire(api.getCost(size)))
+            return;
+
+        // Only this thread makes calls, so the daily limit still allows it
+        dailyCalls.add(api.getCost(size), now);
+
+        List<String> batch = new ArrayList<>(size);
+        Map<Symbol, Boolean> previousRequests = new HashMap<>();
+        for (Map.Entry<String, Symbol> entry : due.subList(0, size)) {
+            final Symbol symbol = entry.getValue();
+            previousRequests.put(symbol, symbol.requested);
+            symbol.lastRequest = now;
+            symbol.requested = false;
+            symbol.inFlight = true;
+            batch.add(entry.getKey());
+        }
+
+        breaker.onCall();
+        registerCall();
+        api.getPricesAsync(batch).whenComplete((prices, error) -> {
+            previousRequests.keySet().forEach(symbol -> symbol.inFlight = false);
+
+            if (error == null) {
+                breaker.onSuccess();
+                updateQuotes(prices);
+                return;
+            }
+
+            failures.incrementAndGet();
+            final Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            if (isTransient(cause)) {
+                breaker.onFailure();
+
+                // Fetched again once the API is available again
+                previousRequests.forEach((symbol, requested) -> {
+                    symbol.lastRequest = 0;
+                    symbol.requested |= requested;
+                });
+            } else
+                breaker.release();
+            logger.log(Level.WARNING, "Could not fetch quotes of " + batch + ": " + cause.getMessage());
+        });
+    }
+
+    private void updateQuotes(Map<String, Double> prices) {
+        final long time = System.currentTimeMillis();
+        prices.forEach((id, price) -> {
+            Symbol symbol = symbols.get(id);
+            if (symbol != null)
+                symbol.setQuote(new StockInfo(time, price));
+        });
+        fetchedQuotes.addAndGet(prices.size());
+    }
+
+    /**
+     * Timeouts, connection errors, rate limits and server errors
+     * may not happen again later, unlike a wrong API key
+     */
+    private boolean isTransient(Throwable error) {
+        return error instanceof StockAPIException ? ((StockAPIException) error).isTransient() : error instanceof IOException;
+    }
+
+    private synchronized CircuitBreaker getBreaker(StockAPI api) {
+        update(api);
+        return breaker;
+    }
+
+    private synchronized TokenBucket getBucket(StockAPI api) {
+        update(api);
+        return bucket;
+    }
+
+    /**
+     * One hour of calls, and at least one burst of calls
+     */
+    private double getDailyAdvance(StockAPI api) {
+        return Math.max(api.getCallsPerDay() / 24, api.getBurst());
+    }
+
+    private void update(StockAPI api) {
+        if (this.api != api) {
+            this.api = api;
+            bucket = new TokenBucket(Math.max(1, api.getBurst()), api.getCallsPerMinute());
+            breaker = new CircuitBreaker(BREAKER_THRESHOLD, 1000, 60000, 300000);
+        }
+    }
+
+    private void registerCall() {
+        calls.incrementAndGet();
+        final long now = System.currentTimeMillis();
+        synchronized (recentCalls) {
+            recentCalls.addLast(now);
+            pruneRecentCalls(now);
+        }
+    }
+
+    private void pruneRecentCalls(long now) {
+        while (!recentCalls.isEmpty() && recentCalls.peekFirst() < now - 60000)
+            recentCalls.removeFirst();
+    }
+
+    /**
+     * @return Calls made since the plugin enabled
+     */
+    public long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * @return Calls made during the last minute
+     */
+    public int getCallsLastMinute() {
+        synchronized (recentCalls) {
+            pruneRecentCalls(System.currentTimeMillis());
+            return recentCalls.size();
+        }
+    }
+
+    /**
+     * @return Calls allowed per minute by the current API, or 0 if disabled
+     */
+    public double getBudget() {
+        StockAPI api = apiSupplier.get();
+        return api == null ? 0 : api.getCallsPerMinute();
+    }
+
+    /**
+     * @return Calls allowed per day by the current API, or 0 if there is no daily limit
+     */
+    public double getDailyBudget() {
+        StockAPI api = apiSupplier.get();
+        return api == null ? 0 : api.getCallsPerDay();
+    }
+
+    /**
+     * @return Calls made since midnight UTC, including before the last restart
+     */
+    public double getDailyCalls() {
+        return dailyCalls.getCalls(System.currentTimeMillis());
+    }
+
+    /**
+     * @return Calls which can be made right now without getting ahead of
+     *         the daily limit, or -1 if there is no daily limit
+     */
+    public double getDailyCallsLeft() {
+        StockAPI api = apiSupplier.get();
+        return api == null || api.getCallsPerDay() <= 0 ? -1 : dailyCalls.getCallsLeft(api.getCallsPerDay(), getDailyAdvance(api), System.currentTimeMillis());
+    }
+
+    /**
+     * @return Quotes fetched since the plugin enabled, which is more
+     *         than the amount of calls when stocks are fetched in batches
+     */
+    public long getFetchedQuotes() {
+        return fetchedQuotes.get();
+    }
+
+    public long getFailures() {
+        return failures.get();
+    }
+
+    /**
+     * @return State of the circuit breaker, or null if the API is disabled
+     */
+    @Nullable
+    public CircuitBreaker.State getBreakerState() {
+        StockAPI api = apiSupplier.get();
+        return api == null ? null : getBreaker(api).getState();
+    }
+
+    /**
+     * @return Amount of symbols whose quotes are fetched
+     */
+    public int getSymbols() {
+        return symbols.size();
+    }
+
+    /**
+     * Reads cached quotes, which is done before stocks are loaded so
+     * that real stocks without stock data can use them right away
+     */
+    @Override
+    public Runnable read(ConfigSession session) {
+        // Symbols may contain dots, which are path separators in config files
+        FileConfiguration config = session.getConfig("", "quote-cache");
+        for (String line : config.getStringList("quotes"))
+            try {
+                String[] split = line.split(" ");
+                StockInfo quote = new StockInfo(Long.parseLong(split[2]), Double.parseDouble(split[1]));
+                symbols.computeIfAbsent(split[0], id -> new Symbol()).quote = quote;
+            } catch (RuntimeException exception) {
+                logger.log(Level.WARNING, "Could not read cached quote '" + line + "': " + exception.getMessage());
+            }
+        dailyCalls.restore(config.getLong("daily-calls.day"), config.getDouble("daily-calls.calls"), System.currentTimeMillis());
+
+        return () -> {
+            // Nothing to register
+        };
+    }
+
+    @Override
+    public Runnable snapshot() {
+        List<String> quotes = new ArrayList<>();
+        symbols.forEach((id, symbol) -> {
+            StockInfo quote = symbol.quote;
+            if (quote != null)
+                quotes.add(id + " " + quote.getPrice() + " " + quote.getTimeStamp());
+        });
+
+        FileConfiguration config = new YamlConfiguration();
+        config.set("quotes", quotes);
+        // Calls are read first as they may start a new day
+        config.set("daily-calls.calls", dailyCalls.getCalls(System.currentTimeMillis()));
+        config.set("daily-calls.day", dailyCalls.getDay());
+        return () -> new ConfigFile("", "quote-cache", config).save();
+    }
+
+    private static class Symbol {
+
+        /**
+         * Links stocks using that symbol to their refresh period in millis.
+         * Symbols without stocks are only fetched when requested
+         */
+        private final Map<String, Long> stocks = new ConcurrentHashMap<>();
+
+        /**
+         * Set when a quote must be fetched before any other
+         */
+        private volatile boolean requested;
+        private volatile boolean inFlight;
+        private volatile long lastRequest;
+        private volatile StockInfo quote;
+        private volatile CompletableFuture<StockInfo> next = new CompletableFuture<>();
+
+        /**
+         * Symbols are not fetched more than once per TTL, even if the previous
+         * call did not return a quote for them, nor more often than the
+         * shortest refresh period of their stocks
+         */
+        boolean isDue(long now, long ttl) {
+            if (inFlight)
+                return false;
+            if (requested)
+                return true;
+
+            // Stocks may be unregistered meanwhile
+            long shortest = Long.MAX_VALUE;
+            for (long refreshPeriod : stocks.values())
+                shortest = Math.min(shortest, refreshPeriod);
+            if (shortest == Long.MAX_VALUE)
+                return false;
+
+            final long period = Math.max(ttl, shortest);
+            return now - getQuoteTime() >= period && now - lastRequest >= period;
+        }
+
+        long getQuoteTime() {
+            StockInfo quote = this.quote;
+            return quote == null ? 0 : quote.getTimeStamp();
+        }
+
+        void setQuote(StockInfo quote) {
+            this.quote = quote;
+            CompletableFuture<StockInfo> completed = next;
+            next = new CompletableFuture<>();
+            completed.complete(quote);
+        }
+    }
+}
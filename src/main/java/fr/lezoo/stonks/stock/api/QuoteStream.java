@@ -0,0 +1,406 @@
+package fr.lezoo.stonks.stock.api;
+
+import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.api.event.StockPriceUpdateEvent;
+import fr.lezoo.stonks.stock.Stock;
+import fr.lezoo.stonks.stock.StockInfo;
+import org.apache.commons.lang.Validate;
+import org.bukkit.Bukkit;
+import org.json.simple.parser.ParseException;
+
+import java.net.URI;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Receives the prices of real stocks from the price stream of the stock
+ * API, when it implements {@link StreamingQuotes} and streaming is enabled. One connection is kept
+ * for every symbol used by real stocks, and symbols are subscribed to and
+ * unsubscribed from as stocks are created and removed.
+ * <p>
+ * Trades received during a tick are coalesced into the last price and
+ * the price range of every symbol, which are handed to the main thread
+ * by {@link #flush()} once per tick. Streamed prices replace cached quotes, so symbols
+ * which keep trading are not fetched by the {@link QuoteScheduler}.
+ * <p>
+ * The connection is made again when it closes, with increasing delays
+ * when it keeps failing, and symbols are subscribed to again.
+ */
+public class QuoteStream {
+
+    /**
+     * Links symbols to the trades received since the last tick
+     */
+    private final Map<String, Tick> ticks = new ConcurrentHashMap<>();
+
+    /**
+     * Links stream symbols to the symbols subscribed to
+     */
+    private final Map<String, String> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicLong trades = new AtomicLong();
+    private final CircuitBreaker breaker = new CircuitBreaker(10, 1000, 60000, 300000);
+    private final Supplier<StockAPI> apiSupplier;
+    private final Supplier<Set<String>> symbolSupplier;
+    private final TickHandler handler;
+    private final Logger logger;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * Only used by the stream thread. Messages are sent one after the other
+     */
+    private StreamingQuotes api;
+    private boolean connecting;
+    private volatile WebSocket socket;
+    private CompletableFuture<Void> sending = CompletableFuture.completedFuture(null);
+
+    /**
+     * How often the connection and subscriptions are checked
+     */
+    private static final long CHECK_PERIOD = 1000;
+
+    /**
+     * Streamed prices update the quotes and stocks of the plugin
+     *
+     * @param logger Logger of the plugin
+     */
+    public QuoteStream(Logger logger) {
+        this(() -> Stonks.plugin.stockAPI, () -> Stonks.plugin.quoteScheduler.getRegisteredSymbols(), QuoteStream::update, logger);
+    }
+
+    /**
+     * @param apiSupplier    Provides the current stock API, or null if disabled
+     * @param symbolSupplier Provides the symbols to subscribe to
+     * @param handler        Called on the main thread with the trades of every tick
+     */
+    public QuoteStream(Supplier<StockAPI> apiSupplier, Supplier<Set<String>> symbolSupplier, TickHandler handler, Logger logger) {
+        this.apiSupplier = apiSupplier;
+        this.symbolSupplier = symbolSupplier;
+        this.handler = handler;
+        this.logger = logger;
+    }
+
+    public void start() {
+        Validate.isTrue(executor == null, "Quote stream already started");
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> new Thread(runnable, "Stonks Quote Stream"));
+        executor.scheduleWithFixedDelay(this::check, 0, CHECK_PERIOD, TimeUnit.MILLISECONDS);
+    }
+
+    public void stop() {
+        if (executor != null)
+            executor.shutdownNow();
+        WebSocket socket = this.socket;
+        if (socket != null)
+            socket.abort();
+
+        executor = null;
+        this.socket = null;
+    }
+
+    /**
+     * Connects to the price stream of the current stock API, and
+     * subscribes to or unsubscribes from symbols once connected
+     */
+    private void check() {
+        final StockAPI current = apiSupplier.get();
+        final StreamingQuotes api = current instanceof StreamingQuotes ? (StreamingQuotes) current : null;
+
+        // Stock API was reloaded
+        if (api != this.api) {
+            disconnect();
+            this.api = api;
+        }
+
+        final String url = api == null ? null : api.getStreamURL();
+        if (url == null)
+            return;
+
+        if (socket != null)
+            updateSubscriptions();
+        else if (!connecting && breaker.canCall())
+            connect(url);
+    }
+
+    private void connect(String url) {
+        final StreamingQuotes connected = api;
+        connecting = true;
+        breaker.onCall();
+
+        final CompletableFuture<WebSocket> future;
+        try {
+            future = HttpStockAPI.CLIENT.newWebSocketBuilder().connectTimeout(Duration.ofSeconds(10)).buildAsync(URI.create(url), new Listener(connected));
+        } catch (IllegalArgumentException exception) {
+            connecting = false;
+            breaker.onFailure();
+            logger.log(Level.WARNING, "Could not connect to price stream: " + exception.getMessage());
+            return;
+        }
+
+        future.whenComplete((socket, error) -> runOnStream(() -> {
+            connecting = false;
+
+            if (error != null) {
+                breaker.onFailure();
+                logger.log(Level.WARNING, "Could not connect to price stream: " + (error.getCause() != null ? error.getCause() : error).getMessage());
+            }
+
+            // Stock API was reloaded in the meantime
+            else if (api != connected) {
+                breaker.release();
+                socket.abort();
+            }
+
+            else {
+                this.socket = socket;
+                sending = CompletableFuture.completedFuture(null);
+                updateSubscriptions();
+            }
+        }));
+    }
+
+    private void disconnect() {
+        final WebSocket socket = this.socket;
+        if (socket == null)
+            return;
+
+        this.socket = null;
+        subscriptions.clear();
+        sending.thenCompose(v -> socket.sendClose(WebSocket.NORMAL_CLOSURE, "")).whenComplete((result, error) -> socket.abort());
+    }
+
+    /**
+     * Called when the connection closes or fails
+     */
+    private void disconnected(WebSocket socket, String reason) {
+        if (this.socket != socket)
+            return;
+
+        this.socket = null;
+        subscriptions.clear();
+        breaker.onFailure();
+        logger.log(Level.WARNING, "Price stream disconnected (" + reason + "), reconnecting");
+    }
+
+    private void updateSubscriptions() {
+        Set<String> symbols = symbolSupplier.get();
+
+        for (String symbol : symbols) {
+            String streamSymbol = api.getStreamSymbol(symbol);
+            if (subscriptions.putIfAbsent(streamSymbol, symbol) == null)
+                send(api.getSubscribeMessage(streamSymbol));
+        }
+
+        for (Iterator<Map.Entry<String, String>> iterator = subscriptions.entrySet().iterator(); iterator.hasNext(); ) {
+            Map.Entry<String, String> entry = iterator.next();
+            if (!symbols.contains(entry.getValue())) {
+                iterator.remove();
+                ticks.remove(entry.getValue());
+                send(api.getUnsubscribeMessage(entry.getKey()));
+            }
+        }
+    }
+
+    /**
+     * Failed messages close the connection, which is then made again
+     */
+    private void send(String message) {
+        final WebSocket socket = this.socket;
+        sending = sending.thenCompose(v -> socket.sendText(message, true)).handle((result, error) -> null);
+    }
+
+    /**
+     * Tasks are not run once the stream is stopped
+     */
+    private void runOnStream(Runnable task) {
+        ScheduledExecutorService executor = this.executor;
+        try {
+            if (executor != null)
+                executor.execute(task);
+        } catch (RejectedExecutionException ignored) {
+            // Stream stopped
+        }
+    }
+
+    /**
+     * Hands trades received since the last tick to the tick handler.
+     * Must be called on the main thread once per tick
+     */
+    public void flush() {
+        if (ticks.isEmpty())
+            return;
+
+        for (String symbol : ticks.keySet()) {
+            final Tick tick = ticks.remove(symbol);
+            if (tick != null)
+                handler.accept(symbol, tick);
+        }
+    }
+
+    /**
+     * Stocks using the symbol are refreshed right away instead of every refresh period
+     */
+    private static void update(String symbol, Tick tick) {
+        Stonks.plugin.quoteScheduler.updateQuote(symbol, new StockInfo(tick.time, tick.close));
+        for (String stockId : Stonks.plugin.quoteScheduler.getStocks(symbol))
+            if (Stonks.plugin.stockManager.has(stockId)) {
+                Stock stock = Stonks.plugin.stockManager.get(stockId);
+                stock.registerTicks(tick.open, tick.high, tick.low);
+                stock.getHandler().refreshPrice();
+                Bukkit.getPluginManager().callEvent(new StockPriceUpdateEvent(stock));
+            }
+    }
+
+    public boolean isConnected() {
+        return socket != null;
+    }
+
+    /**
+     * @return Amount of symbols subscribed to
+     */
+    public int getSubscriptions() {
+        return subscriptions.size();
+    }
+
+    /**
+     * @return Trades received since the plugin enabled
+     */
+    public long getTrades() {
+        return trades.get();
+    }
+
+    public CircuitBreaker.State getBreakerState() {
+        return breaker.getState();
+    }
+
+    private class Listener implements WebSocket.Listener {
+        private final StreamingQuotes api;
+        private final StringBuilder message = new StringBuilder();
+        private boolean received;
+
+        Listener(StreamingQuotes api) {
+            this.api = api;
+        }
+
+        @Override
+        public void onOpen(WebSocket socket) {
+            socket.request(1);
+        }
+
+        /**
+         * Messages can be received in several parts
+         */
+        @Override
+        public CompletionStage<?> onText(WebSocket socket, CharSequence data, boolean last) {
+            message.append(data);
+            if (last) {
+                final String received = message.toString();
+                message.setLength(0);
+
+                // The connection works once messages are received
+                if (!this.received) {
+                    this.received = true;
+                    breaker.onSuccess();
+                }
+
+                try {
+                    api.parseStreamMessage(received, this::onTrade);
+                } catch (ParseException | RuntimeException exception) {
+                    logger.log(Level.WARNING, "Could not read price stream message '" + received + "': " + exception.getMessage());
+                }
+            }
+
+            socket.request(1);
+            return null;
+        }
+
+        private void onTrade(String streamSymbol, double price, long time) {
+            final String symbol = subscriptions.get(streamSymbol);
+            if (symbol == null)
+                return;
+
+            trades.incrementAndGet();
+            ticks.compute(symbol, (id, tick) -> tick == null ? new Tick(price, time) : tick.add(price, time));
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket socket, int statusCode, String reason) {
+            runOnStream(() -> disconnected(socket, "code " + statusCode + (reason.isEmpty() ? "" : ", " + reason)));
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket socket, Throwable error) {
+            runOnStream(() -> disconnected(socket, String.valueOf(error.getMessage())));
+        }
+    }
+
+    /**
+     * Trades of a symbol received during one tick. Only edited inside
+     * of {@link Map#compute}, and not anymore once removed from the map
+     */
+    public static class Tick {
+        private final double open;
+        private double high, low, close;
+        private long time;
+
+        Tick(double price, long time) {
+            this.open = high = low = close = price;
+            this.time = time;
+        }
+
+        Tick add(double price, long time) {
+            high = Math.max(high, price);
+            low = Math.min(low, price);
+            close = price;
+            this.time = Math.max(this.time, time);
+            return this;
+        }
+
+        public double getOpen() {
+            return open;
+        }
+
+        public double getHigh() {
+            return high;
+        }
+
+        public double getLow() {
+            return low;
+        }
+
+        public double getClose() {
+            return close;
+        }
+
+        /**
+         * @return Time stamp of the latest trade in millis
+         */
+        public long getTime() {
+            return time;
+        }
+    }
+
+    @FunctionalInterface
+    public interface TickHandler {
+
+        /**
+         * @param symbol Symbol used by the stock API
+         * @param tick   Trades of that symbol received since the last tick
+         */
+        void accept(String symbol, Tick tick);
+    }
+}
@@ -0,0 +1,257 @@
+package fr.lezoo.stonks.stock.api;
+
+import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.util.Utils;
+import org.apache.commons.lang.Validate;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.Level;
+
+/**
+ * Replays historical quotes from local files instead of calling a
+ * provider, so that real stocks can be used without internet access,
+ * for instance to load test the plugin.
+ * <p>
+ * Quotes of a symbol are read from '{symbol}.csv', with one 'timestamp,price'
+ * line per quote, or from '{symbol}.bin', a sequence of big endian
+ * long timestamps and double prices. Timestamps are in millis.
+ * <p>
+ * Every symbol is replayed from its first quote when the API is created,
+ * at the same speed. Quotes are kept in primitive arrays and looked up by
+ * binary search, so fetching a quote does not allocate anything but the
+ * returned price.
+ */
+public class ReplayStockAPI extends StockAPI {
+    private final File folder;
+    private final double speed, jitter;
+    private final boolean loop;
+
+    /**
+     * Time at which every symbol is at its first quote
+     */
+    private final long start = System.currentTimeMillis();
+
+    /**
+     * Quotes of symbols read so far. Symbols without quotes are
+     * also cached so that their files are only looked for once
+     */
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+
+    /**
+     * Symbols are only read from files, so the call budget
+     * is there to pace the quote scheduler
+     */
+    public ReplayStockAPI(ConfigurationSection config) {
+        super(config.getDouble("calls-per-minute", 600), config.getDouble("burst", 10), config.getDouble("calls-per-day", 0), Utils.parseDuration(config.getString("quote-ttl", "5s")));
+
+        folder = new File(Stonks.plugin.getDataFolder(), config.getString("replay.folder", "replay"));
+        speed = config.getDouble("replay.speed", 1);
+        jitter = config.getDouble("replay.jitter", 0);
+        loop = config.getBoolean("replay.loop", true);
+
+        Validate.isTrue(folder.isDirectory(), "Could not find replay folder '" + folder.getPath() + "'");
+        Validate.isTrue(speed > 0, "Replay speed must be strictly positive");
+        Validate.isTrue(jitter >= 0 && jitter < 1, "Replay jitter must be between 0 and 1");
+    }
+
+    /**
+     * Symbols without quotes fail with an {@link IllegalArgumentException},
+     * which is not retried by the quote scheduler
+     */
+    @Override
+    public CompletableFuture<Double> getPriceAsync(String stockId) {
+        final Series found = getSeries(stockId);
+        if (found.isEmpty())
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Could not find replay quotes of '" + stockId + "'"));
+
+        return CompletableFuture.completedFuture(getPrice(found));
+    }
+
+    /**
+     * Symbols without quotes are not part of the returned prices
+     */
+    @Override
+    public CompletableFuture<Map<String, Double>> getPricesAsync(List<String> stockIds) {
+        Map<String, Double> prices = new HashMap<>();
+        for (String stockId : stockIds) {
+            Series found = getSeries(stockId);
+            if (!found.isEmpty())
+                prices.put(stockId, getPrice(found));
+        }
+        return CompletableFuture.completedFuture(prices);
+    }
+
+    /**
+     * Any amount of symbols can be read at once
+     */
+    @Override
+    public int getMaxBatchSize() {
+        return 1000;
+    }
+
+    /**
+     * @return Amount of symbols read so far which have quotes
+     */
+    public int getReplayedSymbols() {
+        int replayed = 0;
+        for (Series found : series.values())
+            if (!found.isEmpty())
+                replayed++;
+        return replayed;
+    }
+
+    private double getPrice(Series series) {
+        final double price = series.getPrice((long) ((System.currentTimeMillis() - start) * speed), loop);
+        return jitter == 0 ? price : price * (1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1));
+    }
+
+    private Series getSeries(String symbol) {
+        return series.computeIfAbsent(symbol, this::readSeries);
+    }
+
+    private Series readSeries(String symbol) {
+        try {
+            File csv = new File(folder, symbol + ".csv");
+            if (csv.exists())
+                return readCSV(csv);
+
+            File binary = new File(folder, symbol + ".bin");
+            if (binary.exists())
+                return readBinary(binary);
+        } catch (IOException | RuntimeException exception) {
+            Stonks.plugin.getLogger().log(Level.WARNING, "Could not read replay quotes of '" + symbol + "': " + exception.getMessage());
+        }
+
+        return Series.EMPTY;
+    }
+
+    /**
+     * Lines which cannot be read, like headers and comments, are ignored
+     */
+    private Series readCSV(File file) throws IOException {
+        SeriesBuilder builder = new SeriesBuilder();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                final int comma = line.indexOf(',');
+                if (comma < 0)
+                    continue;
+
+                try {
+                    builder.add(Long.parseLong(line.substring(0, comma).trim()), Double.parseDouble(line.substring(comma + 1).trim()));
+                } catch (NumberFormatException ignored) {
+                    // Header or comment
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    private Series readBinary(File file) throws IOException {
+        SeriesBuilder builder = new SeriesBuilder();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true)
+                builder.add(input.readLong(), input.readDouble());
+        } catch (EOFException ignored) {
+            // End of file
+        }
+        return builder.build();
+    }
+
+    private static class Series {
+        private final long[] times;
+        private final double[] prices;
+
+        private static final Series EMPTY = new Series(new long[0], new double[0]);
+
+        /**
+         * @param times  Timestamps of the quotes, in increasing order
+         * @param prices Prices of the quotes
+         */
+        Series(long[] times, double[] prices) {
+            this.times = times;
+            this.prices = prices;
+        }
+
+        boolean isEmpty() {
+            return times.length == 0;
+        }
+
+        /**
+         * @param elapsed Time in millis since the first quote
+         * @param loop    If the series starts over after its last quote
+         * @return Price of the latest quote at that time
+         */
+        double getPrice(long elapsed, boolean loop) {
+            final long duration = times[times.length - 1] - times[0] + 1;
+            final long time = times[0] + (loop ? elapsed % duration : Math.min(elapsed, duration - 1));
+
+            // Index of the last quote before that time
+            int index = Arrays.binarySearch(times, time);
+            if (index < 0)
+                index = -index - 2;
+            return prices[Math.max(0, index)];
+        }
+    }
+
+    private static class SeriesBuilder {
+        private long[] times = new long[64];
+        private double[] prices = new double[64];
+        private int size;
+        private boolean sorted = true;
+
+        void add(long time, double price) {
+            if (size == times.length) {
+                times = Arrays.copyOf(times, size * 2);
+                prices = Arrays.copyOf(prices, size * 2);
+            }
+
+            sorted &= size == 0 || times[size - 1] <= time;
+            times[size] = time;
+            prices[size++] = price;
+        }
+
+        Series build() {
+            if (size == 0)
+                return Series.EMPTY;
+
+            long[] times = Arrays.copyOf(this.times, size);
+            double[] prices = Arrays.copyOf(this.prices, size);
+            if (!sorted)
+                sort(times, prices);
+            return new Series(times, prices);
+        }
+
+        /**
+         * Files are usually sorted already, so this is not optimized
+         */
+        private void sort(long[] times, double[] prices) {
+            Integer[] order = new Integer[times.length];
+            for (int i = 0; i < order.length; i++)
+                order[i] = i;
+            Arrays.sort(order, (first, second) -> Long.compare(times[first], times[second]));
+
+            long[] sortedTimes = times.clone();
+            double[] sortedPrices = prices.clone();
+            for (int i = 0; i < order.length; i++) {
+                times[i] = sortedTimes[order[i]];
+                prices[i] = sortedPrices[order[i]];
+            }
+        }
+    }
+}
@@ -2,45 +2,126 @@ package fr.lezoo.stonks.stock.api;
 
 import org.bukkit.configuration.ConfigurationSection;
 import org.jetbrains.annotations.NotNull;
-import org.json.simple.parser.ParseException;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
-import java.util.Objects;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
+/**
+ * Fetches the prices of real stocks. Providers called over HTTP extend
+ * {@link HttpStockAPI}, which handles requests and their responses.
+ * Optional capabilities are implemented as interfaces, see
+ * {@link BatchQuotes} and {@link StreamingQuotes}.
+ */
 public abstract class StockAPI {
-    private final String apiKey;
 
-    public StockAPI(ConfigurationSection config) {
-        this(config.getString("key"));
+    /**
+     * Call budget of the API key, enforced by the {@link QuoteScheduler}
+     */
+    private final double callsPerMinute, burst, callsPerDay;
+
+    /**
+     * Time in millis after which quotes are fetched again
+     */
+    private final long quoteTTL;
+
+    /**
+     * @param callsPerDay Calls allowed per day, or 0 if there is no daily limit
+     */
+    public StockAPI(double callsPerMinute, double burst, double callsPerDay, long quoteTTL) {
+        this.callsPerMinute = callsPerMinute;
+        this.burst = burst;
+        this.callsPerDay = callsPerDay;
+        this.quoteTTL = quoteTTL;
     }
 
-    public StockAPI(String apiKey) {
-        this.apiKey = Objects.requireNonNull(apiKey, "Could not find API key");
+    /**
+     * Blocks until the price is fetched
+     *
+     * @param stockId the id/symbol of the stock we want to have the price
+     * @return the current price of the stock
+     * @deprecated Blocks the calling thread, use {@link #getPriceAsync(String)}
+     */
+    @Deprecated
+    public double getPrice(String stockId) throws IOException, InterruptedException {
+        try {
+            return getPriceAsync(stockId).get();
+        } catch (ExecutionException exception) {
+            throw exception.getCause() instanceof IOException ? (IOException) exception.getCause() : new IOException(exception.getCause().getMessage(), exception.getCause());
+        }
     }
 
     /**
      * @param stockId the id/symbol of the stock we want to have the price
      * @return the current price of the stock
      */
-    public double getPrice(String stockId) throws URISyntaxException, IOException, InterruptedException, ParseException {
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder(new URI(getURL(stockId))).GET().build();
-        HttpResponse<String> httpResponse = client.send(request, HttpResponse.BodyHandlers.ofString());
-        return parseResponse(httpResponse.body(), stockId);
+    public abstract CompletableFuture<Double> getPriceAsync(String stockId);
+
+    /**
+     * Fetches the prices of many stocks at once. Stocks are fetched one by
+     * one unless the API overrides this along with {@link #getMaxBatchSize()}.
+     * Callers must make sure these stocks are not already being fetched
+     *
+     * @param stockIds At most {@link #getMaxBatchSize()} stock ids/symbols
+     * @return Current prices of the stocks which were found
+     */
+    public CompletableFuture<Map<String, Double>> getPricesAsync(List<String> stockIds) {
+        Map<String, CompletableFuture<Double>> calls = new HashMap<>();
+        for (String stockId : stockIds)
+            calls.put(stockId, getPriceAsync(stockId));
+
+        return CompletableFuture.allOf(calls.values().toArray(new CompletableFuture[0])).thenApply(v -> {
+            Map<String, Double> prices = new HashMap<>();
+            calls.forEach((stockId, call) -> prices.put(stockId, call.join()));
+            return prices;
+        });
     }
 
-    public String getStockKey() {
-        return apiKey;
+    public double getCallsPerMinute() {
+        return callsPerMinute;
     }
 
-    public abstract String getURL(String stockId);
+    /**
+     * @return Max amount of calls which can be made at once
+     *         after the API was not used for some time
+     */
+    public double getBurst() {
+        return burst;
+    }
 
-    public abstract double parseResponse(String response, String stockId) throws ParseException;
+    /**
+     * @return Calls allowed per day, or 0 if there is no daily limit
+     */
+    public double getCallsPerDay() {
+        return callsPerDay;
+    }
+
+    /**
+     * @return Time in millis after which quotes are fetched again
+     */
+    public long getQuoteTTL() {
+        return quoteTTL;
+    }
+
+    /**
+     * @return Max amount of stocks which can be fetched in one call
+     */
+    public int getMaxBatchSize() {
+        return 1;
+    }
+
+    /**
+     * Some providers count every stock of a batch call as a call
+     *
+     * @param stocks Amount of stocks fetched in one call
+     * @return Amount of calls used from the budget
+     */
+    public double getCost(int stocks) {
+        return 1;
+    }
 
     @NotNull
     public static StockAPI fromConfig(ConfigurationSection config) {
@@ -52,6 +133,8 @@ public abstract class StockAPI {
                 return new AlphaVantageAPI(config);
             case "twelvedata":
                 return new TwelveDataAPI(config);
+            case "replay":
+                return new ReplayStockAPI(config);
             default:
                 throw new RuntimeException("Could not match stock API to '" + used + "'");
         }
@@ -0,0 +1,28 @@
+package fr.lezoo.stonks.stock.api;
+
+import java.io.IOException;
+
+/**
+ * Thrown when the stock API answers with an error status
+ */
+public class StockAPIException extends IOException {
+    private final int status;
+
+    public StockAPIException(int status, String body) {
+        super("Stock API answered with status " + status + ": " + body);
+
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * @return If the call can succeed when made again later, which is the
+     *         case when the rate limit is reached or for server errors
+     */
+    public boolean isTransient() {
+        return status == 429 || status >= 500;
+    }
+}
@@ -0,0 +1,47 @@
+package fr.lezoo.stonks.stock.api;
+
+import org.jetbrains.annotations.Nullable;
+import org.json.simple.parser.ParseException;
+
+/**
+ * Implemented by stock APIs which can push trades over a WebSocket,
+ * received by the {@link QuoteStream}
+ */
+public interface StreamingQuotes {
+
+    /**
+     * @return URL of the price stream, or null if streaming is disabled
+     */
+    @Nullable
+    String getStreamURL();
+
+    /**
+     * @return Symbol as sent to and received from the price stream
+     */
+    default String getStreamSymbol(String symbol) {
+        return symbol;
+    }
+
+    String getSubscribeMessage(String streamSymbol);
+
+    String getUnsubscribeMessage(String streamSymbol);
+
+    /**
+     * Messages which are not trades, like pings, are ignored
+     *
+     * @param message  Message received from the price stream
+     * @param consumer Called for every trade of the message
+     */
+    void parseStreamMessage(String message, TradeConsumer consumer) throws ParseException;
+
+    @FunctionalInterface
+    interface TradeConsumer {
+
+        /**
+         * @param streamSymbol Symbol as received from the price stream
+         * @param price        Price of the trade
+         * @param time         Time stamp of the trade in millis
+         */
+        void accept(String streamSymbol, double price, long time);
+    }
+}
@@ -6,23 +6,79 @@ import org.json.simple.JSONObject;
 import org.json.simple.parser.JSONParser;
 import org.json.simple.parser.ParseException;
 
-public class TwelveDataAPI extends StockAPI {
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class TwelveDataAPI extends HttpStockAPI implements BatchQuotes {
     public TwelveDataAPI(ConfigurationSection config) {
-        super(config);
+
+        // Twelve Data counts credits per minute, so they can all be used at once
+        super(config, "https://api.twelvedata.com", 8, 8, 800, "2m");
     }
 
     @Override
     public String getURL(String stockId) {
-        return "https://api.twelvedata.com/price?symbol=" + stockId + "&apikey=" + getStockKey();
+        return getBaseURL() + "/price?symbol=" + stockId + "&apikey=" + getStockKey();
     }
 
     @Override
     public double parseResponse(String response, String stockId) throws ParseException {
-        Validate.isTrue(!response.contains("\"code\":429"), "Max amount of 800 API calls/day (for free version of twelve data api) has been surpassed");
-        Validate.isTrue(!response.contains("\"code\":401"), "Wrong API key for Twelve Data");
-
         JSONObject object = (JSONObject) new JSONParser().parse(response);
         Validate.notNull(object.get("price"), "TwelveData API Problem with" + stockId + "\n" + response);
         return Double.parseDouble(object.get("price").toString());
     }
+
+    @Override
+    public int getMaxBatchSize() {
+        return 120;
+    }
+
+    /**
+     * Every stock of a batch call uses one API credit
+     */
+    @Override
+    public double getCost(int stocks) {
+        return stocks;
+    }
+
+    @Override
+    public String getBatchURL(List<String> stockIds) {
+        return getBaseURL() + "/price?symbol=" + String.join(",", stockIds) + "&apikey=" + getStockKey();
+    }
+
+    /**
+     * Batch responses link every symbol to what a single call would return
+     */
+    @Override
+    public Map<String, Double> parseBatchResponse(String response, List<String> stockIds) throws ParseException {
+        JSONObject object = (JSONObject) new JSONParser().parse(response);
+        Map<String, Double> prices = new HashMap<>();
+        for (String stockId : stockIds) {
+            Object quote = object.get(stockId);
+            if (quote == null)
+                quote = object.get(stockId.toUpperCase());
+            if (quote instanceof JSONObject && ((JSONObject) quote).get("price") != null)
+                prices.put(stockId, Double.parseDouble(((JSONObject) quote).get("price").toString()));
+        }
+        return prices;
+    }
+
+    /**
+     * Errors look like {"code":429,"message":"...","status":"error"} with a 200 status,
+     * for instance when the credits of the minute or of the day are used up
+     */
+    @Override
+    protected void checkErrors(String response) throws StockAPIException {
+        if (!response.contains("\"status\":\"error\""))
+            return;
+
+        try {
+            JSONObject object = (JSONObject) new JSONParser().parse(response);
+            if ("error".equals(object.get("status")) && object.get("code") instanceof Number)
+                throw new StockAPIException(((Number) object.get("code")).intValue(), String.valueOf(object.get("message")));
+        } catch (ParseException | ClassCastException ignored) {
+            // Not an error, reported when parsed
+        }
+    }
 }
@@ -1,25 +1,40 @@
 package fr.lezoo.stonks.stock.handler;
 
+import fr.lezoo.stonks.Stonks;
 import fr.lezoo.stonks.share.Share;
 import fr.lezoo.stonks.share.ShareType;
 import fr.lezoo.stonks.stock.Stock;
-import fr.lezoo.stonks.stock.TimeScale;
+import fr.lezoo.stonks.stock.model.PriceModel;
+import fr.lezoo.stonks.stock.model.PriceModelGroup;
 import org.bukkit.configuration.ConfigurationSection;
-
-import java.util.Random;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.jetbrains.annotations.Nullable;
 
 public class FictiveStockHandler implements StockHandler {
     private final Stock stock;
 
+    /**
+     * Only used while the stock is not registered. Afterwards
+     * the price multiplier is stepped in the price model group
+     */
     private double priceMultiplier;
     private final double initialMarketShares, volatility;
 
+    private final PriceModel model;
+    private final double[] parameters;
+
+    /**
+     * Group stepping the price of the stock, null if not registered
+     */
+    @Nullable
+    private PriceModelGroup group;
+    private int slot = -1;
+
     /**
      * Sum of initial amount of shares PLUS shares bought by investors
      */
     private double totalMarketShares;
 
-    private static final Random RANDOM = new Random();
     private static final double DEFAULT_VOLATILITY = .01;
 
     public FictiveStockHandler(Stock stock, double price, double initialMarketShares) {
@@ -30,6 +45,10 @@ public class FictiveStockHandler implements StockHandler {
         this.priceMultiplier = price / initialMarketShares;
         this.totalMarketShares = initialMarketShares;
         this.volatility = DEFAULT_VOLATILITY;
+
+        this.model = Stonks.plugin.priceModelManager.getDefault();
+        this.parameters = new double[model.getParameters()];
+        model.load(new YamlConfiguration(), this, parameters, 0);
     }
 
     public FictiveStockHandler(Stock stock, ConfigurationSection config) {
@@ -39,6 +58,63 @@ public class FictiveStockHandler implements StockHandler {
         volatility = config.getDouble("volatility", DEFAULT_VOLATILITY);
         totalMarketShares = config.contains("total-supply") ? config.getDouble("total-supply") : initialMarketShares;
         priceMultiplier = config.contains("price-multiplier") ? config.getDouble("price-multiplier") : stock.getPrice() / initialMarketShares;
+
+        model = config.contains("model") ? Stonks.plugin.priceModelManager.get(config.getString("model")) : Stonks.plugin.priceModelManager.getDefault();
+        parameters = new double[model.getParameters()];
+        model.load(config, this, parameters, 0);
+    }
+
+    public Stock getStock() {
+        return stock;
+    }
+
+    public double getPriceMultiplier() {
+        return group == null ? priceMultiplier : group.getMultiplier(slot);
+    }
+
+    public double getInitialMarketShares() {
+        return initialMarketShares;
+    }
+
+    public double getVolatility() {
+        return volatility;
+    }
+
+    public PriceModel getModel() {
+        return model;
+    }
+
+    /**
+     * @return Parameters of the price model, see {@link PriceModel#load(ConfigurationSection, FictiveStockHandler, double[], int)}
+     */
+    public double[] getParameters() {
+        return parameters;
+    }
+
+    /**
+     * @return Slot of the stock in its price model group, or -1 if not registered
+     */
+    public int getSlot() {
+        return slot;
+    }
+
+    /**
+     * Called by the price model group when the stock is added or changes slot
+     */
+    public void link(PriceModelGroup group, int slot) {
+        this.group = group;
+        this.slot = slot;
+    }
+
+    /**
+     * Called by the price model group when the stock is removed
+     *
+     * @param priceMultiplier Last price multiplier stepped by the group
+     */
+    public void unlink(double priceMultiplier) {
+        this.priceMultiplier = priceMultiplier;
+        group = null;
+        slot = -1;
     }
 
     @Override
@@ -62,10 +138,14 @@ public class FictiveStockHandler implements StockHandler {
             config.set("initial-supply", initialMarketShares);
         if (totalMarketShares!=0)
             config.set("total-supply", totalMarketShares);
+        final double priceMultiplier = getPriceMultiplier();
         if (priceMultiplier!=0)
             config.set("price-multiplier", priceMultiplier);
         if (!config.contains("volatility"))
             config.set("volatility", volatility);
+        if (!config.contains("model"))
+            config.set("model", model.getId());
+        model.save(config, parameters, 0);
     }
 
     /**
@@ -73,7 +153,7 @@ public class FictiveStockHandler implements StockHandler {
      * @return The price the stock should have at any moment
      */
     public double computePrice(double totalShares) {
-        return priceMultiplier * (totalShares < initialMarketShares / 10 ? expBehaviour(totalShares) : totalShares);
+        return getPriceMultiplier() * (totalShares < initialMarketShares / 10 ? expBehaviour(totalShares) : totalShares);
     }
 
     private double expBehaviour(double totalSup) {
@@ -82,18 +162,15 @@ public class FictiveStockHandler implements StockHandler {
 
     /**
      * In this mathematical model where the price only depends on the
-     * amount of shares currently in the market, refreshPrice only applies
-     * some randomness to current price to simulate more market actors.
-     * <p>
-     * A huge advantage of this model is that it's entirely independent
-     * of time, no need to integrate over time with respect to the change
-     * in demand.
+     * amount of shares currently in the market, the price multiplier
+     * is randomly changed over time by the price model of the stock
+     * to simulate more market actors.
      * <p>
-     * If volatility equals 1 you can expect to have a 10% change in 1 hour.
+     * All fictive stocks are stepped at once by the price model
+     * manager every tick, so there is nothing to do here.
      */
     @Override
     public void refreshPrice() {
-        priceMultiplier *= 1 + (RANDOM.nextDouble() - 0.5) * volatility * Math.sqrt(stock.getRefreshPeriod()) /
-                (Math.sqrt(10 * TimeScale.HOUR.getTime()));
+        // Stepped by the price model manager
     }
 }
@@ -5,26 +5,31 @@ import fr.lezoo.stonks.share.Share;
 import fr.lezoo.stonks.share.ShareType;
 import fr.lezoo.stonks.stock.Stock;
 import fr.lezoo.stonks.stock.StockInfo;
+import fr.lezoo.stonks.stock.StockSeries;
 import fr.lezoo.stonks.stock.TimeScale;
 import org.apache.commons.lang.Validate;
-import org.bukkit.Bukkit;
 import org.bukkit.configuration.ConfigurationSection;
-import org.json.simple.parser.ParseException;
-
-import java.io.IOException;
-import java.net.URISyntaxException;
-import java.util.List;
 
 public class RealStockHandler implements StockHandler {
     private final Stock stock;
 
+    /**
+     * Symbol used by the stock API, several stocks can use the same one
+     */
+    private final String symbol;
+
     /**
      * Last price in history
      */
     private StockInfo lastStockInfo;
 
-    public RealStockHandler(Stock stock) {
+    public RealStockHandler(Stock stock, String symbol) {
         this.stock = stock;
+        this.symbol = symbol;
+    }
+
+    public String getSymbol() {
+        return symbol;
     }
 
     @Override
@@ -34,19 +39,25 @@ public class RealStockHandler implements StockHandler {
 
     @Override
     public void saveInFile(ConfigurationSection config) {
-        // Nothing happens
+        if (!symbol.equals(stock.getId()))
+            config.set("symbol", symbol);
     }
 
+    /**
+     * Cached quotes are used until a quote is fetched
+     */
     @Override
     public double getCurrentPrice() {
+        if (lastStockInfo != null)
+            return lastStockInfo.getPrice();
 
-        if (lastStockInfo == null) {
-            final List<StockInfo> latestInfo = stock.getData(TimeScale.MINUTE);
-            Validate.isTrue(!latestInfo.isEmpty(), "No stock data found for '" + stock.getId() + "'");
-            return latestInfo.get(latestInfo.size() - 1).getPrice();
-        }
+        final StockInfo cached = Stonks.plugin.quoteScheduler.getQuote(symbol);
+        if (cached != null)
+            return cached.getPrice();
 
-        return lastStockInfo.getPrice();
+        final StockSeries latestInfo = stock.getData(TimeScale.MINUTE);
+        Validate.isTrue(!latestInfo.isEmpty(), "No stock data found for '" + stock.getId() + "'");
+        return latestInfo.getLatestPrice();
     }
 
     @Override
@@ -54,22 +65,14 @@ public class RealStockHandler implements StockHandler {
         return stock.getPrice();
     }
 
+    /**
+     * Prices are fetched in the background by the quote scheduler
+     * so that the call budget of the stock API is respected
+     */
     @Override
     public void refreshPrice() {
-        Bukkit.getScheduler().runTaskAsynchronously(Stonks.plugin, () -> {
-            try {
-                final double lastPrice = Stonks.plugin.stockAPI.getPrice(stock.getId());
-                lastStockInfo = new StockInfo(System.currentTimeMillis(), lastPrice);
-
-            } catch (URISyntaxException e) {
-                e.printStackTrace();
-            } catch (IOException e) {
-                e.printStackTrace();
-            } catch (ParseException e) {
-                e.printStackTrace();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-        });
+        final StockInfo quote = Stonks.plugin.quoteScheduler.getQuote(symbol);
+        if (quote != null)
+            lastStockInfo = quote;
     }
 }
@@ -0,0 +1,46 @@
+package fr.lezoo.stonks.stock.model;
+
+import fr.lezoo.stonks.stock.handler.FictiveStockHandler;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.SplittableRandom;
+
+/**
+ * Prices follow a random walk in log space. Options are 'volatility'
+ * and 'drift', the expected relative price change per hour
+ */
+public class GeometricBrownianMotion implements PriceModel {
+    @Override
+    public String getId() {
+        return "gbm";
+    }
+
+    @Override
+    public int getParameters() {
+        return 2;
+    }
+
+    @Override
+    public void load(ConfigurationSection config, FictiveStockHandler handler, double[] parameters, int offset) {
+        parameters[offset] = config.getDouble("drift", 0);
+        parameters[offset + 1] = handler.getVolatility() * VOLATILITY_SCALE;
+    }
+
+    @Override
+    public void save(ConfigurationSection config, double[] parameters, int offset) {
+        if (!config.contains("drift"))
+            config.set("drift", parameters[offset]);
+    }
+
+    @Override
+    public void step(double[] multipliers, double[] parameters, double[] steps, int size, SplittableRandom random) {
+        for (int i = 0, j = 0; i < size; i++, j += 2) {
+            final double dt = steps[i];
+            if (dt == 0)
+                continue;
+
+            final double drift = parameters[j], sigma = parameters[j + 1];
+            multipliers[i] *= Math.exp((drift - sigma * sigma / 2) * dt + sigma * Math.sqrt(dt) * PriceModel.nextGaussian(random));
+        }
+    }
+}
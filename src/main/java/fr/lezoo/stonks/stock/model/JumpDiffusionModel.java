@@ -0,0 +1,72 @@
+package fr.lezoo.stonks.stock.model;
+
+import fr.lezoo.stonks.stock.handler.FictiveStockHandler;
+import org.apache.commons.lang.Validate;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.SplittableRandom;
+
+/**
+ * Geometric brownian motion with sudden price jumps, like after
+ * news. Options are the ones of {@link GeometricBrownianMotion} plus
+ * 'jump-rate', the average amount of jumps per hour, 'jump-mean', the
+ * average relative price change of a jump, and 'jump-volatility', the
+ * standard deviation of the log price change of a jump.
+ */
+public class JumpDiffusionModel implements PriceModel {
+    @Override
+    public String getId() {
+        return "jump-diffusion";
+    }
+
+    @Override
+    public int getParameters() {
+        return 5;
+    }
+
+    @Override
+    public void load(ConfigurationSection config, FictiveStockHandler handler, double[] parameters, int offset) {
+        final double jumpRate = config.getDouble("jump-rate", .1), jumpMean = config.getDouble("jump-mean", 0), jumpVolatility = config.getDouble("jump-volatility", .05);
+        Validate.isTrue(jumpRate >= 0, "Jump rate cannot be negative");
+        Validate.isTrue(jumpMean > -1, "Jump mean must be greater than -1");
+        Validate.isTrue(jumpVolatility >= 0, "Jump volatility cannot be negative");
+
+        parameters[offset] = config.getDouble("drift", 0);
+        parameters[offset + 1] = handler.getVolatility() * VOLATILITY_SCALE;
+        parameters[offset + 2] = jumpRate;
+
+        // Mean of the log change, so that the mean relative change is the jump mean
+        parameters[offset + 3] = Math.log(1 + jumpMean) - jumpVolatility * jumpVolatility / 2;
+        parameters[offset + 4] = jumpVolatility;
+    }
+
+    @Override
+    public void save(ConfigurationSection config, double[] parameters, int offset) {
+        if (!config.contains("drift"))
+            config.set("drift", parameters[offset]);
+        if (!config.contains("jump-rate"))
+            config.set("jump-rate", parameters[offset + 2]);
+        if (!config.contains("jump-mean"))
+            config.set("jump-mean", Math.exp(parameters[offset + 3] + parameters[offset + 4] * parameters[offset + 4] / 2) - 1);
+        if (!config.contains("jump-volatility"))
+            config.set("jump-volatility", parameters[offset + 4]);
+    }
+
+    /**
+     * Steps are short enough for at most one jump to happen per step
+     */
+    @Override
+    public void step(double[] multipliers, double[] parameters, double[] steps, int size, SplittableRandom random) {
+        for (int i = 0, j = 0; i < size; i++, j += 5) {
+            final double dt = steps[i];
+            if (dt == 0)
+                continue;
+
+            final double drift = parameters[j], sigma = parameters[j + 1];
+            double change = (drift - sigma * sigma / 2) * dt + sigma * Math.sqrt(dt) * PriceModel.nextGaussian(random);
+            if (random.nextDouble() < parameters[j + 2] * dt)
+                change += parameters[j + 3] + parameters[j + 4] * PriceModel.nextGaussian(random);
+            multipliers[i] *= Math.exp(change);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package fr.lezoo.stonks.stock.model;
+
+import fr.lezoo.stonks.stock.handler.FictiveStockHandler;
+import org.apache.commons.lang.Validate;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.SplittableRandom;
+
+/**
+ * Ornstein-Uhlenbeck process in log space: prices randomly move around
+ * a mean price which they are pulled back to. Options are 'volatility',
+ * 'mean', the price the stock goes back to when the amount of shares
+ * in the market is the initial supply, and 'reversion', the ratio of the
+ * distance to the mean price which is closed every hour.
+ */
+public class MeanReversionModel implements PriceModel {
+    @Override
+    public String getId() {
+        return "mean-reversion";
+    }
+
+    @Override
+    public int getParameters() {
+        return 3;
+    }
+
+    /**
+     * The mean price defaults to the price of the stock when first loaded
+     */
+    @Override
+    public void load(ConfigurationSection config, FictiveStockHandler handler, double[] parameters, int offset) {
+        final double mean = config.getDouble("mean", handler.getPriceMultiplier() * handler.getInitialMarketShares());
+        final double reversion = config.getDouble("reversion", .1);
+        Validate.isTrue(mean > 0, "Mean price must be strictly positive");
+        Validate.isTrue(reversion > 0 && reversion < 1, "Reversion must be between 0 and 1");
+
+        parameters[offset] = Math.log(mean / handler.getInitialMarketShares());
+        parameters[offset + 1] = -Math.log(1 - reversion);
+        parameters[offset + 2] = handler.getVolatility() * VOLATILITY_SCALE;
+    }
+
+    @Override
+    public void save(ConfigurationSection config, double[] parameters, int offset) {
+        if (!config.contains("mean"))
+            config.set("mean", Math.exp(parameters[offset]) * config.getDouble("initial-supply"));
+        if (!config.contains("reversion"))
+            config.set("reversion", 1 - Math.exp(-parameters[offset + 1]));
+    }
+
+    /**
+     * Exact discretization, so stocks stepped rarely behave the same
+     */
+    @Override
+    public void step(double[] multipliers, double[] parameters, double[] steps, int size, SplittableRandom random) {
+        for (int i = 0, j = 0; i < size; i++, j += 3) {
+            final double dt = steps[i];
+            if (dt == 0)
+                continue;
+
+            final double logMean = parameters[j], theta = parameters[j + 1], sigma = parameters[j + 2];
+            final double decay = Math.exp(-theta * dt);
+            final double deviation = sigma * Math.sqrt((1 - decay * decay) / (2 * theta));
+            multipliers[i] = Math.exp(logMean + (Math.log(multipliers[i]) - logMean) * decay + deviation * PriceModel.nextGaussian(random));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package fr.lezoo.stonks.stock.model;
+
+import fr.lezoo.stonks.stock.handler.FictiveStockHandler;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.SplittableRandom;
+
+/**
+ * Randomly changes the prices of fictive stocks over time, on top of
+ * the price changes caused by players buying and selling shares.
+ * The model of a stock is chosen with the 'model' option of the stock
+ * in stocks.yml, and its parameters are other options of the stock.
+ * <p>
+ * Models do not hold the state of stocks. Every stock using a model is
+ * given a slot in a {@link PriceModelGroup}, which holds the price
+ * multipliers and parameters of all of these stocks in primitive arrays,
+ * and all of them are stepped at once every tick. Other plugins can
+ * register models using {@link fr.lezoo.stonks.manager.PriceModelManager#register(PriceModel)}
+ * before Stonks enables.
+ */
+public interface PriceModel {
+
+    /**
+     * Converts the volatility option of fictive stocks to a standard
+     * deviation of the log price per square root hour, so that existing
+     * volatilities keep the price variance of the previous random nudges
+     */
+    double VOLATILITY_SCALE = 1 / Math.sqrt(6000);
+
+    /**
+     * @return Identifier used by the 'model' option in stocks.yml
+     */
+    String getId();
+
+    /**
+     * @return Amount of parameters of every stock
+     */
+    int getParameters();
+
+    /**
+     * Reads the parameters of a stock from its config section
+     *
+     * @param config     Stock config section
+     * @param handler    Handler of the stock, already initialized
+     * @param parameters Array the parameters are written to
+     * @param offset     Index of the first parameter
+     */
+    void load(ConfigurationSection config, FictiveStockHandler handler, double[] parameters, int offset);
+
+    /**
+     * Saves the parameters which are not in the config yet
+     */
+    void save(ConfigurationSection config, double[] parameters, int offset);
+
+    /**
+     * Steps the price multipliers of all the stocks using this model
+     *
+     * @param multipliers Price multipliers, updated in place
+     * @param parameters  Parameters of stock i start at i * {@link #getParameters()}
+     * @param steps       Time elapsed since the last step in hours, or 0
+     *                    if stock i must not be stepped during this tick
+     * @param size        Amount of stocks
+     * @param random      Random number generator of the model group
+     */
+    void step(double[] multipliers, double[] parameters, double[] steps, int size, SplittableRandom random);
+
+    /**
+     * SplittableRandom has no Gaussian numbers before Java 17
+     *
+     * @return Standard normal random number, using the Box-Muller transform
+     */
+    static double nextGaussian(SplittableRandom random) {
+        return Math.sqrt(-2 * Math.log(1 - random.nextDouble())) * Math.cos(2 * Math.PI * random.nextDouble());
+    }
+}
@@ -0,0 +1,120 @@
+package fr.lezoo.stonks.stock.model;
+
+import fr.lezoo.stonks.stock.TimeScale;
+import fr.lezoo.stonks.stock.handler.FictiveStockHandler;
+import org.apache.commons.lang.Validate;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * Stocks using the same price model. Their price multipliers and model
+ * parameters are kept in primitive arrays so that the model steps all
+ * of them in one loop. Stocks are stepped every refresh period, and
+ * stocks with the same refresh period are spread over that period so
+ * that they are not all stepped during the same tick.
+ */
+public class PriceModelGroup {
+    private final PriceModel model;
+    private final SplittableRandom random;
+    private final int stride;
+
+    private FictiveStockHandler[] handlers = new FictiveStockHandler[INITIAL_CAPACITY];
+    private double[] multipliers = new double[INITIAL_CAPACITY], steps = new double[INITIAL_CAPACITY], parameters;
+    private long[] periods = new long[INITIAL_CAPACITY], offsets = new long[INITIAL_CAPACITY];
+    private int size;
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * Time elapsed during one server tick, in hours
+     */
+    private static final double HOURS_PER_TICK = 50d / TimeScale.HOUR.getTime();
+
+    public PriceModelGroup(PriceModel model, SplittableRandom random) {
+        this.model = model;
+        this.random = random;
+        this.stride = model.getParameters();
+        this.parameters = new double[INITIAL_CAPACITY * stride];
+    }
+
+    public PriceModel getModel() {
+        return model;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param handler Handler of the stock, which must use the model of that group
+     * @param period  Refresh period of the stock in ticks
+     */
+    public void add(FictiveStockHandler handler, long period) {
+        Validate.isTrue(handler.getModel() == model, "Stock does not use model '" + model.getId() + "'");
+        Validate.isTrue(period > 0, "Refresh period must be strictly positive");
+
+        if (size == handlers.length) {
+            final int capacity = size * 2;
+            handlers = Arrays.copyOf(handlers, capacity);
+            multipliers = Arrays.copyOf(multipliers, capacity);
+            steps = Arrays.copyOf(steps, capacity);
+            parameters = Arrays.copyOf(parameters, capacity * stride);
+            periods = Arrays.copyOf(periods, capacity);
+            offsets = Arrays.copyOf(offsets, capacity);
+        }
+
+        handlers[size] = handler;
+        multipliers[size] = handler.getPriceMultiplier();
+        System.arraycopy(handler.getParameters(), 0, parameters, size * stride, stride);
+        periods[size] = period;
+        offsets[size] = random.nextLong(period);
+        handler.link(this, size++);
+    }
+
+    /**
+     * The last stock takes the slot of the removed one
+     */
+    public void remove(int slot) {
+        Validate.isTrue(slot >= 0 && slot < size, "No stock in slot " + slot);
+
+        handlers[slot].unlink(multipliers[slot]);
+        final int last = --size;
+        if (slot != last) {
+            handlers[slot] = handlers[last];
+            multipliers[slot] = multipliers[last];
+            System.arraycopy(parameters, last * stride, parameters, slot * stride, stride);
+            periods[slot] = periods[last];
+            offsets[slot] = offsets[last];
+            handlers[slot].link(this, slot);
+        }
+        handlers[last] = null;
+    }
+
+    public double getMultiplier(int slot) {
+        return multipliers[slot];
+    }
+
+    /**
+     * Steps the stocks whose refresh period ends during that tick
+     *
+     * @param tick Ticks elapsed since stocks started being stepped
+     */
+    public void step(long tick) {
+        for (int i = 0; i < size; i++)
+            steps[i] = (tick + offsets[i]) % periods[i] == 0 ? periods[i] * HOURS_PER_TICK : 0;
+
+        model.step(multipliers, parameters, steps, size, random);
+    }
+
+    /**
+     * @return If the stock in that slot was stepped during the last tick
+     */
+    public boolean isStepped(int slot) {
+        return steps[slot] != 0;
+    }
+
+    public FictiveStockHandler getHandler(int slot) {
+        return handlers[slot];
+    }
+}
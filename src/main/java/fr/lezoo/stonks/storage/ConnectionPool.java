@@ -0,0 +1,100 @@
+package fr.lezoo.stonks.storage;
+
+import org.apache.commons.lang.Validate;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Small fixed-size pool of JDBC connections. Connections are opened
+ * lazily and reopened when they are found to be closed or broken.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private final String url, user, password;
+    private final BlockingQueue<Connection> idle;
+    private final int size;
+
+    /**
+     * Amount of connections opened so far. Only accessed in synchronized blocks
+     */
+    private int opened;
+
+    private static final long TIMEOUT = 30;
+
+    public ConnectionPool(String url, String user, String password, int size) {
+        Validate.isTrue(size > 0, "Pool size must be strictly positive");
+
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.size = size;
+        this.idle = new ArrayBlockingQueue<>(size);
+    }
+
+    /**
+     * Waits for a connection to be available. It must be given
+     * back using {@link #release(Connection)} once done with it
+     */
+    public Connection take() throws SQLException {
+        Connection connection = idle.poll();
+        if (connection == null) {
+            synchronized (this) {
+                if (opened < size) {
+                    opened++;
+                    return open();
+                }
+            }
+
+            try {
+                connection = idle.poll(TIMEOUT, TimeUnit.SECONDS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                throw new SQLTransientConnectionException("Interrupted while waiting for a connection");
+            }
+            if (connection == null)
+                throw new SQLTransientConnectionException("Timed out while waiting for a connection");
+        }
+
+        return connection.isValid(1) ? connection : reopen(connection);
+    }
+
+    public void release(Connection connection) {
+        idle.offer(connection);
+    }
+
+    @Override
+    public void close() {
+        Connection connection;
+        while ((connection = idle.poll()) != null)
+            try {
+                connection.close();
+            } catch (SQLException ignored) {
+                // Closing anyway
+            }
+    }
+
+    private Connection reopen(Connection broken) throws SQLException {
+        try {
+            broken.close();
+        } catch (SQLException ignored) {
+            // Already broken
+        }
+        return open();
+    }
+
+    private Connection open() throws SQLException {
+        try {
+            return user == null ? DriverManager.getConnection(url) : DriverManager.getConnection(url, user, password);
+        } catch (SQLException exception) {
+            synchronized (this) {
+                opened--;
+            }
+            throw exception;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package fr.lezoo.stonks.storage;
+
+import fr.lezoo.stonks.share.Share;
+import fr.lezoo.stonks.stock.StockSeries;
+import fr.lezoo.stonks.util.CandleFile;
+import fr.lezoo.stonks.util.ConfigFile;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Default storage in the plugin folder. Stock candles are stored in
+ * binary files, shares in a journal, archived shares in compressed
+ * files and player data in YAML files.
+ */
+public class FileStorage implements Storage {
+    private final File folder;
+    private final ShareJournal journal;
+    private final ShareArchive archive;
+
+    /**
+     * @param folder Plugin folder
+     */
+    public FileStorage(File folder) {
+        this.folder = folder;
+        this.journal = new ShareJournal(folder);
+        this.archive = new ShareArchive(new File(folder, "share-archive"));
+    }
+
+    @Override
+    public boolean hasStockData(String stockId) {
+        return getDataFolder(stockId).exists();
+    }
+
+    @Override
+    public void loadCandles(String stockId, String name, StockSeries series) throws IOException {
+        CandleFile file = getDataFile(stockId, name);
+        if (file.exists())
+            file.read(series);
+    }
+
+    @Override
+    public void saveCandles(String stockId, String name, StockSeries candles, int capacity) throws IOException {
+        getDataFile(stockId, name).write(candles, capacity);
+    }
+
+    @Override
+    public void deleteStockData(String stockId) {
+        File[] dataFiles = getDataFolder(stockId).listFiles();
+        if (dataFiles != null)
+            for (File file : dataFiles)
+                file.delete();
+        getDataFolder(stockId).delete();
+    }
+
+    @Override
+    public boolean hasShares() {
+        return journal.exists();
+    }
+
+    @Override
+    public Map<UUID, byte[]> loadShares() throws IOException {
+        return journal.recover();
+    }
+
+    @Override
+    public void resetShares(Collection<Share> shares) throws IOException {
+        journal.reset(shares);
+    }
+
+    @Override
+    public void saveShare(Share share) {
+        journal.write(share);
+    }
+
+    @Override
+    public void removeShare(UUID uuid) {
+        journal.remove(uuid);
+    }
+
+    @Override
+    public void compact() {
+        journal.compact();
+    }
+
+    @Override
+    public CompletableFuture<Void> archiveShares(UUID owner, Collection<Share> shares) {
+        return archive.archive(owner, shares);
+    }
+
+    @Override
+    public CompletableFuture<Map<UUID, byte[]>> loadArchivedShares(UUID owner, String stockId, int offset, int limit) {
+        return archive.load(owner, stockId, offset, limit);
+    }
+
+    @Override
+    public void removeArchivedShare(UUID owner, String stockId, UUID uuid) {
+        archive.remove(owner, stockId, uuid);
+    }
+
+    @Override
+    public void purgeArchivedShares(long closedBefore) {
+        archive.purge(closedBefore);
+    }
+
+    @Override
+    public FileConfiguration loadPlayerData(UUID uuid) {
+        return YamlConfiguration.loadConfiguration(getPlayerFile(uuid));
+    }
+
+    @Override
+    public void savePlayerData(UUID uuid, FileConfiguration config) throws IOException {
+        new ConfigFile(getPlayerFile(uuid), config).write();
+    }
+
+    @Override
+    public void close() {
+        journal.close();
+        archive.close();
+    }
+
+    private File getDataFolder(String stockId) {
+        return new File(new File(folder, "stock-data"), stockId);
+    }
+
+    private File getPlayerFile(UUID uuid) {
+        return new File(new File(folder, "userdata"), uuid + ".yml");
+    }
+
+    private CandleFile getDataFile(String stockId, String name) {
+        return new CandleFile(new File(getDataFolder(stockId), name + ".dat"));
+    }
+}
@@ -0,0 +1,124 @@
+package fr.lezoo.stonks.storage;
+
+import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.stock.StockSeries;
+import fr.lezoo.stonks.util.CandleFile;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletionException;
+import java.util.logging.Level;
+
+/**
+ * Copies data saved by the file storage to another storage, the first
+ * time the plugin enables with that storage. Candles and player data are
+ * copied before anything is loaded, while shares are copied once stocks
+ * are loaded as they need to be parsed again.
+ * <p>
+ * Migrated files are renamed so that they are never migrated again,
+ * for instance once all shares were removed from the new storage.
+ */
+public class FileStorageMigration {
+    private final File folder = Stonks.plugin.getDataFolder();
+    private final Storage target;
+
+    public FileStorageMigration(Storage target) {
+        this.target = target;
+    }
+
+    /**
+     * Copies stock candles and player data. Data which could not
+     * be copied is logged and left in place
+     */
+    public void migrateData() {
+        File stockData = new File(folder, "stock-data");
+        File[] stocks = stockData.listFiles(File::isDirectory);
+        boolean candlesCopied = true;
+        if (stocks != null)
+            for (File stock : stocks) {
+                File[] files = stock.listFiles((dir, name) -> name.endsWith(".dat"));
+                if (files != null)
+                    for (File file : files)
+                        try {
+
+                            // Every candle of the file is copied, the capacity is applied by the next save
+                            StockSeries series = new StockSeries((int) Math.max(1, file.length() / CandleFile.RECORD_SIZE));
+                            new CandleFile(file).read(series);
+                            final String name = file.getName().substring(0, file.getName().length() - 4);
+                            target.saveCandles(stock.getName(), name, series, series.size());
+                        } catch (IOException exception) {
+                            Stonks.plugin.getLogger().log(Level.SEVERE, "Could not migrate candles from " + file.getPath() + ": " + exception.getMessage());
+                            candlesCopied = false;
+                        }
+            }
+
+        File userData = new File(folder, "userdata");
+        File[] players = userData.listFiles((dir, name) -> name.endsWith(".yml"));
+        if (players != null) {
+            boolean copied = true;
+            for (File file : players)
+                try {
+                    final UUID uuid = UUID.fromString(file.getName().substring(0, file.getName().length() - 4));
+                    target.savePlayerData(uuid, YamlConfiguration.loadConfiguration(file));
+                } catch (IOException | IllegalArgumentException exception) {
+                    Stonks.plugin.getLogger().log(Level.SEVERE, "Could not migrate player data from " + file.getPath() + ": " + exception.getMessage());
+                    copied = false;
+                }
+            if (copied)
+                markMigrated(userData);
+        }
+
+        // Candles are written before player data, whose writes are awaited
+        if (stocks != null && candlesCopied)
+            markMigrated(stockData);
+    }
+
+    /**
+     * @return If shares or archived shares were saved by the file storage
+     */
+    public boolean hasShares() {
+        return new ShareJournal(folder).exists() || getArchiveFolder().exists();
+    }
+
+    /**
+     * @return Serialized state of every share saved by the file storage
+     */
+    public Map<UUID, byte[]> readShares() throws IOException {
+        return new ShareJournal(folder).recover();
+    }
+
+    /**
+     * @return Serialized state of archived shares saved by the file storage, by owner
+     */
+    public Map<UUID, Map<UUID, byte[]>> readArchivedShares() throws IOException {
+        ShareArchive archive = new ShareArchive(getArchiveFolder());
+        try {
+            return archive.loadAll().join();
+        } catch (CompletionException exception) {
+            throw new IOException(exception.getCause().getMessage(), exception.getCause());
+        } finally {
+            archive.close();
+        }
+    }
+
+    /**
+     * Must be called once shares are written by the new storage
+     */
+    public void markSharesMigrated() {
+        markMigrated(new File(folder, "share-data.dat"));
+        markMigrated(new File(folder, "share-journal.dat"));
+        markMigrated(getArchiveFolder());
+    }
+
+    private File getArchiveFolder() {
+        return new File(folder, "share-archive");
+    }
+
+    private void markMigrated(File file) {
+        if (file.exists() && !file.renameTo(new File(file.getParentFile(), file.getName() + ".migrated")))
+            Stonks.plugin.getLogger().log(Level.WARNING, "Could not rename migrated " + file.getName() + ", delete it so that it is not migrated again");
+    }
+}
@@ -0,0 +1,471 @@
+package fr.lezoo.stonks.storage;
+
+import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.share.Share;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Closed shares which are no longer kept in memory, with one compressed
+ * append-only file per share owner and stock. Every append is written as
+ * a separate GZIP member, framed by its length before and after it. Frames
+ * can then be checked without inflating them, and read from the end of the
+ * file so that the most recently archived shares are read first.
+ * <p>
+ * A crash may leave a torn frame at the end of a file. It is cut off before
+ * anything is appended to that file, so that new frames stay readable.
+ * <p>
+ * Removing a share appends a removal record. Removed and expired
+ * shares are dropped when files are purged, which rewrites them.
+ * <p>
+ * Shares are serialized on the calling thread. File writes all run on one
+ * single background thread, which keeps them ordered. Reads run on another
+ * thread so that they do not wait for purges.
+ */
+public class ShareArchive {
+    private final File folder;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "Stonks Share Archive"));
+    private final ExecutorService reader = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "Stonks Share Archive Reader"));
+
+    /**
+     * Only accessed from the writer thread. Files are checked for
+     * torn frames the first time something is appended to them
+     */
+    private final Set<File> checked = new HashSet<>(), removals = new HashSet<>();
+    private boolean purged;
+
+    private static final int MAGIC = 0x53544B41, HEADER_SIZE = Integer.BYTES, FRAME_OVERHEAD = 2 * Integer.BYTES;
+
+    /**
+     * Max amount of records per frame when rewriting a file
+     */
+    private static final int MAX_FRAME_RECORDS = 64;
+
+    private static final byte ARCHIVE = 1, REMOVE = 2;
+
+    /**
+     * @param folder Folder containing one folder of archive files per share owner
+     */
+    public ShareArchive(File folder) {
+        this.folder = folder;
+    }
+
+    /**
+     * Appends closed shares to the archive of their owner
+     *
+     * @return Completes once shares are synced to disk
+     */
+    public CompletableFuture<Void> archive(UUID owner, Collection<Share> shares) {
+        Map<String, List<Record>> byStock = new HashMap<>();
+        for (Share share : shares)
+            byStock.computeIfAbsent(share.getStock().getId(), unused -> new ArrayList<>())
+                    .add(new Record(ARCHIVE, share.getUniqueId(), share.getCloseTime(), share.getStock().getId(), share.toByteArray()));
+
+        // Most recently closed shares are written last so that they are read first
+        for (List<Record> records : byStock.values())
+            records.sort(Comparator.comparingLong(record -> record.closeTime));
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        writer.execute(() -> {
+            try {
+                for (Map.Entry<String, List<Record>> entry : byStock.entrySet())
+                    append(getFile(owner, entry.getKey()), entry.getValue());
+                future.complete(null);
+            } catch (IOException exception) {
+                future.completeExceptionally(exception);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Appends the removal of an archived share, for instance once claimed
+     */
+    public void remove(UUID owner, String stockId, UUID uuid) {
+        writer.execute(() -> {
+            File file = getFile(owner, stockId);
+            try {
+                append(file, Collections.singletonList(new Record(REMOVE, uuid, 0, null, null)));
+                removals.add(file);
+            } catch (IOException exception) {
+                Stonks.plugin.getLogger().log(Level.SEVERE, "Could not write to share archive of " + owner + ": " + exception.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Reads one page of archived shares in the background. Only
+     * the frames at the end of the file needed for that page are read
+     *
+     * @param offset Amount of shares to skip
+     * @param limit  Max amount of shares read
+     * @return Serialized state of archived shares of that owner from
+     *         that stock, most recently archived first
+     */
+    public CompletableFuture<Map<UUID, byte[]>> load(UUID owner, String stockId, int offset, int limit) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return read(getFile(owner, stockId), offset, limit);
+            } catch (IOException exception) {
+                throw new CompletionException(exception);
+            }
+        }, reader);
+    }
+
+    /**
+     * Reads every archived share in the background, used to
+     * migrate archived shares to another storage
+     *
+     * @return Serialized state of archived shares, by owner
+     */
+    public CompletableFuture<Map<UUID, Map<UUID, byte[]>>> loadAll() {
+        return CompletableFuture.supplyAsync(() -> {
+            Map<UUID, Map<UUID, byte[]>> loaded = new HashMap<>();
+            File[] owners = folder.listFiles(File::isDirectory);
+            if (owners != null)
+                for (File owner : owners) {
+                    File[] stocks = owner.listFiles((dir, name) -> name.endsWith(".dat"));
+                    if (stocks != null)
+                        for (File file : stocks)
+                            try {
+                                loaded.computeIfAbsent(UUID.fromString(owner.getName()), key -> new LinkedHashMap<>()).putAll(read(file, 0, Integer.MAX_VALUE));
+                            } catch (IOException | IllegalArgumentException exception) {
+                                throw new CompletionException(new IOException("Could not read share archive " + file.getPath() + ": " + exception.getMessage(), exception));
+                            }
+                }
+            return loaded;
+        }, reader);
+    }
+
+    /**
+     * Drops removed shares and shares closed before the given time in the
+     * background. Without retention, only files with removals are rewritten
+     *
+     * @param closedBefore Time in millis, or 0 to keep every share
+     */
+    public void purge(long closedBefore) {
+        writer.execute(() -> {
+
+            // Removals from previous runs are not tracked
+            List<File> files = new ArrayList<>();
+            if (closedBefore > 0 || !purged) {
+                File[] owners = folder.listFiles(File::isDirectory);
+                if (owners != null)
+                    for (File owner : owners) {
+                        File[] stocks = owner.listFiles((dir, name) -> name.endsWith(".dat"));
+                        if (stocks != null)
+                            files.addAll(Arrays.asList(stocks));
+                    }
+            } else
+                files.addAll(removals);
+            purged = true;
+            removals.clear();
+
+            for (File file : files)
+                try {
+                    purge(file, closedBefore);
+                } catch (IOException exception) {
+                    removals.add(file);
+                    Stonks.plugin.getLogger().log(Level.SEVERE, "Could not purge share archive " + file.getPath() + ": " + exception.getMessage());
+                }
+        });
+    }
+
+    /**
+     * Waits for all pending writes
+     */
+    public void close() {
+        writer.shutdown();
+        reader.shutdown();
+        try {
+            if (!writer.awaitTermination(30, TimeUnit.SECONDS))
+                Stonks.plugin.getLogger().log(Level.SEVERE, "Timed out while waiting for share archive to be written");
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Appends one frame, synced to disk before returning. The
+     * first append to a file cuts off any torn frame at its end
+     */
+    private void append(File file, List<Record> records) throws IOException {
+        final byte[] frame = compress(records);
+        file.getParentFile().mkdirs();
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.READ)) {
+            long end = channel.size();
+            if (!checked.contains(file)) {
+                end = getValidLength(channel, scan(channel));
+                if (end < channel.size()) {
+                    Stonks.plugin.getLogger().log(Level.WARNING, "Discarding " + (channel.size() - end) + " bytes of torn records at the end of share archive " + file.getPath());
+                    channel.truncate(end);
+                }
+                checked.add(file);
+            }
+
+            ByteBuffer buffer = ByteBuffer.allocate((end == 0 ? HEADER_SIZE : 0) + FRAME_OVERHEAD + frame.length);
+            if (end == 0)
+                buffer.putInt(MAGIC);
+            buffer.putInt(frame.length).put(frame).putInt(frame.length).flip();
+            try {
+                while (buffer.hasRemaining())
+                    end += channel.write(buffer, end);
+                channel.force(true);
+            } catch (IOException exception) {
+
+                // Torn frame is cut off by the next append
+                checked.remove(file);
+                throw exception;
+            }
+        }
+    }
+
+    private Map<UUID, byte[]> read(File file, int offset, int limit) throws IOException {
+        Map<UUID, byte[]> page = new LinkedHashMap<>();
+        if (!file.exists())
+            return page;
+
+        // Removed shares, and shares already met in a more recent record
+        Set<UUID> met = new HashSet<>();
+        int skipped = 0;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            List<Frame> frames = scan(channel);
+            for (int i = frames.size() - 1; i >= 0 && page.size() < limit; i--) {
+                List<Record> records;
+                try {
+                    records = inflate(channel, frames.get(i));
+                } catch (IOException exception) {
+                    Stonks.plugin.getLogger().log(Level.WARNING, "Skipping corrupted records of share archive " + file.getPath() + ": " + exception.getMessage());
+                    continue;
+                }
+
+                for (int j = records.size() - 1; j >= 0 && page.size() < limit; j--) {
+                    Record record = records.get(j);
+                    if (!met.add(record.uuid) || record.operation == REMOVE)
+                        continue;
+
+                    if (skipped < offset)
+                        skipped++;
+                    else
+                        page.put(record.uuid, record.data);
+                }
+            }
+        }
+
+        return page;
+    }
+
+    private void purge(File file, long closedBefore) throws IOException {
+        Map<UUID, Record> records = new LinkedHashMap<>();
+        boolean dropped;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            List<Frame> frames = scan(channel);
+            dropped = getValidLength(channel, frames) < channel.size();
+
+            for (Frame frame : frames)
+                try {
+                    for (Record record : inflate(channel, frame)) {
+
+                        // A share archived again moves to the end of the file
+                        dropped |= records.remove(record.uuid) != null || record.operation == REMOVE;
+                        if (record.operation == ARCHIVE)
+                            records.put(record.uuid, record);
+                    }
+                } catch (IOException exception) {
+                    Stonks.plugin.getLogger().log(Level.WARNING, "Dropping corrupted records of share archive " + file.getPath() + ": " + exception.getMessage());
+                    dropped = true;
+                }
+        }
+
+        dropped |= records.values().removeIf(record -> record.closeTime < closedBefore);
+        if (!dropped)
+            return;
+
+        checked.remove(file);
+        if (records.isEmpty()) {
+            Files.delete(file.toPath());
+
+            // Only deleted if empty
+            file.getParentFile().delete();
+        } else
+            rewrite(file, new ArrayList<>(records.values()));
+    }
+
+    /**
+     * Writes a temporary file which then atomically replaces the given
+     * file, so that a crash leaves either the old or the new file
+     */
+    private void rewrite(File file, List<Record> records) throws IOException {
+        file.getParentFile().mkdirs();
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp); DataOutputStream output = new DataOutputStream(new BufferedOutputStream(stream))) {
+            output.writeInt(MAGIC);
+            for (int i = 0; i < records.size(); i += MAX_FRAME_RECORDS) {
+                byte[] frame = compress(records.subList(i, Math.min(records.size(), i + MAX_FRAME_RECORDS)));
+                output.writeInt(frame.length);
+                output.write(frame);
+                output.writeInt(frame.length);
+            }
+            output.flush();
+            stream.getFD().sync();
+        }
+
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * A frame that was not entirely written because of a crash is the
+     * last one of the file. It is ignored, as well as anything after it
+     *
+     * @return Complete frames at the start of the file
+     */
+    private static List<Frame> scan(FileChannel channel) throws IOException {
+        List<Frame> frames = new ArrayList<>();
+        final long size = channel.size();
+        if (size < HEADER_SIZE)
+            return frames;
+
+        ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+        if (readInt(channel, 0, buffer) != MAGIC)
+            throw new IOException("Not a share archive file");
+
+        long position = HEADER_SIZE;
+        while (position + FRAME_OVERHEAD <= size) {
+
+            // Length read from torn bytes may be anything
+            final int length = readInt(channel, position, buffer);
+            if (length <= 0 || position + FRAME_OVERHEAD + length > size || readInt(channel, position + Integer.BYTES + length, buffer) != length)
+                break;
+
+            frames.add(new Frame(position, length));
+            position += FRAME_OVERHEAD + length;
+        }
+
+        return frames;
+    }
+
+    /**
+     * @return Length of the header and of the complete frames at the start of the file
+     */
+    private static long getValidLength(FileChannel channel, List<Frame> frames) throws IOException {
+        if (!frames.isEmpty())
+            return frames.get(frames.size() - 1).getEnd();
+        return channel.size() < HEADER_SIZE ? 0 : HEADER_SIZE;
+    }
+
+    private static int readInt(FileChannel channel, long position, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, position + buffer.position()) < 0)
+                throw new EOFException();
+        return buffer.getInt(0);
+    }
+
+    private static byte[] compress(List<Record> records) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream output = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            for (Record record : records)
+                record.write(output);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Record> inflate(FileChannel channel, Frame frame) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(frame.length);
+        while (buffer.hasRemaining())
+            if (channel.read(buffer, frame.position + Integer.BYTES + buffer.position()) < 0)
+                throw new EOFException();
+
+        List<Record> records = new ArrayList<>();
+        try (DataInputStream input = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(buffer.array())))) {
+            Record record;
+            while ((record = Record.read(input)) != null)
+                records.add(record);
+        }
+        return records;
+    }
+
+    private File getFile(UUID owner, String stockId) {
+        return new File(new File(folder, owner.toString()), stockId + ".dat");
+    }
+
+    private static class Frame {
+        private final long position;
+        private final int length;
+
+        Frame(long position, int length) {
+            this.position = position;
+            this.length = length;
+        }
+
+        long getEnd() {
+            return position + FRAME_OVERHEAD + length;
+        }
+    }
+
+    private static class Record {
+        private final byte operation;
+        private final UUID uuid;
+        private final long closeTime;
+        private final String stockId;
+        private final byte[] data;
+
+        Record(byte operation, UUID uuid, long closeTime, String stockId, byte[] data) {
+            this.operation = operation;
+            this.uuid = uuid;
+            this.closeTime = closeTime;
+            this.stockId = stockId;
+            this.data = data;
+        }
+
+        void write(DataOutput output) throws IOException {
+            output.writeByte(operation);
+            output.writeLong(uuid.getMostSignificantBits());
+            output.writeLong(uuid.getLeastSignificantBits());
+            if (operation == ARCHIVE) {
+                output.writeLong(closeTime);
+                output.writeUTF(stockId);
+                output.writeInt(data.length);
+                output.write(data);
+            }
+        }
+
+        /**
+         * @return Next record, or null at the end of the stream
+         */
+        static Record read(DataInputStream input) throws IOException {
+            final int operation = input.read();
+            if (operation < 0)
+                return null;
+
+            final UUID uuid = new UUID(input.readLong(), input.readLong());
+            if (operation == REMOVE)
+                return new Record(REMOVE, uuid, 0, null, null);
+            if (operation != ARCHIVE)
+                throw new IOException("Unknown operation " + operation);
+
+            final long closeTime = input.readLong();
+            final String stockId = input.readUTF();
+            byte[] data = new byte[input.readInt()];
+            input.readFully(data);
+            return new Record(ARCHIVE, uuid, closeTime, stockId, data);
+        }
+    }
+}
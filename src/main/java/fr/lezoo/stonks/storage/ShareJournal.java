@@ -0,0 +1,393 @@
+package fr.lezoo.stonks.storage;
+
+import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.share.Share;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.zip.CRC32;
+
+/**
+ * Durable storage of shares made of a snapshot file and of a binary
+ * journal. Every change to a share is appended to the journal as soon
+ * as it happens, so a crash loses nothing and saving never has to
+ * rewrite every share.
+ * <p>
+ * Every record holds the full state of one share, which makes replaying
+ * idempotent, and ends with a checksum. The journal is periodically folded
+ * into the snapshot by {@link #compact()}. Recovery reads the snapshot then
+ * replays the journal. Corrupted records in the middle of the journal are
+ * skipped, and the journal is then never compacted so that the records after
+ * them, which cannot be told apart from garbage for sure, are kept.
+ * <p>
+ * Shares are serialized on the calling thread. File writes and compactions
+ * all run on one single background thread, which keeps them ordered.
+ * Appends are synced to disk once no other append is pending, so that
+ * bursts of changes only cost one sync. Records which could not be written
+ * are cut off the journal and written again with the next append.
+ */
+public class ShareJournal {
+    private final File snapshotFile, journalFile;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "Stonks Share Journal"));
+
+    /**
+     * Only accessed from the writer thread
+     */
+    private OutputStream journal;
+    private FileOutputStream journalOutput;
+
+    /**
+     * Length of the journal once every record written before the last sync
+     * is on disk, and records written since then. Only accessed from the
+     * writer thread
+     */
+    private long syncedLength;
+    private final List<byte[]> unsynced = new ArrayList<>();
+
+    /**
+     * Set when corrupted records are found in the middle of the journal
+     */
+    private volatile boolean corrupted;
+
+    /**
+     * Appends submitted but not written yet
+     */
+    private final AtomicInteger pendingAppends = new AtomicInteger();
+
+    private static final byte UPSERT = 1, REMOVE = 2;
+
+    /**
+     * Operation, unique ID and checksum
+     */
+    private static final int MIN_RECORD_SIZE = 1 + 2 * Long.BYTES + Integer.BYTES;
+
+    /**
+     * @param folder Folder containing the snapshot and journal files
+     */
+    public ShareJournal(File folder) {
+        this.snapshotFile = new File(folder, "share-data.dat");
+        this.journalFile = new File(folder, "share-journal.dat");
+    }
+
+    public boolean exists() {
+        return snapshotFile.exists() || journalFile.exists();
+    }
+
+    /**
+     * Reads the snapshot then replays the journal. Must be
+     * called before anything is written to the journal
+     *
+     * @return Serialized state of every share, see {@link Share#write(DataOutput)}
+     */
+    public Map<UUID, byte[]> recover() throws IOException {
+        Map<UUID, byte[]> state = new LinkedHashMap<>();
+        if (snapshotFile.exists()) {
+            Replay replay = replay(snapshotFile, state);
+            if (replay.corruptedAt >= 0 || replay.valid < snapshotFile.length())
+                throw new IOException("Share snapshot " + snapshotFile.getName() + " is corrupted");
+        }
+
+        if (journalFile.exists()) {
+            Replay replay = replay(journalFile, state);
+            if (replay.corruptedAt >= 0) {
+                corrupted = true;
+                Stonks.plugin.getLogger().log(Level.SEVERE, "Share journal is corrupted at byte " + replay.corruptedAt + ", skipped " + replay.skipped
+                        + " bytes of corrupted records. It is not compacted anymore so that no record is lost, back up " + journalFile.getName() + " and " + snapshotFile.getName());
+            }
+
+            /*
+             * A crash may leave a torn record at the end of the journal. It is
+             * cut off so that new records are not appended after its bytes
+             */
+            if (replay.valid < journalFile.length()) {
+                Stonks.plugin.getLogger().log(Level.WARNING, "Discarding " + (journalFile.length() - replay.valid) + " bytes of torn records at the end of the share journal");
+                truncateJournal(replay.valid);
+            }
+        }
+
+        return state;
+    }
+
+    /**
+     * Replaces the snapshot with the given shares. Used to migrate data
+     * from older versions, must be called before anything is written to the journal
+     */
+    public void reset(Collection<Share> shares) throws IOException {
+        Map<UUID, byte[]> state = new LinkedHashMap<>();
+        for (Share share : shares)
+            state.put(share.getUniqueId(), share.toByteArray());
+        writeSnapshot(state);
+        journalFile.delete();
+        corrupted = false;
+    }
+
+    /**
+     * Appends the current state of a share to the journal
+     */
+    public void write(Share share) {
+        append(toRecord(UPSERT, share.getUniqueId(), share.toByteArray()));
+    }
+
+    /**
+     * Appends the removal of a share to the journal
+     */
+    public void remove(UUID uuid) {
+        append(toRecord(REMOVE, uuid, null));
+    }
+
+    /**
+     * Folds the journal into the snapshot in the background
+     */
+    public void compact() {
+        writer.execute(() -> {
+            try {
+                fold();
+            } catch (IOException exception) {
+                Stonks.plugin.getLogger().log(Level.SEVERE, "Could not compact share journal: " + exception.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Compacts the journal one last time and waits for all pending writes
+     */
+    public void close() {
+        compact();
+        writer.shutdown();
+        try {
+            if (!writer.awaitTermination(30, TimeUnit.SECONDS))
+                Stonks.plugin.getLogger().log(Level.SEVERE, "Timed out while waiting for share journal to be written");
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void append(byte[] record) {
+        pendingAppends.incrementAndGet();
+        writer.execute(() -> {
+            unsynced.add(record);
+            try {
+                if (journal == null)
+                    open();
+                else
+                    journal.write(record);
+            } catch (IOException exception) {
+                discardUnsynced("Could not write to share journal", exception);
+            } finally {
+                if (pendingAppends.decrementAndGet() == 0)
+                    sync();
+            }
+        });
+    }
+
+    /**
+     * Records which could not be written before are written first
+     */
+    private void open() throws IOException {
+        journalOutput = new FileOutputStream(journalFile, true);
+        journal = new BufferedOutputStream(journalOutput);
+        syncedLength = journalFile.length();
+        for (byte[] record : unsynced)
+            journal.write(record);
+    }
+
+    /**
+     * Flushing only hands the records to the OS, they
+     * are not on disk until the file descriptor is synced
+     */
+    private void sync() {
+        try {
+            if (journal == null) {
+                if (unsynced.isEmpty())
+                    return;
+                open();
+            }
+
+            journal.flush();
+            journalOutput.getFD().sync();
+            for (byte[] record : unsynced)
+                syncedLength += record.length;
+            unsynced.clear();
+        } catch (IOException exception) {
+            discardUnsynced("Could not sync share journal", exception);
+        }
+    }
+
+    /**
+     * Parts of records may have been written. The journal is cut back to
+     * its last synced length so that the next records are not appended
+     * after a torn one, and records are kept to be written again
+     */
+    private void discardUnsynced(String message, IOException exception) {
+        Stonks.plugin.getLogger().log(Level.SEVERE, message + ", " + unsynced.size() + " records will be written again: " + exception.getMessage());
+        try {
+            journal.close();
+        } catch (IOException | RuntimeException ignored) {
+            // Already failing
+        }
+        journal = null;
+        journalOutput = null;
+
+        try {
+            truncateJournal(syncedLength);
+        } catch (IOException truncateException) {
+            Stonks.plugin.getLogger().log(Level.SEVERE, "Could not cut torn records off the share journal: " + truncateException.getMessage());
+        }
+    }
+
+    private void truncateJournal(long length) throws IOException {
+        try (FileChannel channel = FileChannel.open(journalFile.toPath(), StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+            channel.force(true);
+        }
+    }
+
+    private void fold() throws IOException {
+        if (journal != null || !unsynced.isEmpty()) {
+            sync();
+            if (!unsynced.isEmpty())
+                throw new IOException(unsynced.size() + " records could not be written to the journal");
+            journal.close();
+            journal = null;
+            journalOutput = null;
+        }
+
+        if (!journalFile.exists())
+            return;
+
+        // Records after corrupted ones are only trusted as long as the journal is kept
+        Map<UUID, byte[]> state = corrupted ? null : recover();
+        if (corrupted) {
+            Stonks.plugin.getLogger().log(Level.SEVERE, "Share journal is corrupted, not compacting it");
+            return;
+        }
+
+        writeSnapshot(state);
+
+        // If the server crashes before this, the journal is replayed twice which is harmless
+        Files.delete(journalFile.toPath());
+    }
+
+    private void writeSnapshot(Map<UUID, byte[]> state) throws IOException {
+        File temp = new File(snapshotFile.getParentFile(), snapshotFile.getName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp); OutputStream output = new BufferedOutputStream(file)) {
+            for (Map.Entry<UUID, byte[]> entry : state.entrySet())
+                output.write(toRecord(UPSERT, entry.getKey(), entry.getValue()));
+            output.flush();
+            file.getFD().sync();
+        }
+
+        Files.move(temp.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param data Serialized share, or null for removals
+     * @return Operation, unique ID, data length and data, then the checksum of all of it
+     */
+    private static byte[] toRecord(byte operation, UUID uuid, byte[] data) {
+        ByteBuffer buffer = ByteBuffer.allocate(MIN_RECORD_SIZE + (data == null ? 0 : Integer.BYTES + data.length));
+        buffer.put(operation).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits());
+        if (data != null)
+            buffer.putInt(data.length).put(data);
+
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) checksum.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * A record that was not entirely written because of a crash is the
+     * last one of the file. It is ignored, as well as anything after it.
+     * Corrupted records followed by valid ones are skipped
+     */
+    private Replay replay(File file, Map<UUID, byte[]> state) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        Replay replay = new Replay();
+
+        int offset = 0;
+        while (offset < buffer.limit()) {
+            final int end = readRecord(buffer, offset, state);
+            if (end >= 0) {
+                offset = end;
+                continue;
+            }
+
+            // Nothing valid after this record means it is torn
+            int next = offset + 1;
+            while (next < buffer.limit() && readRecord(buffer, next, null) < 0)
+                next++;
+            if (next >= buffer.limit())
+                break;
+
+            if (replay.corruptedAt < 0)
+                replay.corruptedAt = offset;
+            replay.skipped += next - offset;
+            offset = next;
+        }
+
+        replay.valid = offset;
+        return replay;
+    }
+
+    /**
+     * @param state Where the record is applied, or null to only check it
+     * @return Offset after the record, or -1 if there is no complete record
+     *         with a matching checksum at that offset
+     */
+    private static int readRecord(ByteBuffer buffer, int offset, Map<UUID, byte[]> state) {
+        if (buffer.limit() - offset < MIN_RECORD_SIZE)
+            return -1;
+
+        final byte operation = buffer.get(offset);
+        int length = 1 + 2 * Long.BYTES;
+        if (operation == UPSERT) {
+
+            // Length read from torn bytes may be anything
+            final int dataLength = buffer.getInt(offset + length);
+            if (dataLength < 0 || dataLength > buffer.limit() - offset - MIN_RECORD_SIZE - Integer.BYTES)
+                return -1;
+            length += Integer.BYTES + dataLength;
+        } else if (operation != REMOVE)
+            return -1;
+
+        CRC32 checksum = new CRC32();
+        checksum.update(buffer.array(), offset, length);
+        if (buffer.getInt(offset + length) != (int) checksum.getValue())
+            return -1;
+
+        if (state != null) {
+            final UUID uuid = new UUID(buffer.getLong(offset + 1), buffer.getLong(offset + 1 + Long.BYTES));
+            if (operation == UPSERT)
+                state.put(uuid, Arrays.copyOfRange(buffer.array(), offset + length - buffer.getInt(offset + 1 + 2 * Long.BYTES), offset + length));
+            else
+                state.remove(uuid);
+        }
+
+        return offset + length + Integer.BYTES;
+    }
+
+    private static class Replay {
+
+        /**
+         * Length of the file without the torn record at its end, if any
+         */
+        private int valid;
+
+        /**
+         * Offset of the first corrupted record followed by valid records, or -1
+         */
+        private int corruptedAt = -1;
+        private int skipped;
+    }
+}
@@ -0,0 +1,699 @@
+package fr.lezoo.stonks.storage;
+
+import fr.lezoo.stonks.Stonks;
+import fr.lezoo.stonks.share.Share;
+import fr.lezoo.stonks.stock.StockSeries;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.InvalidConfigurationException;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.*;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Stores data in an SQL database through JDBC. SQLite and H2 databases
+ * are embedded in the plugin folder, MySQL is used for shared databases.
+ * Shares are indexed by owner and by stock.
+ * <p>
+ * Reads are synchronous, except archived shares which are read by a
+ * background thread. Writes are queued and applied in the background
+ * by a single writer thread, which groups consecutive writes using the
+ * same statement into one JDBC batch, and each drained group of writes
+ * into one transaction.
+ * <p>
+ * Writes failing because the database is unavailable are tried again
+ * until it is available, in order. If it is still unavailable when the
+ * storage closes, pending writes are saved to a file and applied the
+ * next time the storage opens.
+ */
+public class SqlStorage implements Storage {
+    private final ConnectionPool pool;
+    private final String candles, shares, archive, players;
+
+    private final BlockingQueue<SqlWrite> queue = new LinkedBlockingQueue<>();
+    private final Thread writer;
+    private final File pendingFile;
+    private final Logger logger;
+    private final long closeTimeout;
+
+    /**
+     * Time after which writes which cannot be applied are saved
+     * to the pending writes file, or 0 while the storage is open
+     */
+    private volatile long closeDeadline;
+
+    /**
+     * Set once pending writes are saved to the file
+     */
+    private volatile boolean savedPendingWrites;
+    private final ExecutorService reader = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "Stonks SQL Reader"));
+
+    /**
+     * Max amount of writes applied in one transaction
+     */
+    private static final int MAX_BATCH_SIZE = 500;
+
+    /**
+     * Delay in millis before a write failing because the database is
+     * unavailable is tried again, doubled after every try up to a max
+     */
+    private static final long RETRY_DELAY = 1000, MAX_RETRY_DELAY = 60000;
+
+    /**
+     * Max time in seconds waited for a write to be applied
+     */
+    private static final long AWAIT_TIMEOUT = 60;
+
+    /**
+     * Queued to stop the writer thread once previous writes are applied
+     */
+    private static final SqlWrite CLOSE = new SqlWrite(null);
+
+    /**
+     * @param type   Either sqlite, h2 or mysql
+     * @param config Storage config section
+     * @param folder Plugin folder, containing embedded databases
+     */
+    public SqlStorage(String type, ConfigurationSection config, File folder) {
+        this(openPool(type, config, folder), config.getString("table-prefix", "stonks_"), new File(folder, "pending-writes.dat"), Stonks.plugin.getLogger(), Duration.ofSeconds(30));
+    }
+
+    /**
+     * @param pool         Connections to the database
+     * @param prefix       Prefix of table names
+     * @param pendingFile  Where writes which could not be applied are saved when closing
+     * @param closeTimeout Time waited for the database when closing before pending writes are saved
+     */
+    public SqlStorage(ConnectionPool pool, String prefix, File pendingFile, Logger logger, Duration closeTimeout) {
+        this.pool = pool;
+        this.candles = prefix + "candles";
+        this.shares = prefix + "shares";
+        this.archive = prefix + "share_archive";
+        this.players = prefix + "players";
+        this.pendingFile = pendingFile;
+        this.logger = logger;
+        this.closeTimeout = closeTimeout.toMillis();
+
+        try {
+            createTables();
+        } catch (SQLException exception) {
+            pool.close();
+            throw new RuntimeException("Could not create database tables: " + exception.getMessage(), exception);
+        }
+
+        writer = new Thread(this::writeQueued, "Stonks SQL Writer");
+        writer.start();
+
+        if (pendingFile.exists())
+            try {
+                applyPendingWrites();
+            } catch (IOException exception) {
+                logger.log(Level.SEVERE, "Could not read pending database writes from " + pendingFile.getName() + ": " + exception.getMessage());
+            }
+    }
+
+    private static ConnectionPool openPool(String type, ConfigurationSection config, File folder) {
+        switch (type) {
+            case "sqlite":
+                return new ConnectionPool("jdbc:sqlite:" + folder.getAbsolutePath() + "/" + config.getString("file", "stonks") + ".db", null, null, 1);
+            case "h2":
+                return new ConnectionPool("jdbc:h2:" + folder.getAbsolutePath() + "/" + config.getString("file", "stonks") + ";MODE=MySQL", null, null, config.getInt("pool-size", 3));
+            default:
+                return new ConnectionPool("jdbc:mysql://" + config.getString("host", "localhost") + ":" + config.getInt("port", 3306) + "/" + config.getString("database"),
+                        config.getString("user"), config.getString("password"), config.getInt("pool-size", 3));
+        }
+    }
+
+    @Override
+    public boolean hasStockData(String stockId) throws IOException {
+        return query("SELECT 1 FROM " + candles + " WHERE stock = ? LIMIT 1", ResultSet::next, stockId);
+    }
+
+    @Override
+    public void loadCandles(String stockId, String name, StockSeries series) throws IOException {
+
+        // Latest candles first
+        List<double[]> loaded = query("SELECT time, open, high, low, close, volume FROM " + candles + " WHERE stock = ? AND series = ? ORDER BY time DESC LIMIT ?", result -> {
+            List<double[]> list = new ArrayList<>();
+            while (result.next())
+                list.add(new double[]{result.getLong(1), result.getDouble(2), result.getDouble(3), result.getDouble(4), result.getDouble(5), result.getDouble(6)});
+            return list;
+        }, stockId, name, series.getCapacity());
+
+        for (int i = loaded.size() - 1; i >= 0; i--) {
+            double[] candle = loaded.get(i);
+            series.add((long) candle[0], candle[1], candle[2], candle[3], candle[4], candle[5]);
+        }
+    }
+
+    @Override
+    public void saveCandles(String stockId, String name, StockSeries candles, int capacity) {
+        for (int i = 0; i < candles.size(); i++)
+            queue.add(new SqlWrite("REPLACE INTO " + this.candles + " (stock, series, time, open, high, low, close, volume) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+                    stockId, name, candles.getTimeStamp(i), candles.getOpen(i), candles.getHigh(i), candles.getLow(i), candles.getClose(i), candles.getVolume(i)));
+
+        // Only keep as many candles as the series capacity
+        queue.add(new SqlWrite("DELETE FROM " + this.candles + " WHERE stock = ? AND series = ? AND time < (SELECT MIN(time) FROM (SELECT time FROM "
+                + this.candles + " WHERE stock = ? AND series = ? ORDER BY time DESC LIMIT ?) latest)", stockId, name, stockId, name, capacity));
+    }
+
+    @Override
+    public void deleteStockData(String stockId) {
+        queue.add(new SqlWrite("DELETE FROM " + candles + " WHERE stock = ?", stockId));
+    }
+
+    @Override
+    public boolean hasShares() throws IOException {
+        return query("SELECT 1 FROM " + shares + " LIMIT 1", ResultSet::next);
+    }
+
+    @Override
+    public Map<UUID, byte[]> loadShares() throws IOException {
+        return query("SELECT uuid, data FROM " + shares, result -> {
+            Map<UUID, byte[]> map = new LinkedHashMap<>();
+            while (result.next())
+                map.put(UUID.fromString(result.getString(1)), result.getBytes(2));
+            return map;
+        });
+    }
+
+    /**
+     * Fails if any share could not be written
+     */
+    @Override
+    public void resetShares(Collection<Share> shares) throws IOException {
+        List<SqlWrite> writes = new ArrayList<>(shares.size() + 1);
+        writes.add(new SqlWrite("DELETE FROM " + this.shares));
+        for (Share share : shares)
+            writes.add(getSaveWrite(share));
+        await(writes);
+    }
+
+    @Override
+    public void saveShare(Share share) {
+        queue.add(getSaveWrite(share));
+    }
+
+    private SqlWrite getSaveWrite(Share share) {
+        return new SqlWrite("REPLACE INTO " + shares + " (uuid, owner, stock, data) VALUES (?, ?, ?, ?)",
+                share.getUniqueId().toString(), share.getOwner().toString(), share.getStock().getId(), share.toByteArray());
+    }
+
+    @Override
+    public void removeShare(UUID uuid) {
+        queue.add(new SqlWrite("DELETE FROM " + shares + " WHERE uuid = ?", uuid.toString()));
+    }
+
+    @Override
+    public void compact() {
+        // Rows are updated in place
+    }
+
+    @Override
+    public CompletableFuture<Void> archiveShares(UUID owner, Collection<Share> shares) {
+        CompletableFuture<?>[] written = new CompletableFuture[shares.size()];
+        int i = 0;
+        for (Share share : shares) {
+            SqlWrite write = new SqlWrite("REPLACE INTO " + archive + " (uuid, owner, stock, close_time, data) VALUES (?, ?, ?, ?, ?)",
+                    share.getUniqueId().toString(), owner.toString(), share.getStock().getId(), share.getCloseTime(), share.toByteArray());
+            written[i++] = write.committed = new CompletableFuture<>();
+            queue.add(write);
+        }
+        return CompletableFuture.allOf(written);
+    }
+
+    @Override
+    public CompletableFuture<Map<UUID, byte[]>> loadArchivedShares(UUID owner, String stockId, int offset, int limit) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return query("SELECT uuid, data FROM " + archive + " WHERE owner = ? AND stock = ? ORDER BY close_time DESC, uuid LIMIT ? OFFSET ?", result -> {
+                    Map<UUID, byte[]> map = new LinkedHashMap<>();
+                    while (result.next())
+                        map.put(UUID.fromString(result.getString(1)), result.getBytes(2));
+                    return map;
+                }, owner.toString(), stockId, limit, offset);
+            } catch (IOException exception) {
+                throw new CompletionException(exception);
+            }
+        }, reader);
+    }
+
+    @Override
+    public void removeArchivedShare(UUID owner, String stockId, UUID uuid) {
+        queue.add(new SqlWrite("DELETE FROM " + archive + " WHERE uuid = ?", uuid.toString()));
+    }
+
+    @Override
+    public void purgeArchivedShares(long closedBefore) {
+
+        // Removed shares are deleted right away
+        if (closedBefore > 0)
+            queue.add(new SqlWrite("DELETE FROM " + archive + " WHERE close_time < ?", closedBefore));
+    }
+
+    @Override
+    public FileConfiguration loadPlayerData(UUID uuid) throws IOException {
+        String data = query("SELECT data FROM " + players + " WHERE uuid = ?", result -> result.next() ? result.getString(1) : null, uuid.toString());
+        YamlConfiguration config = new YamlConfiguration();
+        if (data != null)
+            try {
+                config.loadFromString(data);
+            } catch (InvalidConfigurationException exception) {
+                throw new IOException("Could not parse player data of " + uuid + ": " + exception.getMessage());
+            }
+        return config;
+    }
+
+    /**
+     * Waits for player data to be written, so that
+     * failures are reported and saving is tried again
+     */
+    @Override
+    public void savePlayerData(UUID uuid, FileConfiguration config) throws IOException {
+        await(new SqlWrite("REPLACE INTO " + players + " (uuid, data) VALUES (?, ?)", uuid.toString(), config.saveToString()));
+    }
+
+    @Override
+    public void close() {
+        closeDeadline = System.currentTimeMillis() + closeTimeout;
+        queue.add(CLOSE);
+        try {
+            writer.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        reader.shutdownNow();
+        pool.close();
+    }
+
+    private void createTables() throws SQLException {
+        Connection connection = pool.take();
+        try (Statement statement = connection.createStatement()) {
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + candles + " (stock VARCHAR(64) NOT NULL, series VARCHAR(64) NOT NULL, time BIGINT NOT NULL, open DOUBLE NOT NULL,"
+                    + " high DOUBLE NOT NULL, low DOUBLE NOT NULL, close DOUBLE NOT NULL, volume DOUBLE NOT NULL, PRIMARY KEY (stock, series, time))");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + shares + " (uuid CHAR(36) NOT NULL PRIMARY KEY, owner CHAR(36) NOT NULL, stock VARCHAR(64) NOT NULL, data BLOB NOT NULL)");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + archive + " (uuid CHAR(36) NOT NULL PRIMARY KEY, owner CHAR(36) NOT NULL, stock VARCHAR(64) NOT NULL,"
+                    + " close_time BIGINT NOT NULL, data BLOB NOT NULL)");
+            statement.executeUpdate("CREATE TABLE IF NOT EXISTS " + players + " (uuid CHAR(36) NOT NULL PRIMARY KEY, data TEXT NOT NULL)");
+
+            // Not all databases support IF NOT EXISTS on indexes
+            for (String column : new String[]{"owner", "stock"})
+                try {
+                    statement.executeUpdate("CREATE INDEX " + shares + "_" + column + " ON " + shares + " (" + column + ")");
+                } catch (SQLException ignored) {
+                    // Index already exists
+                }
+            try {
+                statement.executeUpdate("CREATE INDEX " + archive + "_owner ON " + archive + " (owner, stock)");
+            } catch (SQLException ignored) {
+                // Index already exists
+            }
+        } finally {
+            pool.release(connection);
+        }
+    }
+
+    private <T> T query(String sql, ResultReader<T> reader, Object... parameters) throws IOException {
+        try {
+            Connection connection = pool.take();
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int i = 0; i < parameters.length; i++)
+                    statement.setObject(i + 1, parameters[i]);
+                try (ResultSet result = statement.executeQuery()) {
+                    return reader.read(result);
+                }
+            } finally {
+                pool.release(connection);
+            }
+        } catch (SQLException exception) {
+            throw new IOException(exception.getMessage(), exception);
+        }
+    }
+
+    /**
+     * Run by the writer thread until the storage is closed
+     */
+    private void writeQueued() {
+        List<SqlWrite> batch = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException exception) {
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+
+            final boolean closing = batch.remove(CLOSE);
+            if (!batch.isEmpty() && !apply(batch)) {
+                savePendingWrites(batch);
+                return;
+            }
+            batch.clear();
+
+            if (closing)
+                return;
+        }
+    }
+
+    /**
+     * Transactions failing because the database is unavailable are tried
+     * again until they succeed. Other failures mean that a write is invalid,
+     * in which case writes are applied one by one so that it does not drop
+     * the others. Writes are applied in order, and nothing else is applied
+     * in the meantime
+     *
+     * @return False if the storage is closing and the database is still
+     *         unavailable, in which case the writes were not applied
+     */
+    private boolean apply(List<SqlWrite> batch) {
+        long delay = RETRY_DELAY;
+        while (true) {
+            try {
+                write(batch);
+                for (SqlWrite write : batch)
+                    write.complete(null);
+                return true;
+            } catch (SQLException exception) {
+                if (!isTransient(exception)) {
+                    if (batch.size() > 1)
+                        return applyOneByOne(batch);
+
+                    logger.log(Level.SEVERE, "Could not apply invalid change to database, skipping it: " + exception.getMessage());
+                    batch.get(0).complete(exception);
+                    return true;
+                }
+
+                logger.log(Level.WARNING, "Could not write " + batch.size() + " changes to database, trying again in " + delay / 1000 + "s: " + exception.getMessage());
+            }
+
+            if (!waitBeforeRetry(delay))
+                return false;
+            delay = Math.min(delay * 2, MAX_RETRY_DELAY);
+        }
+    }
+
+    private boolean applyOneByOne(List<SqlWrite> batch) {
+        for (int i = 0; i < batch.size(); i++)
+            if (!apply(Collections.singletonList(batch.get(i)))) {
+
+                // Applied writes are not saved again
+                batch.subList(0, i).clear();
+                return false;
+            }
+        return true;
+    }
+
+    /**
+     * @return False if the storage is closing and cannot wait anymore
+     */
+    private boolean waitBeforeRetry(long delay) {
+        final long start = System.currentTimeMillis();
+        while (true) {
+            final long now = System.currentTimeMillis(), deadline = closeDeadline;
+            if (deadline > 0 && now >= deadline)
+                return false;
+
+            // Tried again sooner when closing
+            final long retryAt = start + (deadline > 0 ? Math.min(delay, RETRY_DELAY) : delay);
+            if (now >= retryAt)
+                return true;
+
+            try {
+                Thread.sleep(Math.min(retryAt - now, 250));
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Connection failures, timeouts and deadlocks
+     */
+    private static boolean isTransient(SQLException exception) {
+        final String state = exception.getSQLState();
+        return exception instanceof SQLTransientException || exception instanceof SQLRecoverableException || exception instanceof SQLNonTransientConnectionException
+                || (state != null && (state.startsWith("08") || state.startsWith("40")))
+                || (exception.getMessage() != null && (exception.getMessage().contains("SQLITE_BUSY") || exception.getMessage().contains("SQLITE_LOCKED")));
+    }
+
+    /**
+     * Saves writes which could not be applied and all queued writes, so that
+     * they are applied the next time the storage opens. Called when closing
+     */
+    private void savePendingWrites(List<SqlWrite> unapplied) {
+        List<SqlWrite> pending = new ArrayList<>(unapplied);
+        queue.drainTo(pending);
+        pending.remove(CLOSE);
+
+        File temp = new File(pendingFile.getParentFile(), pendingFile.getName() + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temp); DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file))) {
+            output.writeInt(pending.size());
+            for (SqlWrite write : pending)
+                write.write(output);
+            output.flush();
+            file.getFD().sync();
+        } catch (IOException exception) {
+            logger.log(Level.SEVERE, "Could not save " + pending.size() + " pending database writes, they are lost: " + exception.getMessage());
+            return;
+        }
+
+        try {
+            Files.move(temp.toPath(), pendingFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            logger.log(Level.SEVERE, "Database is unavailable, saved " + pending.size() + " pending writes to " + pendingFile.getName() + " to apply them on next startup");
+        } catch (IOException exception) {
+            logger.log(Level.SEVERE, "Could not save " + pending.size() + " pending database writes, they are lost: " + exception.getMessage());
+        }
+
+        savedPendingWrites = true;
+        final SQLException unavailable = new SQLTransientConnectionException("Database is unavailable, write saved to " + pendingFile.getName());
+        for (SqlWrite write : pending)
+            write.complete(unavailable);
+    }
+
+    /**
+     * Applies writes saved when the storage last closed, before anything
+     * is read. The file is deleted once they are all applied, unless they
+     * were saved again because the storage closed in the meantime
+     */
+    private void applyPendingWrites() throws IOException {
+        List<SqlWrite> pending = new ArrayList<>();
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(pendingFile)))) {
+            for (int i = input.readInt(); i > 0; i--)
+                pending.add(SqlWrite.read(input));
+        }
+
+        logger.log(Level.INFO, "Applying " + pending.size() + " database writes saved while the database was unavailable");
+        CompletableFuture<?>[] committed = new CompletableFuture[pending.size()];
+        for (int i = 0; i < pending.size(); i++)
+            committed[i] = pending.get(i).committed = new CompletableFuture<>();
+
+        // Invalid writes are logged and skipped
+        CompletableFuture<Void> applied = CompletableFuture.allOf(committed).handle((result, error) -> {
+            if (!savedPendingWrites && !pendingFile.delete())
+                logger.log(Level.WARNING, "Could not delete " + pendingFile.getName() + ", delete it so that writes are not applied twice");
+            return null;
+        });
+        queue.addAll(pending);
+
+        try {
+            applied.get(AWAIT_TIMEOUT, TimeUnit.SECONDS);
+        } catch (ExecutionException exception) {
+            throw new IOException(exception.getCause().getMessage(), exception.getCause());
+        } catch (TimeoutException exception) {
+            logger.log(Level.WARNING, "Database writes saved while the database was unavailable are still being applied");
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Queues a write and waits for it to be applied
+     */
+    private void await(SqlWrite write) throws IOException {
+        await(Collections.singletonList(write));
+    }
+
+    /**
+     * Queues writes and waits for all of them to be applied
+     *
+     * @throws IOException If any of them could not be applied
+     */
+    private void await(List<SqlWrite> writes) throws IOException {
+        CompletableFuture<?>[] committed = new CompletableFuture[writes.size()];
+        for (int i = 0; i < writes.size(); i++)
+            committed[i] = writes.get(i).committed = new CompletableFuture<>();
+        queue.addAll(writes);
+        try {
+            CompletableFuture.allOf(committed).get(AWAIT_TIMEOUT, TimeUnit.SECONDS);
+        } catch (ExecutionException exception) {
+            throw new IOException(exception.getCause().getMessage(), exception.getCause());
+        } catch (TimeoutException exception) {
+            throw new IOException("Timed out while waiting for database write", exception);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for database write", exception);
+        }
+    }
+
+    private void write(List<SqlWrite> batch) throws SQLException {
+        Connection connection = pool.take();
+        try {
+            connection.setAutoCommit(false);
+
+            // Consecutive writes using the same statement are batched
+            PreparedStatement statement = null;
+            String current = null;
+            try {
+                for (SqlWrite write : batch) {
+                    if (!write.sql.equals(current)) {
+                        if (statement != null) {
+                            statement.executeBatch();
+                            statement.close();
+                        }
+                        statement = connection.prepareStatement(write.sql);
+                        current = write.sql;
+                    }
+
+                    for (int i = 0; i < write.parameters.length; i++)
+                        statement.setObject(i + 1, write.parameters[i]);
+                    statement.addBatch();
+                }
+                if (statement != null)
+                    statement.executeBatch();
+            } finally {
+                if (statement != null)
+                    statement.close();
+            }
+
+            connection.commit();
+        } catch (SQLException exception) {
+            connection.rollback();
+            throw exception;
+        } finally {
+            connection.setAutoCommit(true);
+            pool.release(connection);
+        }
+    }
+
+    private static class SqlWrite {
+        private final String sql;
+        private final Object[] parameters;
+
+        /**
+         * Completed once the write is committed, if someone waits for it
+         */
+        private CompletableFuture<Void> committed;
+
+        SqlWrite(String sql, Object... parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+
+        /**
+         * Statements and parameters are saved, only strings, numbers and byte arrays are supported
+         */
+        void write(DataOutputStream output) throws IOException {
+            writeString(output, sql);
+            output.writeInt(parameters.length);
+            for (Object parameter : parameters)
+                if (parameter instanceof String) {
+                    output.writeByte(STRING);
+                    writeString(output, (String) parameter);
+                } else if (parameter instanceof Integer) {
+                    output.writeByte(INT);
+                    output.writeInt((Integer) parameter);
+                } else if (parameter instanceof Long) {
+                    output.writeByte(LONG);
+                    output.writeLong((Long) parameter);
+                } else if (parameter instanceof Double) {
+                    output.writeByte(DOUBLE);
+                    output.writeDouble((Double) parameter);
+                } else if (parameter instanceof byte[]) {
+                    output.writeByte(BYTES);
+                    output.writeInt(((byte[]) parameter).length);
+                    output.write((byte[]) parameter);
+                } else
+                    throw new IOException("Cannot save parameter of type " + parameter.getClass().getSimpleName());
+        }
+
+        static SqlWrite read(DataInputStream input) throws IOException {
+            final String sql = readString(input);
+            Object[] parameters = new Object[input.readInt()];
+            for (int i = 0; i < parameters.length; i++)
+                switch (input.readByte()) {
+                    case STRING:
+                        parameters[i] = readString(input);
+                        break;
+                    case INT:
+                        parameters[i] = input.readInt();
+                        break;
+                    case LONG:
+                        parameters[i] = input.readLong();
+                        break;
+                    case DOUBLE:
+                        parameters[i] = input.readDouble();
+                        break;
+                    case BYTES:
+                        parameters[i] = new byte[input.readInt()];
+                        input.readFully((byte[]) parameters[i]);
+                        break;
+                    default:
+                        throw new IOException("Unknown parameter type");
+                }
+            return new SqlWrite(sql, parameters);
+        }
+
+        /**
+         * Player data may be longer than what {@link DataOutput#writeUTF(String)} supports
+         */
+        private static void writeString(DataOutputStream output, String string) throws IOException {
+            byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+
+        private static String readString(DataInputStream input) throws IOException {
+            byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static final byte STRING = 1, INT = 2, LONG = 3, DOUBLE = 4, BYTES = 5;
+
+        /**
+         * @param exception Null if the write was committed
+         */
+        void complete(SQLException exception) {
+            if (committed == null)
+                return;
+
+            if (exception == null)
+                committed.complete(null);
+            else
+                committed.completeExceptionally(exception);
+        }
+    }
+
+    @FunctionalInterface
+    private interface ResultReader<T> {
+        T read(ResultSet result) throws SQLException;
+    }
+}
@@ -0,0 +1,137 @@
+package fr.lezoo.stonks.storage;
+
+import fr.lezoo.stonks.share.Share;
+import fr.lezoo.stonks.stock.StockSeries;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Where stock data, shares and player data are stored. Managers
+ * capture and restore the state of plugin objects, while storages
+ * only read and write already serialized data.
+ * <p>
+ * Write methods may be called from any thread. Implementations
+ * may write in the background, in which case writes must be applied
+ * in the order they were made, and must all be applied by {@link #close()}.
+ */
+public interface Storage {
+
+    /**
+     * @return If any candle was ever saved for that stock
+     */
+    boolean hasStockData(String stockId) throws IOException;
+
+    /**
+     * Appends the latest saved candles of a stock series to the given series
+     *
+     * @param name Name of the series, either a time scale or a history tier
+     */
+    void loadCandles(String stockId, String name, StockSeries series) throws IOException;
+
+    /**
+     * @param candles  Latest candles of the series, which must start at or
+     *                 before the latest candle saved
+     * @param capacity Amount of candles to keep
+     */
+    void saveCandles(String stockId, String name, StockSeries candles, int capacity) throws IOException;
+
+    void deleteStockData(String stockId);
+
+    /**
+     * @return If any share was ever saved
+     */
+    boolean hasShares() throws IOException;
+
+    /**
+     * @return Serialized state of every share, see {@link Share#write(java.io.DataOutput)}
+     */
+    Map<UUID, byte[]> loadShares() throws IOException;
+
+    /**
+     * Replaces all saved shares, used to migrate data from older versions.
+     * Returns once shares are written
+     *
+     * @throws IOException If any share could not be written
+     */
+    void resetShares(Collection<Share> shares) throws IOException;
+
+    /**
+     * Saves the current state of a share. Must be called on the main thread
+     */
+    void saveShare(Share share);
+
+    void removeShare(UUID uuid);
+
+    /**
+     * Called periodically to let the storage compact saved shares
+     */
+    void compact();
+
+    /**
+     * Moves closed shares of one owner to the archive. Must be called on the main thread
+     *
+     * @return Completes once shares are safely archived. Only then they
+     *         may be removed using {@link #removeShare(UUID)}, otherwise
+     *         a crash could lose them
+     */
+    CompletableFuture<Void> archiveShares(UUID owner, Collection<Share> shares);
+
+    /**
+     * Reads one page of archived shares in the background
+     *
+     * @param offset Amount of shares to skip
+     * @param limit  Max amount of shares read
+     * @return Serialized state of archived shares of that owner
+     *         from that stock, most recently archived first
+     */
+    CompletableFuture<Map<UUID, byte[]>> loadArchivedShares(UUID owner, String stockId, int offset, int limit);
+
+    void removeArchivedShare(UUID owner, String stockId, UUID uuid);
+
+    /**
+     * Deletes removed archived shares for good, and archived
+     * shares closed before the given time
+     *
+     * @param closedBefore Time in millis, or 0 to keep every share
+     */
+    void purgeArchivedShares(long closedBefore);
+
+    /**
+     * @return Player data, or an empty config if none was saved
+     */
+    FileConfiguration loadPlayerData(UUID uuid) throws IOException;
+
+    /**
+     * Returns once player data is written, so that it can be
+     * saved again later if it could not be written
+     */
+    void savePlayerData(UUID uuid, FileConfiguration config) throws IOException;
+
+    /**
+     * Applies all pending writes and releases resources
+     */
+    void close();
+
+    @NotNull
+    static Storage fromConfig(ConfigurationSection config, File folder) {
+        String type = config == null ? "file" : config.getString("type", "file");
+        switch (type) {
+            case "file":
+                return new FileStorage(folder);
+            case "sqlite":
+            case "h2":
+            case "mysql":
+                return new SqlStorage(type, config, folder);
+            default:
+                throw new RuntimeException("Could not match storage type to '" + type + "'");
+        }
+    }
+}
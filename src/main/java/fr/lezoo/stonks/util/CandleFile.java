@@ -0,0 +1,239 @@
+package fr.lezoo.stonks.util;
+
+import fr.lezoo.stonks.stock.StockSeries;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only binary file storing the candles of one {@link StockSeries}
+ * as fixed-width records. Files are read through memory mapped buffers so
+ * loading a series is a single sequential read and saving only writes the
+ * candles that changed since the last save, instead of rewriting the
+ * whole history.
+ * <p>
+ * The header holds a magic number, the format version and the amount
+ * of committed records. Records are only ever written after the committed
+ * ones and the header is updated once they are on disk, so an interrupted
+ * save leaves the file as it was. The candle which is not finished yet is
+ * appended again every time it changes, and only its latest record is
+ * read. Files which are not a prefix of the series anymore, or which hold
+ * twice as many records as the series capacity, are rewritten into a
+ * temporary file which then atomically replaces the file.
+ */
+public class CandleFile {
+    private final File file;
+
+    private static final int MAGIC = 0x53544B53, VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+
+    /**
+     * Time stamp followed by open, high, low, close and volume
+     */
+    public static final int RECORD_SIZE = Long.BYTES + 5 * Double.BYTES;
+
+    /**
+     * @param file Binary file, which may not exist yet
+     */
+    public CandleFile(File file) {
+        this.file = file;
+    }
+
+    public boolean exists() {
+        return file.exists();
+    }
+
+    /**
+     * Appends the latest candles of the file to the series. If the file
+     * holds more candles than the series capacity, the oldest are skipped.
+     * When several records have the same time stamp, only the last one is read.
+     */
+    public void read(StockSeries series) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            final long count = readCount(channel);
+            if (count == 0)
+                return;
+
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, count * RECORD_SIZE);
+
+            // Records replaced by a newer record of the same candle are skipped
+            long unique = 0;
+            for (long i = 0; i < count; i++)
+                if (isLatestVersion(buffer, i, count))
+                    unique++;
+
+            long skipped = Math.max(0, unique - series.getCapacity());
+            for (long i = 0; i < count; i++)
+                if (isLatestVersion(buffer, i, count) && skipped-- <= 0) {
+                    final int position = (int) (i * RECORD_SIZE);
+                    series.add(buffer.getLong(position), buffer.getDouble(position + 8), buffer.getDouble(position + 16),
+                            buffer.getDouble(position + 24), buffer.getDouble(position + 32), buffer.getDouble(position + 40));
+                }
+        }
+    }
+
+    private boolean isLatestVersion(ByteBuffer buffer, long record, long count) {
+        return record == count - 1 || buffer.getLong((int) (record * RECORD_SIZE)) != buffer.getLong((int) ((record + 1) * RECORD_SIZE));
+    }
+
+    /**
+     * Writes the candles of the series which are not in the file yet
+     */
+    public void write(StockSeries series) throws IOException {
+        write(series, series.getCapacity());
+    }
+
+    /**
+     * Writes the candles of the series which are not in the file yet. The
+     * series may only contain the latest candles of the series being saved,
+     * as long as it starts at or before the latest candle of the file.
+     *
+     * @param capacity Capacity of the series being saved
+     */
+    public void write(StockSeries series, int capacity) throws IOException {
+        if (!file.getParentFile().exists())
+            file.getParentFile().mkdirs();
+
+        if (!file.exists()) {
+            rewrite(series);
+            return;
+        }
+
+        long count;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            count = channel.size() < HEADER_SIZE ? 0 : readCount(channel);
+
+            // Find the first candle of the series that needs to be written
+            int from = 0;
+            if (count > 0) {
+                final long lastTimeStamp = readLong(channel, offset(count - 1));
+                from = series.indexOf(lastTimeStamp);
+
+                // Latest record is the current candle, appended again if it changed
+                if (from < series.size() && series.getTimeStamp(from) == lastTimeStamp) {
+                    if (isWritten(channel, count - 1, series, from))
+                        from++;
+                }
+
+                /*
+                 * File is not a prefix of the series anymore, rewrite it. If
+                 * all the candles of the series are newer than the file,
+                 * they are simply appended
+                 */
+                else if (from > 0 || series.isEmpty()) {
+                    channel.close();
+                    rewrite(series);
+                    return;
+                }
+            }
+
+            // Records past the committed ones are garbage from an interrupted save
+            if (from < series.size()) {
+                ByteBuffer buffer = ByteBuffer.allocate((series.size() - from) * RECORD_SIZE);
+                for (int i = from; i < series.size(); i++)
+                    putCandle(buffer, series, i);
+                buffer.flip();
+
+                long position = offset(count);
+                while (buffer.hasRemaining())
+                    position += channel.write(buffer, position);
+                channel.force(false);
+
+                count += series.size() - from;
+                writeCount(channel, count);
+            }
+        }
+
+        // Compact the file once it's twice as big as needed
+        if (count > 2L * capacity) {
+            StockSeries latest = new StockSeries(capacity);
+            read(latest);
+            rewrite(latest);
+        }
+    }
+
+    /**
+     * @return If that record already holds that candle
+     */
+    private boolean isWritten(FileChannel channel, long record, StockSeries series, int index) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        channel.read(buffer, offset(record));
+        buffer.flip();
+        return buffer.remaining() == RECORD_SIZE && buffer.getLong() == series.getTimeStamp(index) && buffer.getDouble() == series.getOpen(index)
+                && buffer.getDouble() == series.getHigh(index) && buffer.getDouble() == series.getLow(index)
+                && buffer.getDouble() == series.getClose(index) && buffer.getDouble() == series.getVolume(index);
+    }
+
+    /**
+     * Writes the whole series into a temporary file which then replaces
+     * the file, so that the file is either fully old or fully new
+     */
+    private void rewrite(StockSeries series) throws IOException {
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + series.size() * RECORD_SIZE);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(series.size());
+        for (int i = 0; i < series.size(); i++)
+            putCandle(buffer, series, i);
+        buffer.flip();
+
+        try (FileChannel channel = FileChannel.open(temp.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining())
+                channel.write(buffer);
+            channel.force(true);
+        }
+
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void delete() {
+        file.delete();
+    }
+
+    private void putCandle(ByteBuffer buffer, StockSeries series, int index) {
+        buffer.putLong(series.getTimeStamp(index)).putDouble(series.getOpen(index)).putDouble(series.getHigh(index))
+                .putDouble(series.getLow(index)).putDouble(series.getClose(index)).putDouble(series.getVolume(index));
+    }
+
+    private long readCount(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        channel.read(header, 0);
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC)
+            throw new IOException("File " + file.getName() + " is not a candle file");
+        final int version = header.getInt();
+        if (version != VERSION)
+            throw new IOException("Unsupported version " + version + " of candle file " + file.getName());
+
+        // Ignore records which were not entirely written
+        return Math.min(header.getLong(), (channel.size() - HEADER_SIZE) / RECORD_SIZE);
+    }
+
+    private long readLong(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+        channel.read(buffer, position);
+        buffer.flip();
+        return buffer.getLong();
+    }
+
+    /**
+     * Header is written once the records are on disk so that an
+     * interrupted write never makes the file point to corrupted records
+     */
+    private void writeCount(FileChannel channel, long count) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(count).flip();
+        channel.write(header, 0);
+        channel.force(false);
+    }
+
+    private static long offset(long record) {
+        return HEADER_SIZE + record * RECORD_SIZE;
+    }
+}
@@ -7,6 +7,9 @@ import org.bukkit.plugin.Plugin;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.logging.Level;
 
 /**
@@ -32,6 +35,27 @@ public class ConfigFile {
         this(Stonks.plugin, folder, name);
     }
 
+    /**
+     * Used to save a configuration which was built in memory,
+     * without reading the file it is about to replace
+     *
+     * @param folder Folder path like "/userdata"
+     * @param name   File name WITHOUT EXTENSION like "board-data"
+     * @param config Configuration to save
+     */
+    public ConfigFile(String folder, String name, FileConfiguration config) {
+        this(new File(Stonks.plugin.getDataFolder() + folder, name + ".yml"), config);
+    }
+
+    /**
+     * @param file   YAML file
+     * @param config Configuration to save
+     */
+    public ConfigFile(File file, FileConfiguration config) {
+        this.file = file;
+        this.config = config;
+    }
+
     /**
      * @param plugin Plugin owning the config file
      * @param folder Folder path like "/language"
@@ -50,13 +74,27 @@ public class ConfigFile {
     }
 
     /**
-     * Saves the edited config file
+     * Saves the edited config file. The config is first written to a
+     * temporary file which then replaces the older file, so that the
+     * file is never left half written if the server crashes
      */
     public void save() {
         try {
-            config.save(file);
+            write();
         } catch (IOException exception) {
             Stonks.plugin.getLogger().log(Level.SEVERE, "Could not save " + file.getName() + ".yml: " + exception.getMessage());
         }
     }
+
+    /**
+     * Same as {@link #save()} but lets the caller handle errors
+     */
+    public void write() throws IOException {
+        if (!file.getParentFile().exists())
+            file.getParentFile().mkdirs();
+
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Files.write(temp.toPath(), config.saveToString().getBytes(StandardCharsets.UTF_8));
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
 }
\ No newline at end of file
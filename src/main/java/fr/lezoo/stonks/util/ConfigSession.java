@@ -0,0 +1,73 @@
+package fr.lezoo.stonks.util;
+
+import fr.lezoo.stonks.Stonks;
+import org.bukkit.configuration.file.FileConfiguration;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+
+/**
+ * Used to read a set of config files in bulk. Every file is parsed
+ * at most once during the session however many times it is requested,
+ * and files which were edited are saved once when the session is flushed.
+ * <p>
+ * Files may be requested by several threads at once, like when data
+ * files are read concurrently on startup. Flushing must only happen
+ * once every thread is done with the session.
+ */
+public class ConfigSession {
+    private final String name;
+    private final Map<String, ConfigFile> files = new ConcurrentHashMap<>();
+    private final Set<String> changed = ConcurrentHashMap.newKeySet();
+    private final long start = System.nanoTime();
+    private final AtomicLong parseTime = new AtomicLong();
+
+    /**
+     * @param name Name of the session used in logs, like "config"
+     */
+    public ConfigSession(String name) {
+        this.name = name;
+    }
+
+    /**
+     * @param folder Folder path like "/language"
+     * @param name   File name WITHOUT EXTENSION like "messages"
+     * @return Config file, parsed the first time it is requested
+     */
+    public ConfigFile getFile(String folder, String name) {
+        return files.computeIfAbsent(folder + "/" + name, key -> {
+            final long start = System.nanoTime();
+            ConfigFile file = new ConfigFile(folder, name);
+            parseTime.addAndGet(System.nanoTime() - start);
+            return file;
+        });
+    }
+
+    public FileConfiguration getConfig(String folder, String name) {
+        return getFile(folder, name).getConfig();
+    }
+
+    /**
+     * Marks a file as edited so that it is saved when flushing
+     */
+    public void setChanged(String folder, String name) {
+        changed.add(folder + "/" + name);
+    }
+
+    /**
+     * Saves every edited file and logs how long the session took
+     */
+    public void flush() {
+        final long saveStart = System.nanoTime();
+        for (String key : changed)
+            files.get(key).save();
+        final long end = System.nanoTime();
+
+        Stonks.plugin.getLogger().log(Level.INFO, "Loaded " + name + " (" + files.size() + " files) in " + (end - start) / 1000000 + "ms: "
+                + parseTime.get() / 1000000 + "ms parsing, " + (end - saveStart) / 1000000 + "ms saving " + changed.size() + " files");
+        changed.clear();
+    }
+}
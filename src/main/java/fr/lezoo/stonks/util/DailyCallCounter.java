@@ -0,0 +1,82 @@
+package fr.lezoo.stonks.util;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Counts the calls made during the current UTC day, which is when stock
+ * APIs reset their daily limit. Calls are spread over the day: at any
+ * time of the day, calls are allowed up to the part of the limit which
+ * elapsed so far plus some advance, and never more than the limit.
+ * Thread safe.
+ */
+public class DailyCallCounter {
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    /**
+     * UTC day of the calls counted, in days since the epoch
+     */
+    private long day;
+    private double calls;
+
+    /**
+     * @param limit   Calls allowed per day
+     * @param advance Calls allowed ahead of the even pace
+     * @param now     Current time in millis
+     * @return Calls which can be made right now
+     */
+    public synchronized double getCallsLeft(double limit, double advance, long now) {
+        Validate.isTrue(limit > 0, "Limit must be strictly positive");
+        Validate.isTrue(advance >= 0, "Advance must be positive");
+
+        roll(now);
+        final double allowed = Math.min(limit, limit * (now - day * DAY) / DAY + advance);
+        return Math.max(0, allowed - calls);
+    }
+
+    /**
+     * @param now Current time in millis
+     * @return Calls made during the current UTC day
+     */
+    public synchronized double getCalls(long now) {
+        roll(now);
+        return calls;
+    }
+
+    /**
+     * @param calls Calls made, which may be more than the calls left
+     * @param now   Current time in millis
+     */
+    public synchronized void add(double calls, long now) {
+        roll(now);
+        this.calls += calls;
+    }
+
+    /**
+     * @return UTC day of the calls counted, in days since the epoch
+     */
+    public synchronized long getDay() {
+        return day;
+    }
+
+    /**
+     * Restores a count saved earlier, which is ignored if it
+     * is from another day than the current count
+     *
+     * @param day   UTC day of the calls, in days since the epoch
+     * @param calls Calls made during that day
+     * @param now   Current time in millis
+     */
+    public synchronized void restore(long day, double calls, long now) {
+        roll(now);
+        if (day == this.day)
+            this.calls = Math.max(this.calls, calls);
+    }
+
+    private void roll(long now) {
+        final long today = Math.floorDiv(now, DAY);
+        if (today != day) {
+            day = today;
+            calls = 0;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package fr.lezoo.stonks.util;
+
+import org.apache.commons.lang.Validate;
+
+/**
+ * Limits how often something happens. Tokens are added at a constant
+ * rate up to a maximum amount, and every action uses some tokens.
+ * Thread safe.
+ */
+public class TokenBucket {
+    private final double capacity, tokensPerNano;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    /**
+     * The bucket starts full
+     *
+     * @param capacity        Max amount of tokens, ie the max amount of
+     *                        actions which can happen at the same time
+     * @param tokensPerMinute Amount of tokens added every minute
+     */
+    public TokenBucket(double capacity, double tokensPerMinute) {
+        Validate.isTrue(capacity >= 1, "Capacity must be at least 1");
+        Validate.isTrue(tokensPerMinute > 0, "Rate must be strictly positive");
+
+        this.capacity = capacity;
+        this.tokensPerNano = tokensPerMinute / 60e9;
+        this.tokens = capacity;
+    }
+
+    /**
+     * @param tokens Tokens needed, capped to the bucket capacity
+     * @return If there were enough tokens, in which case they are used
+     */
+    public synchronized boolean tryAcquire(double tokens) {
+        refill();
+        tokens = Math.min(tokens, capacity);
+        if (this.tokens < tokens)
+            return false;
+
+        this.tokens -= tokens;
+        return true;
+    }
+
+    /**
+     * Waits until there are enough tokens and uses them
+     *
+     * @param tokens Tokens needed, capped to the bucket capacity
+     */
+    public void acquire(double tokens) throws InterruptedException {
+        while (!tryAcquire(tokens))
+            Thread.sleep(Math.max(1, getWaitTime(tokens) / 1000000));
+    }
+
+    /**
+     * @return Tokens currently available
+     */
+    public synchronized double getTokens() {
+        refill();
+        return tokens;
+    }
+
+    /**
+     * @return Amount of tokens added every minute
+     */
+    public double getRate() {
+        return tokensPerNano * 60e9;
+    }
+
+    private synchronized long getWaitTime(double tokens) {
+        refill();
+        return (long) Math.ceil((Math.min(tokens, capacity) - this.tokens) / tokensPerNano);
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+        lastRefill = now;
+    }
+}
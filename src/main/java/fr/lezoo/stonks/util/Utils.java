@@ -1,6 +1,7 @@
 package fr.lezoo.stonks.util;
 
 import fr.lezoo.stonks.Stonks;
+import org.apache.commons.lang.Validate;
 import org.bukkit.ChatColor;
 import org.bukkit.NamespacedKey;
 import org.bukkit.block.BlockFace;
@@ -74,6 +75,43 @@ public class Utils {
         }
     }
 
+    /**
+     * Reads durations like '30s', '15m', '2h', '30d', '1w' or '5y'.
+     * Months are not supported as they don't have a fixed length.
+     *
+     * @param input Duration as input in a config file
+     * @return Duration in millis
+     */
+    public static long parseDuration(String input) {
+        Validate.notNull(input, "Duration cannot be null");
+        input = input.trim().toLowerCase();
+        Validate.isTrue(input.length() > 1, "Could not read duration '" + input + "'");
+
+        final long amount;
+        try {
+            amount = Long.parseLong(input.substring(0, input.length() - 1));
+        } catch (NumberFormatException exception) {
+            throw new IllegalArgumentException("Could not read duration '" + input + "'");
+        }
+
+        switch (input.charAt(input.length() - 1)) {
+            case 's':
+                return amount * 1000L;
+            case 'm':
+                return amount * 1000L * 60L;
+            case 'h':
+                return amount * 1000L * 60L * 60L;
+            case 'd':
+                return amount * 1000L * 60L * 60L * 24L;
+            case 'w':
+                return amount * 1000L * 60L * 60L * 24L * 7L;
+            case 'y':
+                return amount * 1000L * 60L * 60L * 24L * 365L;
+            default:
+                throw new IllegalArgumentException("Could not read duration '" + input + "'");
+        }
+    }
+
     public static String formatRate(double growthRate) {
         return formatGain(growthRate) + "%";
     }
@@ -0,0 +1,96 @@
+package fr.lezoo.stonks.stock.api;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CircuitBreakerTest {
+
+    /**
+     * Opens after 3 failures, delays start at 100ms and the breaker stays open 200ms
+     */
+    private final CircuitBreaker breaker = new CircuitBreaker(3, 100, 1000, 200);
+
+    @Test
+    public void callsAreMadeUntilFailures() {
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.canCall());
+
+        breaker.onCall();
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.canCall());
+    }
+
+    @Test
+    public void failuresDelayCalls() throws InterruptedException {
+        breaker.onCall();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.BACKING_OFF, breaker.getState());
+        assertFalse(breaker.canCall());
+
+        // Delay is between half and all of the base delay
+        Thread.sleep(110);
+        assertTrue(breaker.canCall());
+
+        breaker.onCall();
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    public void delaysGrowAfterEveryFailure() throws InterruptedException {
+        breaker.onFailure();
+        breaker.onFailure();
+
+        // Second delay is at least twice the base delay halved
+        Thread.sleep(60);
+        assertFalse(breaker.canCall());
+        Thread.sleep(160);
+        assertTrue(breaker.canCall());
+    }
+
+    @Test
+    public void breakerOpensThenTrialCallCloses() throws InterruptedException {
+        for (int i = 0; i < 3; i++)
+            breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.canCall());
+
+        // One trial call once the open delay is over
+        Thread.sleep(210);
+        assertTrue(breaker.canCall());
+        breaker.onCall();
+        assertFalse(breaker.canCall());
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.canCall());
+    }
+
+    @Test
+    public void releasedTrialCallAllowsCalls() throws InterruptedException {
+        for (int i = 0; i < 3; i++)
+            breaker.onFailure();
+
+        // Trial call failed with an error which is not transient
+        Thread.sleep(210);
+        breaker.onCall();
+        breaker.release();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertTrue(breaker.canCall());
+    }
+
+    @Test
+    public void failedTrialCallOpensAgain() throws InterruptedException {
+        for (int i = 0; i < 3; i++)
+            breaker.onFailure();
+
+        Thread.sleep(210);
+        breaker.onCall();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.canCall());
+    }
+}
@@ -0,0 +1,155 @@
+package fr.lezoo.stonks.stock.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Calls a local server which answers after some latency, or with an error status
+ */
+public class HttpStockAPITest {
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile long latency;
+    private volatile int status = 200;
+
+    private HttpServer server;
+    private HttpStockAPI api;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::respond);
+
+        // Slow answers must not delay other requests
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        api = new HttpStockAPI("test", "http://localhost:" + server.getAddress().getPort(), Duration.ofMillis(300), 60, 1, 0, 60000) {
+
+            @Override
+            public String getURL(String stockId) {
+                return getBaseURL() + "/quote?symbol=" + stockId;
+            }
+
+            @Override
+            public double parseResponse(String response, String stockId) {
+                return Double.parseDouble(response);
+            }
+        };
+
+        // First calls load classes and open the connection, which may take longer than the timeout
+        for (int i = 0; i < 5; i++)
+            if (api.getPriceAsync("WARMUP").handle((price, error) -> error == null).join())
+                break;
+        requests.set(0);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void concurrentCallsShareOneRequest() {
+        latency = 50;
+        CompletableFuture<Double> first = api.getPriceAsync("AAA"), second = api.getPriceAsync("AAA");
+
+        assertSame(first, second);
+        assertEquals(10, first.join(), 0);
+        assertEquals(1, requests.get());
+
+        // Completed calls are not reused
+        assertEquals(10, api.getPriceAsync("AAA").join(), 0);
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void differentStocksAreFetchedSeparately() {
+        latency = 50;
+        CompletableFuture<Double> first = api.getPriceAsync("AAA"), second = api.getPriceAsync("BBB");
+
+        assertNotSame(first, second);
+        first.join();
+        second.join();
+        assertEquals(2, requests.get());
+    }
+
+    @Test
+    public void slowCallsTimeOut() {
+        latency = 2000;
+        final long start = System.currentTimeMillis();
+        Throwable error = getError(api.getPriceAsync("AAA"));
+
+        assertTrue("Unexpected " + error, error instanceof HttpTimeoutException);
+        assertTrue(System.currentTimeMillis() - start < 1500);
+
+        // Timed out calls are not reused
+        assertNotSame(api.getPriceAsync("AAA"), api.getPriceAsync("BBB"));
+    }
+
+    @Test
+    public void rateLimitsAreTransient() {
+        status = 429;
+        Throwable error = getError(api.getPriceAsync("AAA"));
+
+        assertTrue("Unexpected " + error, error instanceof StockAPIException);
+        assertEquals(429, ((StockAPIException) error).getStatus());
+        assertTrue(((StockAPIException) error).isTransient());
+    }
+
+    @Test
+    public void serverErrorsAreTransient() {
+        status = 503;
+        assertTrue(((StockAPIException) getError(api.getPriceAsync("AAA"))).isTransient());
+    }
+
+    @Test
+    public void wrongKeysAreNotTransient() {
+        status = 401;
+        assertFalse(((StockAPIException) getError(api.getPriceAsync("AAA"))).isTransient());
+    }
+
+    private static Throwable getError(CompletableFuture<Double> future) {
+        try {
+            future.join();
+            fail("Call did not fail");
+            return null;
+        } catch (CompletionException exception) {
+            return exception.getCause();
+        }
+    }
+
+    private void respond(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+        try {
+            Thread.sleep(latency);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+
+        byte[] bytes = (status == 200 ? "10" : "error").getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(bytes);
+            }
+        } catch (IOException ignored) {
+            // Client timed out and closed the connection
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package fr.lezoo.stonks.stock.api;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the quote scheduler against a local server standing in for the provider
+ */
+public class QuoteSchedulerTest {
+    private final List<Call> calls = Collections.synchronizedList(new ArrayList<>());
+
+    /**
+     * Twelve Data calls answer a rate limit error with a 200 status
+     */
+    private volatile boolean rateLimited;
+    private HttpServer server;
+    private QuoteScheduler scheduler;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this::respond);
+        server.start();
+    }
+
+    @After
+    public void tearDown() {
+        if (scheduler != null)
+            scheduler.stop();
+        server.stop(0);
+    }
+
+    @Test
+    public void symbolsAreFetchedInBatches() throws Exception {
+        start(new TwelveDataAPI(config(8, 8)), "AAA", "BBB", "CCC", "DDD", "EEE");
+        await(() -> scheduler.getFetchedQuotes() == 5);
+
+        assertEquals(1, calls.size());
+        assertEquals(new HashSet<>(Arrays.asList("AAA", "BBB", "CCC", "DDD", "EEE")), new HashSet<>(calls.get(0).symbols));
+        for (String symbol : calls.get(0).symbols)
+            assertEquals(10, scheduler.getQuote(symbol).getPrice(), 0);
+    }
+
+    @Test
+    public void callsArePacedByTheBucket() throws Exception {
+
+        // Bucket of one call refilled every 500ms
+        start(new FinnhubAPI(config(120, 1)), "AAA", "BBB", "CCC", "DDD");
+        await(() -> scheduler.getFetchedQuotes() == 4);
+
+        assertEquals(4, calls.size());
+        for (int i = 1; i < calls.size(); i++)
+            assertTrue("Calls " + (i - 1) + " and " + i + " were not spread", calls.get(i).time - calls.get(i - 1).time >= 450);
+    }
+
+    @Test
+    public void callsAreCountedAgainstTheBudget() throws Exception {
+        start(new FinnhubAPI(config(600, 3)), "AAA", "BBB", "CCC");
+        await(() -> scheduler.getFetchedQuotes() == 3);
+
+        assertEquals(3, scheduler.getCalls());
+        assertEquals(3, scheduler.getCallsLastMinute());
+        assertEquals(600, scheduler.getBudget(), 0);
+        assertEquals(0, scheduler.getFailures());
+        assertEquals(0, scheduler.getDailyBudget(), 0);
+        assertEquals(-1, scheduler.getDailyCallsLeft(), 0);
+    }
+
+    @Test
+    public void callsStopAtTheDailyLimit() throws Exception {
+        YamlConfiguration config = config(600, 10);
+        config.set("calls-per-day", 2);
+        start(new FinnhubAPI(config), "AAA", "BBB", "CCC", "DDD");
+        await(() -> scheduler.getFetchedQuotes() == 2);
+        Thread.sleep(1000);
+
+        assertEquals(2, calls.size());
+        assertEquals(2, scheduler.getDailyBudget(), 0);
+        assertTrue(scheduler.getDailyCallsLeft() < 1);
+    }
+
+    @Test
+    public void dailyCallsAreKeptWhenTheAPIIsReloaded() throws Exception {
+        YamlConfiguration config = config(600, 10);
+        config.set("calls-per-day", 2);
+        AtomicReference<StockAPI> api = new AtomicReference<>(new FinnhubAPI(config));
+        scheduler = new QuoteScheduler(api::get, Logger.getLogger(QuoteSchedulerTest.class.getName()));
+        scheduler.register("AAA", "aaa", 0);
+        scheduler.register("BBB", "bbb", 0);
+        scheduler.start();
+        await(() -> scheduler.getFetchedQuotes() == 2);
+
+        api.set(new FinnhubAPI(config));
+        scheduler.register("CCC", "ccc", 0);
+        Thread.sleep(1000);
+
+        assertEquals(2, calls.size());
+        assertEquals(2, scheduler.getDailyCalls(), 0);
+    }
+
+    @Test
+    public void batchesFitInTheDailyLimit() throws Exception {
+
+        // Every symbol of a Twelve Data batch costs one call
+        YamlConfiguration config = config(8, 8);
+        config.set("calls-per-day", 3);
+        start(new TwelveDataAPI(config), "AAA", "BBB", "CCC", "DDD", "EEE");
+        await(() -> scheduler.getFetchedQuotes() == 3);
+        Thread.sleep(1000);
+
+        assertEquals(1, calls.size());
+        assertEquals(3, calls.get(0).symbols.size());
+    }
+
+    @Test
+    public void shortestRefreshPeriodIsUsed() throws Exception {
+        YamlConfiguration config = config(600, 10);
+        config.set("quote-ttl", "1s");
+        start(new FinnhubAPI(config));
+        scheduler.register("AAA", "slow", 60_000);
+        await(() -> scheduler.getFetchedQuotes() == 1);
+
+        // The quote TTL expired but the only stock does not need a new quote yet
+        Thread.sleep(2000);
+        assertEquals(1, calls.size());
+
+        scheduler.register("AAA", "fast", 0);
+        await(() -> calls.size() == 2);
+    }
+
+    @Test
+    public void rateLimitsInResponsesDelayCalls() throws Exception {
+        rateLimited = true;
+        start(new TwelveDataAPI(config(600, 10)), "AAA");
+        await(() -> scheduler.getFailures() == 1);
+        assertEquals(CircuitBreaker.State.BACKING_OFF, scheduler.getBreakerState());
+
+        // Fetched again after the delay
+        rateLimited = false;
+        await(() -> scheduler.getFetchedQuotes() == 1);
+        assertEquals(2, calls.size());
+        assertEquals(CircuitBreaker.State.CLOSED, scheduler.getBreakerState());
+    }
+
+    private void start(StockAPI api, String... symbols) {
+        scheduler = new QuoteScheduler(() -> api, Logger.getLogger(QuoteSchedulerTest.class.getName()));
+        for (String symbol : symbols)
+            scheduler.register(symbol, symbol.toLowerCase(), 0);
+        scheduler.start();
+    }
+
+    private YamlConfiguration config(double callsPerMinute, double burst) {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("key", "test");
+        config.set("base-url", "http://localhost:" + server.getAddress().getPort());
+        config.set("calls-per-minute", callsPerMinute);
+        config.set("burst", burst);
+        config.set("quote-ttl", "1h");
+        return config;
+    }
+
+    /**
+     * Every symbol is priced 10, in the format of the provider called
+     */
+    private void respond(HttpExchange exchange) throws IOException {
+        List<String> symbols = new ArrayList<>();
+        for (String parameter : exchange.getRequestURI().getQuery().split("&"))
+            if (parameter.startsWith("symbol="))
+                symbols.addAll(Arrays.asList(parameter.substring(7).split(",")));
+        calls.add(new Call(System.currentTimeMillis(), symbols));
+
+        final String body;
+        if (rateLimited)
+            body = "{\"code\":429,\"message\":\"You have run out of API credits for the current minute\",\"status\":\"error\"}";
+        else if (exchange.getRequestURI().getPath().equals("/quote"))
+            body = "{\"c\":10}";
+        else if (symbols.size() == 1)
+            body = "{\"price\":\"10\"}";
+        else {
+            StringJoiner joiner = new StringJoiner(",", "{", "}");
+            for (String symbol : symbols)
+                joiner.add("\"" + symbol + "\":{\"price\":\"10\"}");
+            body = joiner.toString();
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private static class Call {
+        private final long time;
+        private final List<String> symbols;
+
+        Call(long time, List<String> symbols) {
+            this.time = time;
+            this.symbols = symbols;
+        }
+    }
+}
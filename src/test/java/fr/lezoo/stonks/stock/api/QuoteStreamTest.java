@@ -0,0 +1,316 @@
+package fr.lezoo.stonks.stock.api;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Runs the quote stream against a local WebSocket server standing in for the provider
+ */
+public class QuoteStreamTest {
+    private final Set<String> symbols = ConcurrentHashMap.newKeySet();
+    private final Map<String, List<QuoteStream.Tick>> ticks = new HashMap<>();
+
+    private WebSocketServer server;
+    private QuoteStream stream;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new WebSocketServer();
+        StockAPI api = new StreamingAPI("ws://localhost:" + server.getPort());
+        stream = new QuoteStream(() -> api, () -> symbols, (symbol, tick) -> ticks.computeIfAbsent(symbol, id -> new ArrayList<>()).add(tick),
+                Logger.getLogger(QuoteStreamTest.class.getName()));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        stream.stop();
+        server.close();
+    }
+
+    @Test
+    public void symbolsAreSubscribedToAndUnsubscribedFrom() throws Exception {
+        symbols.add("aapl");
+        symbols.add("msft");
+        stream.start();
+        server.await("subscribe AAPL");
+        server.await("subscribe MSFT");
+        assertEquals(2, stream.getSubscriptions());
+
+        symbols.remove("msft");
+        server.await("unsubscribe MSFT");
+        assertEquals(1, stream.getSubscriptions());
+        assertTrue(stream.isConnected());
+    }
+
+    @Test
+    public void fragmentedMessagesAreJoined() throws Exception {
+        symbols.add("aapl");
+        stream.start();
+        server.await("subscribe AAPL");
+
+        server.send(WebSocketServer.TEXT, false, "AA");
+        server.send(WebSocketServer.CONTINUATION, false, "PL 10");
+        server.send(WebSocketServer.CONTINUATION, true, " 1000");
+        await(() -> stream.getTrades() == 1);
+
+        stream.flush();
+        assertEquals(1, ticks.get("aapl").size());
+        assertEquals(10, ticks.get("aapl").get(0).getClose(), 0);
+        assertEquals(1000, ticks.get("aapl").get(0).getTime());
+    }
+
+    @Test
+    public void tradesAreCoalescedPerTick() throws Exception {
+        symbols.add("aapl");
+        stream.start();
+        server.await("subscribe AAPL");
+
+        // Trades of symbols not subscribed to are ignored
+        server.send(WebSocketServer.TEXT, true, "AAPL 10 1000;AAPL 12 1003;TSLA 50 1001;AAPL 9 1001;AAPL 11 1002");
+        await(() -> stream.getTrades() == 4);
+
+        stream.flush();
+        stream.flush();
+        assertEquals(Collections.singleton("aapl"), ticks.keySet());
+        assertEquals(1, ticks.get("aapl").size());
+
+        QuoteStream.Tick tick = ticks.get("aapl").get(0);
+        assertEquals(10, tick.getOpen(), 0);
+        assertEquals(12, tick.getHigh(), 0);
+        assertEquals(9, tick.getLow(), 0);
+        assertEquals(11, tick.getClose(), 0);
+        assertEquals(1003, tick.getTime());
+    }
+
+    @Test
+    public void symbolsAreSubscribedToAgainAfterReconnecting() throws Exception {
+        symbols.add("aapl");
+        stream.start();
+        server.await("subscribe AAPL");
+
+        server.drop();
+        await(() -> server.getConnections() == 2);
+        server.await("subscribe AAPL");
+        assertTrue(stream.isConnected());
+        assertEquals(1, stream.getSubscriptions());
+
+        server.send(WebSocketServer.TEXT, true, "AAPL 10 1000");
+        await(() -> stream.getTrades() == 1);
+        assertEquals(CircuitBreaker.State.CLOSED, stream.getBreakerState());
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertTrue("Timed out", System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    /**
+     * Trades are sent as 'SYMBOL price time', separated by semicolons
+     */
+    private static class StreamingAPI extends StockAPI implements StreamingQuotes {
+        private final String streamURL;
+
+        StreamingAPI(String streamURL) {
+            super(60, 1, 0, 60000);
+
+            this.streamURL = streamURL;
+        }
+
+        @Override
+        public CompletableFuture<Double> getPriceAsync(String stockId) {
+            return CompletableFuture.failedFuture(new IOException("Prices are only streamed"));
+        }
+
+        @Override
+        public String getStreamURL() {
+            return streamURL;
+        }
+
+        @Override
+        public String getStreamSymbol(String symbol) {
+            return symbol.toUpperCase();
+        }
+
+        @Override
+        public String getSubscribeMessage(String streamSymbol) {
+            return "subscribe " + streamSymbol;
+        }
+
+        @Override
+        public String getUnsubscribeMessage(String streamSymbol) {
+            return "unsubscribe " + streamSymbol;
+        }
+
+        @Override
+        public void parseStreamMessage(String message, TradeConsumer consumer) {
+            for (String trade : message.split(";")) {
+                String[] split = trade.split(" ");
+                consumer.accept(split[0], Double.parseDouble(split[1]), Long.parseLong(split[2]));
+            }
+        }
+    }
+
+    /**
+     * Minimal RFC 6455 server handling one connection at a time. Text
+     * messages received from the client are queued, frames are sent as is
+     */
+    private static class WebSocketServer implements Closeable {
+        private static final int CONTINUATION = 0, TEXT = 1, CLOSE = 8;
+        private static final String ACCEPT_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+
+        private final ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        private final BlockingQueue<String> messages = new LinkedBlockingQueue<>();
+        private final AtomicInteger connections = new AtomicInteger();
+        private volatile Socket socket;
+
+        WebSocketServer() throws IOException {
+            Thread thread = new Thread(this::accept, "WebSocket Server");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        int getConnections() {
+            return connections.get();
+        }
+
+        /**
+         * Waits for the client to send that message, skipping other messages
+         */
+        void await(String expected) throws InterruptedException {
+            final long deadline = System.currentTimeMillis() + 5000;
+            String message;
+            do {
+                message = messages.poll(Math.max(1, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                assertNotNull("Timed out waiting for '" + expected + "'", message);
+            } while (!message.equals(expected));
+        }
+
+        synchronized void send(int opcode, boolean last, String text) throws IOException {
+            byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+            DataOutputStream output = new DataOutputStream(socket.getOutputStream());
+            output.writeByte((last ? 0x80 : 0) | opcode);
+            if (payload.length < 126)
+                output.writeByte(payload.length);
+            else {
+                output.writeByte(126);
+                output.writeShort(payload.length);
+            }
+            output.write(payload);
+            output.flush();
+        }
+
+        /**
+         * Closes the connection without a close frame, like a network failure
+         */
+        void drop() throws IOException {
+            socket.close();
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            Socket socket = this.socket;
+            if (socket != null)
+                socket.close();
+        }
+
+        private void accept() {
+            while (!serverSocket.isClosed())
+                try (Socket socket = serverSocket.accept()) {
+                    handshake(socket);
+                    this.socket = socket;
+                    connections.incrementAndGet();
+                    read(socket);
+                } catch (IOException ignored) {
+                    // Connection dropped or server closed
+                }
+        }
+
+        private void handshake(Socket socket) throws IOException {
+            InputStream input = socket.getInputStream();
+            ByteArrayOutputStream request = new ByteArrayOutputStream();
+            while (!request.toString(StandardCharsets.ISO_8859_1).endsWith("\r\n\r\n")) {
+                final int read = input.read();
+                if (read < 0)
+                    throw new EOFException("Handshake interrupted");
+                request.write(read);
+            }
+
+            String key = null;
+            for (String line : request.toString(StandardCharsets.ISO_8859_1).split("\r\n"))
+                if (line.toLowerCase().startsWith("sec-websocket-key:"))
+                    key = line.substring(line.indexOf(':') + 1).trim();
+            assertNotNull("No WebSocket key", key);
+
+            final String accept;
+            try {
+                accept = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-1").digest((key + ACCEPT_GUID).getBytes(StandardCharsets.ISO_8859_1)));
+            } catch (NoSuchAlgorithmException exception) {
+                throw new IOException(exception);
+            }
+
+            OutputStream output = socket.getOutputStream();
+            output.write(("HTTP/1.1 101 Switching Protocols\r\nUpgrade: websocket\r\nConnection: Upgrade\r\nSec-WebSocket-Accept: " + accept + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            output.flush();
+        }
+
+        /**
+         * Frames sent by the client are always masked
+         */
+        private void read(Socket socket) throws IOException {
+            DataInputStream input = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            ByteArrayOutputStream message = new ByteArrayOutputStream();
+            while (true) {
+                final int header = input.readUnsignedByte(), opcode = header & 0x0F;
+                final int lengthByte = input.readUnsignedByte() & 0x7F;
+                final long length = lengthByte == 126 ? input.readUnsignedShort() : lengthByte == 127 ? input.readLong() : lengthByte;
+                byte[] mask = new byte[4];
+                input.readFully(mask);
+                byte[] payload = new byte[(int) length];
+                input.readFully(payload);
+                for (int i = 0; i < payload.length; i++)
+                    payload[i] ^= mask[i % 4];
+
+                if (opcode == CLOSE) {
+                    synchronized (this) {
+                        socket.getOutputStream().write(new byte[]{(byte) (0x80 | CLOSE), 0});
+                    }
+                    return;
+                }
+
+                message.write(payload);
+                if ((header & 0x80) != 0) {
+                    messages.add(message.toString(StandardCharsets.UTF_8));
+                    message.reset();
+                }
+            }
+        }
+    }
+}
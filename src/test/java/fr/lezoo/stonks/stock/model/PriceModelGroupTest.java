@@ -0,0 +1,91 @@
+package fr.lezoo.stonks.stock.model;
+
+import fr.lezoo.stonks.stock.TimeScale;
+import fr.lezoo.stonks.stock.handler.FictiveStockHandler;
+import org.junit.Test;
+
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class PriceModelGroupTest {
+    private final PriceModel model = new GeometricBrownianMotion();
+    private final PriceModelGroup group = new PriceModelGroup(model, new SplittableRandom(42));
+
+    /**
+     * Drift multiplying the price by e every tick
+     */
+    private static final double DRIFT_PER_TICK = TimeScale.HOUR.getTime() / 50d;
+
+    @Test
+    public void lastStockTakesTheSlotOfTheRemovedOne() {
+        FictiveStockHandler first = handler(1, 0), second = handler(2, 0), last = handler(3, DRIFT_PER_TICK);
+        group.add(first, 1);
+        group.add(second, 1);
+        group.add(last, 1);
+
+        group.remove(0);
+        verify(first).unlink(1);
+        verify(last).link(group, 0);
+        assertEquals(2, group.size());
+        assertSame(last, group.getHandler(0));
+        assertSame(second, group.getHandler(1));
+
+        // Parameters moved along with the stock
+        group.step(0);
+        assertEquals(3 * Math.E, group.getMultiplier(0), 1e-9);
+        assertEquals(2, group.getMultiplier(1), 1e-9);
+    }
+
+    @Test
+    public void removingTheLastStockRelinksNothing() {
+        FictiveStockHandler first = handler(1, 0), last = handler(2, 0);
+        group.add(first, 1);
+        group.add(last, 1);
+
+        group.remove(1);
+        verify(last).unlink(2);
+        verify(first, times(1)).link(any(), anyInt());
+        assertEquals(1, group.size());
+        assertNull(group.getHandler(1));
+    }
+
+    @Test
+    public void groupGrowsPastItsInitialCapacity() {
+        FictiveStockHandler[] handlers = new FictiveStockHandler[40];
+        for (int i = 0; i < handlers.length; i++)
+            group.add(handlers[i] = handler(i + 1, 0), 1);
+
+        assertEquals(handlers.length, group.size());
+        for (int i = 0; i < handlers.length; i++) {
+            assertSame(handlers[i], group.getHandler(i));
+            assertEquals(i + 1, group.getMultiplier(i), 0);
+        }
+    }
+
+    @Test
+    public void stocksAreSteppedOncePerRefreshPeriod() {
+        FictiveStockHandler handler = handler(1, 0);
+        group.add(handler, 20);
+
+        int stepped = 0;
+        for (long tick = 0; tick < 100; tick++) {
+            group.step(tick);
+            if (group.isStepped(0))
+                stepped++;
+        }
+        assertEquals(5, stepped);
+    }
+
+    /**
+     * Stocks without volatility, so that their price only follows their drift
+     */
+    private FictiveStockHandler handler(double multiplier, double drift) {
+        FictiveStockHandler handler = mock(FictiveStockHandler.class);
+        when(handler.getModel()).thenReturn(model);
+        when(handler.getPriceMultiplier()).thenReturn(multiplier);
+        when(handler.getParameters()).thenReturn(new double[]{drift, 0});
+        return handler;
+    }
+}
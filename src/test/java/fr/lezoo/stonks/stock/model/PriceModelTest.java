@@ -0,0 +1,101 @@
+package fr.lezoo.stonks.stock.model;
+
+import fr.lezoo.stonks.stock.handler.FictiveStockHandler;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Steps many stocks once and checks the moments of their price multipliers
+ */
+public class PriceModelTest {
+    private static final int SAMPLES = 200_000;
+
+    private final SplittableRandom random = new SplittableRandom(42);
+
+    @Test
+    public void geometricBrownianMotionFollowsItsDrift() {
+        final double drift = .05, sigma = .2;
+        double[] multipliers = step(new GeometricBrownianMotion(), new double[]{drift, sigma}, 1, 1);
+
+        assertEquals(Math.exp(drift), mean(multipliers), .003);
+        assertEquals(sigma * sigma, logVariance(multipliers), .001);
+    }
+
+    @Test
+    public void jumpsHaveTheConfiguredMean() {
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("jump-rate", 1);
+        config.set("jump-mean", .1);
+        config.set("jump-volatility", .3);
+        FictiveStockHandler handler = mock(FictiveStockHandler.class);
+        when(handler.getVolatility()).thenReturn(0d);
+
+        // One jump per step, without any other price change
+        JumpDiffusionModel model = new JumpDiffusionModel();
+        double[] parameters = new double[model.getParameters()];
+        model.load(config, handler, parameters, 0);
+        double[] multipliers = step(model, parameters, 1, 1);
+
+        assertEquals(1.1, mean(multipliers), .005);
+        assertEquals(.09, logVariance(multipliers), .002);
+
+        YamlConfiguration saved = new YamlConfiguration();
+        model.save(saved, parameters, 0);
+        assertEquals(.1, saved.getDouble("jump-mean"), 1e-9);
+    }
+
+    @Test
+    public void meanReversionPullsPricesBack() {
+        final double logMean = Math.log(2), theta = -Math.log(1 - .1), sigma = .2;
+        double[] multipliers = step(new MeanReversionModel(), new double[]{logMean, theta, sigma}, 1, 1);
+
+        // Started at 1, a tenth of the distance to the mean is closed
+        final double decay = Math.exp(-theta);
+        assertEquals(logMean * (1 - decay), logMean(multipliers), .002);
+        assertEquals(sigma * sigma * (1 - decay * decay) / (2 * theta), logVariance(multipliers), .001);
+
+        // Long after, prices are spread around the mean
+        multipliers = step(new MeanReversionModel(), new double[]{logMean, theta, sigma}, 1, 1000);
+        assertEquals(logMean, logMean(multipliers), .003);
+        assertEquals(sigma * sigma / (2 * theta), logVariance(multipliers), .005);
+    }
+
+    /**
+     * @param parameters Parameters used by every stock
+     * @param start      Price multiplier of every stock
+     * @param hours      Time elapsed during the step
+     * @return Price multipliers after one step
+     */
+    private double[] step(PriceModel model, double[] parameters, double start, double hours) {
+        final int stride = model.getParameters();
+        double[] all = new double[SAMPLES * stride];
+        for (int i = 0; i < SAMPLES; i++)
+            System.arraycopy(parameters, 0, all, i * stride, stride);
+
+        double[] multipliers = new double[SAMPLES], steps = new double[SAMPLES];
+        Arrays.fill(multipliers, start);
+        Arrays.fill(steps, hours);
+        model.step(multipliers, all, steps, SAMPLES, random);
+        return multipliers;
+    }
+
+    private static double mean(double[] values) {
+        return Arrays.stream(values).average().orElseThrow();
+    }
+
+    private static double logMean(double[] values) {
+        return Arrays.stream(values).map(Math::log).average().orElseThrow();
+    }
+
+    private static double logVariance(double[] values) {
+        final double mean = logMean(values);
+        return Arrays.stream(values).map(value -> (Math.log(value) - mean) * (Math.log(value) - mean)).sum() / (values.length - 1);
+    }
+}
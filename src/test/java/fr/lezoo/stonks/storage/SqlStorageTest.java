@@ -0,0 +1,127 @@
+package fr.lezoo.stonks.storage;
+
+import fr.lezoo.stonks.share.Share;
+import fr.lezoo.stonks.share.ShareType;
+import fr.lezoo.stonks.stock.Stock;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Writes made to an H2 database which becomes unavailable, or which are invalid
+ */
+public class SqlStorageTest {
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File folder;
+    private FlakyPool pool;
+    private SqlStorage storage;
+    private Stock stock;
+
+    @Before
+    public void setUp() throws IOException {
+        folder = temporaryFolder.newFolder();
+        storage = open();
+
+        stock = mock(Stock.class);
+        when(stock.getId()).thenReturn("stonk");
+    }
+
+    @After
+    public void tearDown() {
+        pool.down = false;
+        storage.close();
+    }
+
+    @Test
+    public void writesAreAppliedOnceTheDatabaseIsAvailable() throws Exception {
+        Share share = share(stock);
+        pool.down = true;
+        storage.saveShare(share);
+
+        // First try and first retry fail, next retry is in 2 seconds
+        Thread.sleep(1500);
+        pool.down = false;
+        reopen();
+
+        assertEquals(Collections.singleton(share.getUniqueId()), storage.loadShares().keySet());
+    }
+
+    @Test
+    public void pendingWritesAreSavedWhenClosing() throws Exception {
+        Share share = share(stock);
+        pool.down = true;
+        storage.saveShare(share);
+        storage.close();
+
+        final File pendingFile = new File(folder, "pending-writes.dat");
+        assertTrue(pendingFile.exists());
+
+        // Applied when opening again
+        storage = open();
+        reopen();
+        assertEquals(Collections.singleton(share.getUniqueId()), storage.loadShares().keySet());
+        assertFalse(pendingFile.exists());
+    }
+
+    @Test
+    public void resetFailsIfAnyShareIsNotWritten() throws Exception {
+        Stock invalid = mock(Stock.class);
+        when(invalid.getId()).thenReturn(String.join("", Collections.nCopies(100, "x")));
+
+        try {
+            storage.resetShares(Arrays.asList(share(stock), share(invalid), share(stock)));
+            fail("Reset did not fail");
+        } catch (IOException expected) {
+            // Stock ID is too long
+        }
+    }
+
+    private SqlStorage open() {
+        pool = new FlakyPool("jdbc:h2:" + folder.getAbsolutePath() + "/stonks;MODE=MySQL");
+        return new SqlStorage(pool, "stonks_", new File(folder, "pending-writes.dat"), Logger.getLogger(SqlStorageTest.class.getName()), Duration.ofSeconds(2));
+    }
+
+    private void reopen() {
+        storage.close();
+        storage = open();
+    }
+
+    private Share share(Stock stock) {
+        return new Share(UUID.randomUUID(), UUID.randomUUID(), ShareType.NORMAL, stock, 10, 1, 5, 0, 0, System.currentTimeMillis());
+    }
+
+    private static class FlakyPool extends ConnectionPool {
+        private volatile boolean down;
+
+        FlakyPool(String url) {
+            super(url, null, null, 2);
+        }
+
+        @Override
+        public Connection take() throws SQLException {
+            if (down)
+                throw new SQLTransientConnectionException("Database is down");
+            return super.take();
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package fr.lezoo.stonks.storage;
+
+import fr.lezoo.stonks.share.Share;
+import fr.lezoo.stonks.share.ShareType;
+import fr.lezoo.stonks.stock.Stock;
+import fr.lezoo.stonks.stock.StockSeries;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.time.Duration;
+import java.util.*;
+import java.util.function.Function;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Every storage goes through the same save, load and remove cycle.
+ * Storages are closed then opened again before reading, as writes
+ * may only be applied once they are closed.
+ */
+@RunWith(Parameterized.class)
+public class StorageContractTest {
+    private final Function<File, Storage> opener;
+
+    private static final Logger LOGGER = Logger.getLogger(StorageContractTest.class.getName());
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private File folder;
+    private Storage storage;
+    private Stock stock;
+
+    public StorageContractTest(String name, Function<File, Storage> opener) {
+        this.opener = opener;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> storages() {
+        return Arrays.asList(new Object[][]{
+                {"file", (Function<File, Storage>) FileStorage::new},
+                {"h2", (Function<File, Storage>) folder -> new SqlStorage(new ConnectionPool("jdbc:h2:" + folder.getAbsolutePath() + "/stonks;MODE=MySQL", null, null, 2), "stonks_", new File(folder, "pending-writes.dat"), LOGGER, Duration.ofSeconds(30))},
+                {"sqlite", (Function<File, Storage>) folder -> new SqlStorage(new ConnectionPool("jdbc:sqlite:" + folder.getAbsolutePath() + "/stonks.db", null, null, 1), "stonks_", new File(folder, "pending-writes.dat"), LOGGER, Duration.ofSeconds(30))}
+        });
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        folder = temporaryFolder.newFolder();
+        storage = opener.apply(folder);
+
+        stock = mock(Stock.class);
+        when(stock.getId()).thenReturn("stonk");
+    }
+
+    @After
+    public void tearDown() {
+        storage.close();
+    }
+
+    @Test
+    public void candlesAreSavedLoadedAndDeleted() throws Exception {
+        StockSeries saved = new StockSeries(5);
+        for (int i = 0; i < 5; i++)
+            saved.add(1000L * i, i, i + 2, i - 1, i + 1, 10 * i);
+
+        assertFalse(storage.hasStockData("stonk"));
+        storage.saveCandles("stonk", "minute", saved, 3);
+        reopen();
+
+        assertTrue(storage.hasStockData("stonk"));
+        StockSeries loaded = new StockSeries(3);
+        storage.loadCandles("stonk", "minute", loaded);
+        assertEquals(3, loaded.size());
+        for (int i = 0; i < 3; i++) {
+            assertEquals(saved.getTimeStamp(i + 2), loaded.getTimeStamp(i));
+            assertEquals(saved.getHigh(i + 2), loaded.getHigh(i), 0);
+            assertEquals(saved.getVolume(i + 2), loaded.getVolume(i), 0);
+        }
+
+        storage.deleteStockData("stonk");
+        reopen();
+        assertFalse(storage.hasStockData("stonk"));
+    }
+
+    @Test
+    public void sharesAreSavedLoadedAndRemoved() throws Exception {
+        Share kept = share(UUID.randomUUID()), removed = share(UUID.randomUUID());
+
+        assertFalse(storage.hasShares());
+        storage.saveShare(kept);
+        storage.saveShare(removed);
+        storage.removeShare(removed.getUniqueId());
+        reopen();
+
+        assertTrue(storage.hasShares());
+        Map<UUID, byte[]> loaded = storage.loadShares();
+        assertEquals(Collections.singleton(kept.getUniqueId()), loaded.keySet());
+        assertArrayEquals(kept.toByteArray(), loaded.get(kept.getUniqueId()));
+    }
+
+    @Test
+    public void sharesAreReset() throws Exception {
+        storage.saveShare(share(UUID.randomUUID()));
+        Share reset = share(UUID.randomUUID());
+        storage.resetShares(Collections.singletonList(reset));
+        reopen();
+
+        assertEquals(Collections.singleton(reset.getUniqueId()), storage.loadShares().keySet());
+    }
+
+    @Test
+    public void archivedSharesAreSavedPagedAndRemoved() throws Exception {
+        final UUID owner = UUID.randomUUID();
+        List<Share> shares = Arrays.asList(share(owner), share(owner), share(owner));
+        storage.archiveShares(owner, shares).join();
+
+        // Pages do not overlap and cover every share
+        Map<UUID, byte[]> firstPage = storage.loadArchivedShares(owner, "stonk", 0, 2).join();
+        Map<UUID, byte[]> secondPage = storage.loadArchivedShares(owner, "stonk", 2, 2).join();
+        assertEquals(2, firstPage.size());
+        assertEquals(1, secondPage.size());
+        Map<UUID, byte[]> all = new HashMap<>(firstPage);
+        all.putAll(secondPage);
+        assertEquals(3, all.size());
+        for (Share share : shares)
+            assertArrayEquals(share.toByteArray(), all.get(share.getUniqueId()));
+
+        storage.removeArchivedShare(owner, "stonk", shares.get(0).getUniqueId());
+        storage.purgeArchivedShares(0);
+        reopen();
+
+        Set<UUID> expected = new HashSet<>(Arrays.asList(shares.get(1).getUniqueId(), shares.get(2).getUniqueId()));
+        assertEquals(expected, storage.loadArchivedShares(owner, "stonk", 0, 10).join().keySet());
+        assertTrue(storage.loadArchivedShares(UUID.randomUUID(), "stonk", 0, 10).join().isEmpty());
+    }
+
+    @Test
+    public void playerDataIsSavedAndLoaded() throws Exception {
+        final UUID uuid = UUID.randomUUID();
+        assertTrue(storage.loadPlayerData(uuid).getKeys(false).isEmpty());
+
+        FileConfiguration config = new YamlConfiguration();
+        config.set("tax-deduction", 12.5);
+        storage.savePlayerData(uuid, config);
+        reopen();
+
+        assertEquals(12.5, storage.loadPlayerData(uuid).getDouble("tax-deduction"), 0);
+    }
+
+    private void reopen() {
+        storage.close();
+        storage = opener.apply(folder);
+    }
+
+    private Share share(UUID owner) {
+        return new Share(UUID.randomUUID(), owner, ShareType.NORMAL, stock, 10, 1, 5, 0, 0, System.currentTimeMillis());
+    }
+}
@@ -0,0 +1,66 @@
+package fr.lezoo.stonks.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DailyCallCounterTest {
+    private static final long MINUTE = 60 * 1000L, DAY = 24 * 60 * MINUTE;
+
+    /**
+     * Midnight UTC of some day
+     */
+    private static final long MIDNIGHT = 19000 * DAY;
+
+    @Test
+    public void callsNeverExceedTheLimitOfADay() {
+        DailyCallCounter counter = new DailyCallCounter();
+        int[] callsPerDay = new int[3];
+
+        // Calls as often as allowed, every minute for three days
+        for (long time = MIDNIGHT; time < MIDNIGHT + 3 * DAY; time += MINUTE)
+            while (counter.getCallsLeft(800, 800 / 24., time) >= 1) {
+                counter.add(1, time);
+                callsPerDay[(int) ((time - MIDNIGHT) / DAY)]++;
+            }
+
+        for (int calls : callsPerDay)
+            assertEquals(800, calls);
+    }
+
+    @Test
+    public void callsAreSpreadOverTheDay() {
+        DailyCallCounter counter = new DailyCallCounter();
+        assertEquals(100, counter.getCallsLeft(2400, 100, MIDNIGHT), 1e-9);
+        counter.add(100, MIDNIGHT);
+        assertEquals(0, counter.getCallsLeft(2400, 100, MIDNIGHT), 1e-9);
+
+        // Unused calls accumulate over the day
+        assertEquals(1200, counter.getCallsLeft(2400, 100, MIDNIGHT + 12 * 60 * MINUTE), 1e-9);
+        assertEquals(2300, counter.getCallsLeft(2400, 100, MIDNIGHT + DAY - 1), 1e-6);
+    }
+
+    @Test
+    public void countStartsOverAtMidnightUTC() {
+        DailyCallCounter counter = new DailyCallCounter();
+        counter.add(5, MIDNIGHT + DAY - 1);
+        assertEquals(5, counter.getCalls(MIDNIGHT + DAY - 1), 0);
+        assertEquals(0, counter.getCalls(MIDNIGHT + DAY), 0);
+        assertEquals(MIDNIGHT / DAY + 1, counter.getDay());
+    }
+
+    @Test
+    public void countOfTheSameDayIsRestored() {
+        final long now = MIDNIGHT + 10 * 60 * MINUTE;
+
+        DailyCallCounter counter = new DailyCallCounter();
+        counter.restore(MIDNIGHT / DAY, 400, now);
+        assertEquals(400, counter.getCalls(now), 0);
+        assertEquals(0, counter.getCallsLeft(800, 0, now), 1e-9);
+
+        // Count of the previous day
+        counter = new DailyCallCounter();
+        counter.restore(MIDNIGHT / DAY - 1, 400, now);
+        assertEquals(0, counter.getCalls(now), 0);
+    }
+}